@@ -0,0 +1,122 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Banc de mesure des connexions inactives.
+ * Ouvre un grand nombre de connexions vers le serveur (une par pseudo) et,
+ * à intervalles réguliers, relève dans /proc la mémoire résidente (RSS) et le
+ * nombre de threads du processus serveur.
+ *
+ * Utilisation : java BancConnexions <hôte> <port> <nbConnexions> <pas> <pid du serveur>
+ */
+public class BancConnexions {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("Usage : java BancConnexions <hôte> <port> <nbConnexions> <pas> <pid>");
+            return;
+        }
+        String hote = args[0];
+        int port = Integer.parseInt(args[1]);
+        int nbConnexions = Integer.parseInt(args[2]);
+        int pas = Integer.parseInt(args[3]);
+        String pid = args[4];
+
+        // Les messages du serveur (arrivées des autres joueurs...) sont lus et
+        // jetés en continu, sinon les tampons TCP se remplissent et bloquent le serveur.
+        Selector selector = Selector.open();
+        Thread lecteur = new Thread(() -> viderEnBoucle(selector), "lecteur");
+        lecteur.setDaemon(true);
+        lecteur.start();
+
+        List<SocketChannel> canaux = new ArrayList<>();
+        System.out.println("connexions\trss_mo\tthreads");
+        System.out.println("0\t" + releve(pid));
+        for (int i = 1; i <= nbConnexions; i++) {
+            SocketChannel canal = SocketChannel.open(new InetSocketAddress(hote, port));
+            canal.write(ByteBuffer.wrap(("banc" + i + "\n").getBytes(StandardCharsets.UTF_8)));
+            canal.configureBlocking(false);
+            canaux.add(canal);
+            synchronized (selector) {
+                selector.wakeup();
+                canal.register(selector, SelectionKey.OP_READ);
+            }
+            if (i % pas == 0) {
+                System.out.println(i + "\t" + releveStable(pid));
+            }
+        }
+        for (SocketChannel canal : canaux) {
+            canal.close();
+        }
+    }
+
+    private static void viderEnBoucle(Selector selector) {
+        ByteBuffer tampon = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (true) {
+                synchronized (selector) {
+                    // Permet au thread principal d'enregistrer de nouveaux canaux
+                }
+                selector.select(100);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey cle = it.next();
+                    it.remove();
+                    tampon.clear();
+                    if (((SocketChannel) cle.channel()).read(tampon) < 0) {
+                        cle.cancel();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Erreur de lecture : " + e.getMessage());
+        }
+    }
+
+    // Laisse le serveur traiter les inscriptions : relève quand le nombre de
+    // threads n'a pas bougé depuis une seconde (30 secondes au plus)
+    private static String releveStable(String pid) throws Exception {
+        Thread.sleep(2000);
+        String releve = releve(pid);
+        for (int i = 0; i < 30; i++) {
+            Thread.sleep(1000);
+            String suivant = releve(pid);
+            if (threads(suivant).equals(threads(releve))) {
+                return suivant;
+            }
+            releve = suivant;
+        }
+        return releve;
+    }
+
+    private static String threads(String releve) {
+        return releve.substring(releve.indexOf('\t') + 1);
+    }
+
+    // Lit VmRSS (en Mo) et Threads dans /proc/<pid>/status
+    private static String releve(String pid) throws IOException {
+        long rssKo = 0;
+        String threads = "?";
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/" + pid + "/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    rssKo = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                } else if (line.startsWith("Threads:")) {
+                    threads = line.substring(8).trim();
+                }
+            }
+        }
+        return (rssKo / 1024) + "\t" + threads;
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Banc de contention du serveur.
+ * Chaque thread fait avancer ses propres parties via des sessions locales
+ * (sans réseau) ; on mesure le nombre de coups traités par seconde quand le
+ * nombre de threads augmente. Les parties étant indépendantes, le débit doit
+ * croître avec le nombre de cœurs.
+ *
+ * Utilisation : java BancContention [maxThreads] [partiesParThread] [secondes]
+ */
+public class BancContention {
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length >= 1 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int partiesParThread = args.length >= 2 ? Integer.parseInt(args[1]) : 8;
+        int secondes = args.length >= 3 ? Integer.parseInt(args[2]) : 3;
+        int[] sequence = sequenceSansVictoire();
+
+        System.out.println("threads\tcoups/s");
+        for (int nbThreads = 1; nbThreads <= maxThreads; nbThreads *= 2) {
+            System.out.println(nbThreads + "\t" + mesurer(nbThreads, partiesParThread, secondes, sequence));
+        }
+    }
+
+    private static long mesurer(int nbThreads, int partiesParThread, int secondes, int[] sequence) throws Exception {
+        Serveur serveur = new Serveur();
+        LongAdder coups = new LongAdder();
+        AtomicBoolean fini = new AtomicBoolean(false);
+        CountDownLatch prets = new CountDownLatch(nbThreads);
+        CountDownLatch depart = new CountDownLatch(1);
+        Thread[] threads = new Thread[nbThreads];
+
+        for (int t = 0; t < nbThreads; t++) {
+            final int numero = t;
+            threads[t] = new Thread(() -> {
+                ClientHandler[][] joueurs = new ClientHandler[partiesParThread][2];
+                for (int g = 0; g < partiesParThread; g++) {
+                    for (int j = 0; j < 2; j++) {
+                        joueurs[g][j] = new ClientHandler(serveur, new PrintWriter(Writer.nullWriter()));
+                        joueurs[g][j].recevoirLigne("banc" + numero + "_" + g + "_" + j);
+                    }
+                }
+                prets.countDown();
+                try {
+                    depart.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (!fini.get()) {
+                    for (ClientHandler[] partie : joueurs) {
+                        partie[0].recevoirLigne("play " + partie[1].getPseudo());
+                        partie[1].recevoirLigne("yes");
+                    }
+                    // Les parties avancent en parallèle, un coup chacune à tour de rôle
+                    for (int c = 0; c < sequence.length; c++) {
+                        String colonne = Integer.toString(sequence[c]);
+                        for (ClientHandler[] partie : joueurs) {
+                            partie[c & 1].recevoirLigne(colonne);
+                        }
+                        coups.add(joueurs.length);
+                    }
+                    // Fin de la manche : les joueurs doivent être libres pour la suivante
+                    for (ClientHandler[] partie : joueurs) {
+                        partie[0].recevoirLigne("ff");
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        prets.await();
+        depart.countDown();
+        Thread.sleep(1000); // Chauffe
+        coups.reset();
+        Thread.sleep(secondes * 1000L);
+        long total = coups.sum();
+        fini.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return total / secondes;
+    }
+
+    // Suite de coups qui remplit la grille au maximum sans qu'aucun joueur ne gagne :
+    // chaque manche joue tous ses coups, puis se termine par un abandon.
+    static int[] sequenceSansVictoire() {
+        MoteurPuissance4 moteur = new MoteurPuissance4();
+        int[] coups = new int[MoteurPuissance4.LIGNES * MoteurPuissance4.COLONNES];
+        int n = 0;
+        boolean joue = true;
+        while (joue) {
+            joue = false;
+            for (int colonne = 0; colonne < MoteurPuissance4.COLONNES && !joue; colonne++) {
+                if (!moteur.peutJouer(colonne)) {
+                    continue;
+                }
+                MoteurPuissance4 essai = rejouer(coups, n);
+                int joueur = essai.getJoueurCourant();
+                essai.jouer(colonne);
+                if (!essai.aGagne(joueur) && !essai.estPleine()) {
+                    moteur.jouer(colonne);
+                    coups[n++] = colonne;
+                    joue = true;
+                }
+            }
+        }
+        return java.util.Arrays.copyOf(coups, n);
+    }
+
+    private static MoteurPuissance4 rejouer(int[] coups, int n) {
+        MoteurPuissance4 moteur = new MoteurPuissance4();
+        for (int i = 0; i < n; i++) {
+            moteur.jouer(coups[i]);
+        }
+        return moteur;
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Banc du protocole : compare le protocole texte et le protocole binaire.
+ * Un serveur est lancé dans le même processus ; des paires de clients y jouent
+ * la même suite de coups, et on relève les octets et les écritures faites par
+ * le serveur sur les sockets, rapportés au nombre de coups.
+ *
+ * Utilisation : java BancProtocole [parties] [nio|classique] [port]
+ */
+public class BancProtocole {
+
+    public static void main(String[] args) throws Exception {
+        int parties = args.length >= 1 ? Integer.parseInt(args[0]) : 20;
+        String mode = args.length >= 2 ? args[1] : "nio";
+        int port = args.length >= 3 ? Integer.parseInt(args[2]) : 12399;
+        System.setProperty("p4.chat.resumeMs", "0"); // Annonces immédiates, hors des mesures
+
+        Serveur serveur = new Serveur();
+        Thread lancement = new Thread(() -> {
+            if (mode.equalsIgnoreCase("classique")) {
+                serveur.demarrer(port);
+            } else {
+                serveur.demarrerNio(port, 1);
+            }
+        });
+        lancement.setDaemon(true);
+        lancement.start();
+        Thread.sleep(500);
+
+        int[] sequence = BancContention.sequenceSansVictoire();
+        System.out.println("protocole\toctets/coup\técritures/coup");
+        for (boolean binaire : new boolean[]{false, true}) {
+            long octets = 0;
+            long ecritures = 0;
+            for (int p = 0; p < parties; p++) {
+                long[] mesure = jouer(port, binaire, "p" + p + (binaire ? "b" : "t"), sequence);
+                octets += mesure[0];
+                ecritures += mesure[1];
+            }
+            long coups = (long) parties * sequence.length;
+            System.out.printf("%s\t%.1f\t%.2f%n", binaire ? "binaire" : "texte",
+                    (double) octets / coups, (double) ecritures / coups);
+        }
+    }
+
+    // Joue une partie ; renvoie les octets et les écritures du serveur pendant les coups
+    private static long[] jouer(int port, boolean binaire, String nom, int[] sequence) throws Exception {
+        Joueur a = new Joueur(port, binaire, nom + "a");
+        Joueur b = new Joueur(port, binaire, nom + "b");
+        a.envoyer("play " + nom + "b");
+        b.attendreTexte("vous invite");
+        b.envoyer("yes");
+        a.attendreTour();
+        b.attendreTour();
+        Thread.sleep(100); // Laisse passer les annonces du lobby
+
+        long octets = ClientHandler.getOctetsEcrits();
+        long ecritures = ClientHandler.getEcritures();
+        for (int i = 0; i < sequence.length; i++) {
+            (i % 2 == 0 ? a : b).envoyer(Integer.toString(sequence[i]));
+            a.attendreTour();
+            b.attendreTour();
+        }
+        long[] mesure = {ClientHandler.getOctetsEcrits() - octets, ClientHandler.getEcritures() - ecritures};
+
+        a.envoyer("ff");
+        a.fermer();
+        b.fermer();
+        Thread.sleep(100);
+        return mesure;
+    }
+
+    /**
+     * Client minimal, texte ou binaire.
+     */
+    private static final class Joueur {
+        private final Socket socket;
+        private final PrintWriter out;
+        private final boolean binaire;
+        private BufferedReader texte;
+        private DataInputStream trames;
+
+        Joueur(int port, boolean binaire, String pseudo) throws IOException {
+            this.socket = new Socket("localhost", port);
+            this.binaire = binaire;
+            this.out = new PrintWriter(socket.getOutputStream(), true);
+            if (binaire) {
+                trames = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out.println(ProtocoleBinaire.DEMANDE);
+            } else {
+                texte = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            }
+            out.println(pseudo);
+            attendreTexte("Joueurs connect"); // Le joueur est enregistré (sans accent : encodage du mode classique)
+        }
+
+        void envoyer(String ligne) {
+            out.println(ligne);
+        }
+
+        // Attend l'indication de tour qui suit chaque coup
+        void attendreTour() throws IOException {
+            if (binaire) {
+                while (lireTrame()[0] != ProtocoleBinaire.OP_TOUR) {
+                    // Trames de texte, pions : ignorés
+                }
+            } else {
+                attendreTexte("C'est ");
+            }
+        }
+
+        void attendreTexte(String debut) throws IOException {
+            while (true) {
+                String ligne;
+                if (binaire) {
+                    byte[] trame = lireTrame();
+                    if (trame[0] != ProtocoleBinaire.OP_TEXTE) {
+                        continue;
+                    }
+                    ligne = new String(trame, 1, trame.length - 1, StandardCharsets.UTF_8);
+                } else {
+                    ligne = texte.readLine();
+                    if (ligne == null) {
+                        throw new IOException("Connexion fermée");
+                    }
+                }
+                if (ligne.contains(debut)) {
+                    return;
+                }
+            }
+        }
+
+        // Renvoie [code, données...]
+        private byte[] lireTrame() throws IOException {
+            byte[] trame = new byte[trames.readUnsignedShort()];
+            trames.readFully(trame);
+            return trame;
+        }
+
+        void fermer() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import banc.Operation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Prépare les opérations mesurées par les bancs JMH du paquet {@code banc}
+ * (voir {@link Operation}). Toutes les données sont tirées d'un générateur à
+ * graine fixe : deux exécutions mesurent exactement le même travail.
+ */
+public class OperationsJeu {
+    private static final long GRAINE = 42;
+    private static final int ATTENTE_MAX = 10_000; // Publications non distribuées au plus pendant le banc de diffusion
+
+    /**
+     * Prépare une opération.
+     *
+     * @param nom       {@code coup}, {@code victoire}, {@code grille}, {@code lectureJson},
+     *                  {@code ecritureJson}, {@code commande}, {@code aiguillage} ou {@code diffusion}
+     * @param parametre le nombre de joueurs (JSON), la ligne envoyée (commande),
+     *                  l'aiguillage mesuré ({@code chaine} ou {@code table}) ou
+     *                  le nombre d'abonnés (diffusion)
+     * @return l'opération
+     */
+    public static Operation creer(String nom, String parametre) {
+        switch (nom) {
+            case "coup":
+                return coup();
+            case "victoire": {
+                Puissance4 partie = partieEnCours(new Serveur());
+                ClientHandler joueur = partie.getCurrentPlayer();
+                return () -> partie.checkWin(joueur);
+            }
+            case "grille": {
+                Puissance4 partie = partieEnCours(new Serveur());
+                return () -> {
+                    partie.displayBoard();
+                    return partie;
+                };
+            }
+            case "lectureJson": {
+                String json = json(scores(Integer.parseInt(parametre))).toString();
+                return () -> {
+                    Map<String, int[]> lus = new HashMap<>();
+                    try {
+                        JsonScores.lire(new StringReader(json), lus::put);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return lus;
+                };
+            }
+            case "ecritureJson": {
+                Map<String, int[]> scores = scores(Integer.parseInt(parametre));
+                return () -> json(scores);
+            }
+            case "commande":
+                return commande(parametre);
+            case "aiguillage":
+                return aiguillage(parametre);
+            case "diffusion":
+                return diffusion(Integer.parseInt(parametre));
+            default:
+                throw new IllegalArgumentException("Opération inconnue : " + nom);
+        }
+    }
+
+    // Un coup par appel ; la suite de coups ne gagne jamais, et une nouvelle partie commence quand la grille est remplie
+    private static Operation coup() {
+        Serveur serveur = new Serveur();
+        ClientHandler[] joueurs = {session(serveur, "banc_0"), session(serveur, "banc_1")};
+        int[] colonnes = BancContention.sequenceSansVictoire();
+        return new Operation() {
+            private Puissance4 partie = new Puissance4(joueurs[0], joueurs[1], serveur);
+            private int joues = 0;
+
+            @Override
+            public Object executer() {
+                if (joues == colonnes.length) {
+                    partie = new Puissance4(joueurs[0], joueurs[1], serveur);
+                    joues = 0;
+                }
+                boolean valide = partie.makeMove(joueurs[joues & 1], colonnes[joues]);
+                joues++;
+                return valide;
+            }
+        };
+    }
+
+    // Partie à mi-chemin, pour la détection de victoire et l'affichage de la grille
+    private static Puissance4 partieEnCours(Serveur serveur) {
+        ClientHandler[] joueurs = {session(serveur, "banc_0"), session(serveur, "banc_1")};
+        Puissance4 partie = new Puissance4(joueurs[0], joueurs[1], serveur);
+        int[] sequence = BancContention.sequenceSansVictoire();
+        for (int i = 0; i < sequence.length / 2; i++) {
+            partie.makeMove(joueurs[i & 1], sequence[i]);
+        }
+        return partie;
+    }
+
+    // Une commande par appel, envoyée par un joueur inscrit parmi 10 000 joueurs classés
+    private static Operation commande(String ligne) {
+        Map<String, int[]> scores = scores(10_000);
+        ScoreStore store = new ScoreStoreJournal(scores, null);
+        Serveur.setScores(store);
+        Classement classement = new Classement(store::getPseudo);
+        scores.forEach((pseudo, stats) -> classement.ajouter(store.getId(pseudo), stats));
+        Serveur.setClassement(classement);
+        ClientHandler client = session(new Serveur(), "joueur0");
+        return () -> {
+            client.recevoirLigne(ligne);
+            return client;
+        };
+    }
+
+    // Reconnaissance d'une ligne par appel, sur un mélange fixe de coups, de commandes et de chat
+    private static Operation aiguillage(String aiguillage) {
+        String[] modeles = {"play joueur12", "play bot 3", "yes", "no", "stat", "top 10", "rank", "history",
+                "say partie bien joué", "salons", "help", "ff", "queue", "watch joueur7", "bonjour à tous", "gg"};
+        SplittableRandom hasard = new SplittableRandom(GRAINE);
+        String[] lignes = new String[1024];
+        for (int i = 0; i < lignes.length; i++) { // Deux tiers de coups, comme en partie
+            lignes[i] = hasard.nextInt(3) < 2 ? Integer.toString(hasard.nextInt(7)) : modeles[hasard.nextInt(modeles.length)];
+        }
+        int masque = lignes.length - 1;
+        if (aiguillage.equals("chaine")) {
+            return new Operation() {
+                private int suivante = 0;
+
+                @Override
+                public Object executer() {
+                    return aiguillageChaine(lignes[suivante++ & masque]);
+                }
+            };
+        }
+        Commandes commandes = ClientHandler.getCommandes();
+        return new Operation() {
+            private int suivante = 0;
+
+            @Override
+            public Object executer() {
+                String ligne = lignes[suivante++ & masque];
+                int colonne = Commandes.colonne(ligne);
+                return colonne >= 0 ? (Object) colonne : commandes.chercher(ligne);
+            }
+        };
+    }
+
+    // Ancien aiguillage de ClientHandler.handleMessage (chaîne de tests, expression régulière des coups,
+    // colonne relue par makeMove), gardé comme référence de mesure : renvoie la branche prise
+    private static Object aiguillageChaine(String message) {
+        if (message.startsWith("quit")) {
+            return "quit";
+        } else if (message.equals("play bot") || message.startsWith("play bot ")) {
+            return message.substring(8).trim();
+        } else if (message.startsWith("play ")) {
+            return message.substring(5);
+        } else if (message.equalsIgnoreCase("queue")) {
+            return "queue";
+        } else if (message.equalsIgnoreCase("queue leave")) {
+            return "queue leave";
+        } else if (message.startsWith("watch ")) {
+            return message.substring(6).trim();
+        } else if (message.equalsIgnoreCase("unwatch")) {
+            return "unwatch";
+        } else if (message.equalsIgnoreCase("yes") || message.equalsIgnoreCase("no")) {
+            return message;
+        } else if (message.matches("\\d+")) {
+            try {
+                return Integer.parseInt(message);
+            } catch (Exception e) {
+                return -1;
+            }
+        } else if (message.startsWith("ff")) {
+            return "ff";
+        } else if (message.equalsIgnoreCase("help")) {
+            return "help";
+        } else if (message.equalsIgnoreCase("stat")) {
+            return "stat";
+        } else if (message.equalsIgnoreCase("top") || message.startsWith("top ")) {
+            return message.substring(3).trim();
+        } else if (message.equalsIgnoreCase("rank") || message.startsWith("rank ")) {
+            return message.substring(4).trim();
+        } else if (message.startsWith("replay ")) {
+            return message.substring(7).trim();
+        } else if (message.equalsIgnoreCase("history") || message.startsWith("history ")) {
+            return message.substring(7).trim();
+        } else if (message.startsWith("join ")) {
+            return message.substring(5).trim();
+        } else if (message.startsWith("leave ")) {
+            return message.substring(6).trim();
+        } else if (message.startsWith("say ")) {
+            return message.substring(4).trim().split(" ", 2);
+        } else if (message.equalsIgnoreCase("salons")) {
+            return "salons";
+        } else if (message.equalsIgnoreCase("metrics")) {
+            return "metrics";
+        } else if (!message.isBlank()) {
+            return message;
+        }
+        return null;
+    }
+
+    // Une publication dans le lobby par appel ; de temps en temps, on attend que les fragments rattrapent leur retard
+    private static Operation diffusion(int abonnes) {
+        Serveur serveur = new Serveur();
+        for (int i = 0; i < abonnes; i++) {
+            session(serveur, "abonne" + i);
+        }
+        Diffuseur diffuseur = serveur.getDiffuseur();
+        return () -> {
+            serveur.broadcast("[Chat] banc: message de test");
+            if (ThreadLocalRandom.current().nextInt(256) == 0) {
+                while (diffuseur.getEnAttente() > ATTENTE_MAX) {
+                    Thread.yield();
+                }
+            }
+            return diffuseur;
+        };
+    }
+
+    private static ClientHandler session(Serveur serveur, String pseudo) {
+        ClientHandler client = new ClientHandler(serveur, new PrintWriter(Writer.nullWriter()));
+        client.recevoirLigne(pseudo);
+        return client;
+    }
+
+    private static StringWriter json(Map<String, int[]> scores) {
+        StringWriter json = new StringWriter();
+        try {
+            JsonScores.ecrire(json, scores);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json;
+    }
+
+    private static Map<String, int[]> scores(int joueurs) {
+        SplittableRandom hasard = new SplittableRandom(GRAINE);
+        Map<String, int[]> scores = new HashMap<>();
+        for (int i = 0; i < joueurs; i++) {
+            scores.put("joueur" + i, new int[]{hasard.nextInt(500), hasard.nextInt(100), hasard.nextInt(500)});
+        }
+        return scores;
+    }
+}
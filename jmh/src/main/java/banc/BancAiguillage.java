@@ -0,0 +1,44 @@
+package banc;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reconnaissance des lignes reçues, sans leur traitement : l'ancienne chaîne de
+ * tests de {@code handleMessage} (expression régulière des coups, colonne relue
+ * par {@code Integer.parseInt}) contre la table des {@code Commandes}. Les
+ * lignes sont tirées d'un mélange fixe : deux tiers de coups, le reste en
+ * commandes et en chat. Le débit est donné en millions de lignes par seconde.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BancAiguillage {
+    @Param({"chaine", "table"})
+    private String aiguillage;
+
+    private Operation operation;
+
+    @Setup
+    public void preparer() {
+        operation = Operation.creer("aiguillage", aiguillage);
+    }
+
+    @Benchmark
+    public Object reconnaitre() {
+        return operation.executer();
+    }
+}
@@ -0,0 +1,43 @@
+package banc;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Aiguillage et traitement d'une commande reçue ({@code ClientHandler.handleMessage},
+ * par {@code recevoirLigne}), la réponse partant vers une session locale.
+ * Le joueur est inscrit parmi 10 000 joueurs classés.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BancCommandes {
+    // Une commande hors partie de chaque famille : coup refusé, statistiques, classement, salons, menu
+    @Param({"3", "stat", "top 10", "rank", "salons", "help"})
+    private String commande;
+
+    private Operation operation;
+
+    @Setup
+    public void preparer() {
+        operation = Operation.creer("commande", commande);
+    }
+
+    @Benchmark
+    public Object handleMessage() {
+        return operation.executer();
+    }
+}
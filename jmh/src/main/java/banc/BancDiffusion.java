@@ -0,0 +1,45 @@
+package banc;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Diffusion dans le lobby ({@code Serveur.broadcast}) depuis 4 threads à la fois,
+ * vers des sessions locales. La publication elle-même ne bloque pas : pour
+ * mesurer un débit tenable, chaque thread attend de temps en temps que les
+ * fragments du diffuseur aient distribué l'essentiel des messages en attente.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class BancDiffusion {
+    @Param({"10", "1000"})
+    private String abonnes;
+
+    private Operation diffusion;
+
+    @Setup
+    public void preparer() {
+        diffusion = Operation.creer("diffusion", abonnes);
+    }
+
+    @Benchmark
+    public Object broadcast() {
+        return diffusion.executer();
+    }
+}
@@ -0,0 +1,48 @@
+package banc;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lecture et écriture du fichier de scores ({@code JsonScores}), en mémoire,
+ * selon le nombre de joueurs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Xmx4g")
+public class BancJson {
+    @Param({"1000", "100000", "1000000"})
+    private String joueurs;
+
+    private Operation lecture;
+    private Operation ecriture;
+
+    @Setup
+    public void preparer() {
+        lecture = Operation.creer("lectureJson", joueurs);
+        ecriture = Operation.creer("ecritureJson", joueurs);
+    }
+
+    @Benchmark
+    public Object parseJson() {
+        return lecture.executer();
+    }
+
+    @Benchmark
+    public Object generateJson() {
+        return ecriture.executer();
+    }
+}
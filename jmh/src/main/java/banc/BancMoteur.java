@@ -0,0 +1,52 @@
+package banc;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Coût d'une partie : un coup ({@code Puissance4.makeMove}, grille et messages
+ * compris, vers des sessions locales sans réseau), la détection de victoire
+ * ({@code checkWin}) et l'affichage de la grille ({@code displayBoard}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BancMoteur {
+    private Operation coup;
+    private Operation victoire;
+    private Operation grille;
+
+    @Setup
+    public void preparer() {
+        coup = Operation.creer("coup", "");
+        victoire = Operation.creer("victoire", "");
+        grille = Operation.creer("grille", "");
+    }
+
+    @Benchmark
+    public Object makeMove() {
+        return coup.executer();
+    }
+
+    @Benchmark
+    public Object checkWin() {
+        return victoire.executer();
+    }
+
+    @Benchmark
+    public Object displayBoard() {
+        return grille.executer();
+    }
+}
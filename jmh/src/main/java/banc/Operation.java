@@ -0,0 +1,37 @@
+package banc;
+
+/**
+ * Opération mesurée par un banc JMH.
+ *
+ * JMH refuse les bancs du paquet par défaut, et un paquet nommé ne peut pas
+ * importer les classes du jeu : les opérations sont donc préparées par la
+ * classe {@code OperationsJeu} (paquet par défaut), chargée une fois par son
+ * nom. Les bancs n'appellent ensuite que cette interface, avec une seule
+ * implémentation par banc, que le JIT met en ligne.
+ */
+public interface Operation {
+
+    /**
+     * Exécute une fois l'opération.
+     *
+     * @return un résultat, à consommer pour que le JIT ne supprime pas le calcul
+     */
+    Object executer();
+
+    /**
+     * Prépare une opération du jeu.
+     *
+     * @param nom       le nom de l'opération (voir {@code OperationsJeu})
+     * @param parametre son paramètre (taille, commande...), éventuellement vide
+     * @return l'opération prête à être mesurée
+     */
+    static Operation creer(String nom, String parametre) {
+        try {
+            return (Operation) Class.forName("OperationsJeu")
+                    .getMethod("creer", String.class, String.class)
+                    .invoke(null, nom, parametre);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Préparation de l'opération " + nom + " impossible", e);
+        }
+    }
+}
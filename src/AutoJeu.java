@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parties automatiques, sans serveur ni client, réparties sur tous les cœurs
+ * par un {@link ForkJoinPool} (vol de tâches).
+ *
+ * Deux usages :
+ * <ul>
+ *   <li>{@code java AutoJeu [parties] [hasard|aleatoire|moteur] [niveau] [threads]} :
+ *       joue des parties hasard contre hasard, hasard contre moteur ou moteur
+ *       contre moteur (le moteur étant le {@link Solveur} au niveau donné) et
+ *       affiche les résultats par premier coup, la longueur moyenne des parties
+ *       et le débit en parties par seconde ;</li>
+ *   <li>{@code java AutoJeu analyse <coups> [profondeur] [threads]} : analyse une
+ *       position (suite de colonnes jouées depuis la grille vide, par exemple
+ *       {@code 3344}) en cherchant chaque coup possible dans une tâche séparée.</li>
+ * </ul>
+ * Sert à régler les niveaux du bot et à mesurer le passage à l'échelle du moteur.
+ */
+public class AutoJeu {
+    private static final int COLONNES = MoteurPuissance4.COLONNES;
+    private static final int OUVERTURE = Integer.getInteger("p4.auto.ouverture", 2); // Coups au hasard avant que le moteur joue
+
+    public static void main(String[] args) {
+        if (args.length >= 1 && args[0].equalsIgnoreCase("analyse")) {
+            if (args.length < 2) {
+                System.out.println("Usage : java AutoJeu analyse <coups> [profondeur] [threads]");
+                return;
+            }
+            int profondeur = args.length >= 3 ? Integer.parseInt(args[2]) : MoteurPuissance4.LIGNES * COLONNES;
+            int threads = args.length >= 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            analyser(args[1], profondeur, threads);
+            return;
+        }
+        long parties = args.length >= 1 ? Long.parseLong(args[0]) : 100_000;
+        String mode = args.length >= 2 ? args[1] : "aleatoire";
+        int niveau = args.length >= 3 ? Integer.parseInt(args[2]) : 1;
+        int threads = args.length >= 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        jouer(parties, mode, niveau, threads);
+    }
+
+    private static void jouer(long parties, String mode, int niveau, int threads) {
+        int profondeur = Solveur.profondeurDuNiveau(niveau);
+        long seuil = Math.max(1, parties / (threads * 64L)); // Assez de tâches pour que le vol équilibre les cœurs
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long debut = System.nanoTime();
+        Bilan bilan = pool.invoke(new Lot(0, parties, seuil, mode, profondeur));
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("%d parties (%s, niveau %d) en %.2f s : %.0f parties/s sur %d threads%n",
+                bilan.parties, mode, niveau, secondes, bilan.parties / secondes, threads);
+        System.out.printf("Longueur moyenne : %.2f coups%n", (double) bilan.coups / bilan.parties);
+        System.out.println("1er coup\tparties\t1er gagne\tnul\t2e gagne");
+        for (int colonne = 0; colonne < COLONNES; colonne++) {
+            long[] r = bilan.parPremierCoup[colonne];
+            long total = r[0] + r[1] + r[2];
+            if (total > 0) {
+                System.out.printf("%d\t%d\t%.1f %%\t%.1f %%\t%.1f %%%n", colonne, total,
+                        100.0 * r[0] / total, 100.0 * r[1] / total, 100.0 * r[2] / total);
+            }
+        }
+        if (mode.equalsIgnoreCase("aleatoire")) {
+            System.out.printf("Le moteur gagne %.1f %% des parties contre le hasard%n",
+                    100.0 * bilan.victoiresMoteur / bilan.parties);
+        }
+    }
+
+    /**
+     * Joue une partie. Les parties paires, le moteur (s'il y en a un contre le
+     * hasard) a le premier coup ; les parties impaires, le second.
+     *
+     * @return [premier coup, résultat (0 : le 1er gagne, 1 : nul, 2 : le 2e gagne), nombre de coups]
+     */
+    private static int[] jouerPartie(long numero, String mode, int profondeur, SplittableRandom hasard) {
+        MoteurPuissance4 moteur = new MoteurPuissance4();
+        int moteurJoue = (int) (numero & 1); // Joueur tenu par le moteur en mode aleatoire
+        int premierCoup = -1;
+        while (!moteur.estPleine()) {
+            int joueur = moteur.getJoueurCourant();
+            boolean parMoteur = mode.equalsIgnoreCase("moteur") && moteur.getCoups() >= OUVERTURE
+                    || mode.equalsIgnoreCase("aleatoire") && joueur == moteurJoue;
+            int colonne;
+            if (parMoteur) {
+                colonne = Solveur.chercher(moteur, profondeur, 0).getColonne();
+            } else {
+                do {
+                    colonne = hasard.nextInt(COLONNES);
+                } while (!moteur.peutJouer(colonne));
+            }
+            if (premierCoup < 0) {
+                premierCoup = colonne;
+            }
+            moteur.jouer(colonne);
+            if (moteur.aGagne(joueur)) {
+                return new int[]{premierCoup, joueur == 0 ? 0 : 2, moteur.getCoups()};
+            }
+        }
+        return new int[]{premierCoup, 1, moteur.getCoups()};
+    }
+
+    /**
+     * Résultats agrégés d'un ensemble de parties.
+     */
+    private static final class Bilan {
+        long parties;
+        long coups;
+        long victoiresMoteur;
+        final long[][] parPremierCoup = new long[COLONNES][3];
+
+        void ajouter(Bilan autre) {
+            parties += autre.parties;
+            coups += autre.coups;
+            victoiresMoteur += autre.victoiresMoteur;
+            for (int colonne = 0; colonne < COLONNES; colonne++) {
+                for (int r = 0; r < 3; r++) {
+                    parPremierCoup[colonne][r] += autre.parPremierCoup[colonne][r];
+                }
+            }
+        }
+    }
+
+    /**
+     * Parties numérotées de debut (inclus) à fin (exclu) ; coupé en deux tant
+     * qu'il y en a plus que le seuil.
+     */
+    private static final class Lot extends RecursiveTask<Bilan> {
+        private static final long serialVersionUID = 1L;
+
+        private final long debut;
+        private final long fin;
+        private final long seuil;
+        private final String mode;
+        private final int profondeur;
+
+        Lot(long debut, long fin, long seuil, String mode, int profondeur) {
+            this.debut = debut;
+            this.fin = fin;
+            this.seuil = seuil;
+            this.mode = mode;
+            this.profondeur = profondeur;
+        }
+
+        @Override
+        protected Bilan compute() {
+            if (fin - debut > seuil) {
+                long milieu = (debut + fin) >>> 1;
+                Lot droite = new Lot(milieu, fin, seuil, mode, profondeur);
+                droite.fork();
+                Bilan bilan = new Lot(debut, milieu, seuil, mode, profondeur).compute();
+                bilan.ajouter(droite.join());
+                return bilan;
+            }
+            Bilan bilan = new Bilan();
+            for (long numero = debut; numero < fin; numero++) {
+                // Graine propre à chaque partie : les mêmes parties quel que soit le nombre de threads
+                int[] partie = jouerPartie(numero, mode, profondeur, new SplittableRandom(numero));
+                bilan.parties++;
+                bilan.coups += partie[2];
+                bilan.parPremierCoup[partie[0]][partie[1]]++;
+                int moteurJoue = (int) (numero & 1);
+                if (partie[1] == 2 * moteurJoue) {
+                    bilan.victoiresMoteur++;
+                }
+            }
+            return bilan;
+        }
+    }
+
+    // Analyse : chaque coup possible est cherché par sa propre tâche (découpage à la racine)
+    private static void analyser(String coups, int profondeur, int threads) {
+        MoteurPuissance4 position = new MoteurPuissance4();
+        for (char c : coups.toCharArray()) {
+            int colonne = c - '0';
+            if (!position.peutJouer(colonne) || position.aGagne(0) || position.aGagne(1)) {
+                System.out.println("Suite de coups invalide : " + coups);
+                return;
+            }
+            position.jouer(colonne);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long debut = System.nanoTime();
+        List<RecursiveTask<Solveur.Resultat>> taches = new ArrayList<>();
+        for (int colonne = 0; colonne < COLONNES; colonne++) {
+            if (!position.peutJouer(colonne) || position.gagneEnJouant(colonne)) {
+                taches.add(null);
+                continue;
+            }
+            MoteurPuissance4 apres = position.copie();
+            apres.jouer(colonne);
+            RecursiveTask<Solveur.Resultat> tache = new RecursiveTask<Solveur.Resultat>() {
+                @Override
+                protected Solveur.Resultat compute() {
+                    return Solveur.chercher(apres, profondeur, 0);
+                }
+            };
+            taches.add(tache);
+            pool.execute(tache);
+        }
+
+        System.out.println("colonne\tscore\tprofondeur\tnœuds");
+        long noeuds = 0;
+        for (int colonne = 0; colonne < COLONNES; colonne++) {
+            RecursiveTask<Solveur.Resultat> tache = taches.get(colonne);
+            if (!position.peutJouer(colonne)) {
+                continue;
+            }
+            if (tache == null) {
+                System.out.println(colonne + "\tvictoire immédiate");
+                continue;
+            }
+            Solveur.Resultat resultat = tache.join();
+            noeuds += resultat.getNoeuds();
+            // Le score est du point de vue de l'adversaire, qui joue après ce coup
+            System.out.println(colonne + "\t" + decrire(-resultat.getScore()) + "\t" + resultat.getProfondeur()
+                    + "\t" + resultat.getNoeuds());
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        pool.shutdown();
+        System.out.printf("%d nœuds en %.2f s : %.0f nœuds/s sur %d threads%n", noeuds, secondes, noeuds / secondes, threads);
+    }
+
+    private static String decrire(int score) {
+        if (score >= Solveur.VICTOIRE) {
+            return "gagne";
+        }
+        if (score <= -Solveur.VICTOIRE) {
+            return "perd";
+        }
+        return Integer.toString(score);
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Boucle d'événements du mode NIO.
+ * Un seul thread surveille, via un {@link Selector}, toutes les connexions qui
+ * lui ont été confiées : il lit les lignes reçues, les transmet aux
+ * {@link ClientHandler} et vide les files d'écriture des connexions.
+ */
+public class BoucleNio implements Runnable {
+    private static final int TAILLE_LECTURE = 8192;
+
+    private final Selector selector;
+    private final int numero;
+    private final ByteBuffer lecture = ByteBuffer.allocateDirect(TAILLE_LECTURE); // Tampon de lecture partagé par toutes les connexions de la boucle
+    private final Queue<NioConnexion> nouvelles = new ConcurrentLinkedQueue<>(); // Connexions en attente d'enregistrement
+    private final Queue<NioConnexion> aEcrire = new ConcurrentLinkedQueue<>(); // Connexions qui ont des messages à envoyer
+    private volatile Thread threadBoucle; // Thread qui exécute la boucle
+
+    /**
+     * Crée une boucle d'événements et son sélecteur.
+     *
+     * @param numero le numéro de la boucle (pour les messages de log)
+     */
+    public BoucleNio(int numero) throws IOException {
+        this.numero = numero;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Confie une nouvelle connexion à la boucle.
+     * Peut être appelée depuis n'importe quel thread.
+     *
+     * @param connexion la connexion à surveiller
+     */
+    public void enregistrer(NioConnexion connexion) {
+        nouvelles.add(connexion);
+        selector.wakeup();
+    }
+
+    /**
+     * Demande à la boucle de vider la file d'écriture d'une connexion.
+     * Peut être appelée depuis n'importe quel thread.
+     *
+     * @param connexion la connexion qui a des messages en attente
+     */
+    public void programmerEcriture(NioConnexion connexion) {
+        aEcrire.add(connexion);
+        if (Thread.currentThread() != threadBoucle) { // Inutile de réveiller le sélecteur depuis la boucle elle-même
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        threadBoucle = Thread.currentThread();
+        while (true) {
+            try {
+                selector.select();
+                enregistrerNouvelles();
+                traiterCles();
+                viderEcritures();
+            } catch (IOException e) {
+                Traces.tracer(Traces.Evenement.ERREUR_BOUCLE_NIO, e, numero);
+            }
+        }
+    }
+
+    private void enregistrerNouvelles() {
+        NioConnexion connexion;
+        while ((connexion = nouvelles.poll()) != null) {
+            try {
+                connexion.setCle(connexion.getCanal().register(selector, SelectionKey.OP_READ, connexion));
+                Traces.tracer(Traces.Evenement.CONNEXION);
+            } catch (IOException e) {
+                connexion.getHandler().disconnect();
+            }
+        }
+    }
+
+    private void traiterCles() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey cle = it.next();
+            it.remove();
+            NioConnexion connexion = (NioConnexion) cle.attachment();
+            try {
+                if (cle.isReadable()) {
+                    lire(connexion);
+                }
+                if (cle.isValid() && cle.isWritable()) {
+                    connexion.vider();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                connexion.getHandler().disconnect();
+            }
+        }
+    }
+
+    private void lire(NioConnexion connexion) throws IOException {
+        lecture.clear();
+        int lus = connexion.getCanal().read(lecture);
+        if (lus < 0) {
+            connexion.getHandler().disconnect();
+            return;
+        }
+        lecture.flip();
+        connexion.decouperLignes(lecture);
+    }
+
+    private void viderEcritures() {
+        NioConnexion connexion;
+        while ((connexion = aEcrire.poll()) != null) {
+            try {
+                connexion.vider();
+            } catch (IOException | CancelledKeyException e) {
+                connexion.getHandler().disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+
+/**
+ * Classement des joueurs, tenu à jour partie après partie.
+ *
+ * Chaque joueur a un nombre de points ({@value #POINTS_VICTOIRE} par victoire,
+ * {@value #POINTS_NUL} par match nul). Un arbre de Fenwick compte les joueurs
+ * par nombre de points : le rang d'un joueur (1 + le nombre de joueurs ayant
+ * strictement plus de points) et le palier du k-ième joueur s'obtiennent en
+ * O(log P), P étant le plus grand nombre de points. Une fin de partie déplace
+ * deux joueurs d'un palier à un autre, en O(log P).
+ *
+ * Les joueurs sont désignés par leur identifiant dans le stockage des scores :
+ * les points sont un tableau {@code int} indicé par identifiant, et chaque
+ * palier une liste doublement chaînée d'identifiants, rangée elle aussi dans
+ * des tableaux {@code int}. Les pseudos ne servent qu'à l'affichage du top.
+ *
+ * Les joueurs à égalité de points partagent le même rang ; dans le top, ils
+ * sont listés par ordre alphabétique.
+ */
+public class Classement {
+    public static final int POINTS_VICTOIRE = 3;
+    public static final int POINTS_NUL = 1;
+    private static final int PALIERS_INITIAUX = 1024;
+    private static final int JOUEURS_INITIAUX = 1024;
+    private static final int AUCUN = -1;
+
+    private final IntFunction<String> pseudos; // Identifiant -> pseudo, pour le top
+    // Lecture : rangs et top. Écriture : ajout de joueurs et fins de partie.
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private int[] points = vide(JOUEURS_INITIAUX); // Par identifiant, AUCUN si le joueur n'est pas classé
+    private int[] suivants = new int[JOUEURS_INITIAUX]; // Par identifiant : joueur suivant du même palier
+    private int[] precedents = new int[JOUEURS_INITIAUX]; // Par identifiant : joueur précédent du même palier
+    private int[] tetes = vide(PALIERS_INITIAUX); // Par nombre de points : premier joueur du palier
+    private int[] effectifs = new int[PALIERS_INITIAUX]; // Nombre de joueurs par nombre de points
+    private int[] arbre = new int[PALIERS_INITIAUX + 1]; // Arbre de Fenwick sur effectifs, indicé à partir de 1
+    private int total = 0;
+
+    /**
+     * @param pseudos renvoie le pseudo d'un identifiant (affichage du top)
+     */
+    public Classement(IntFunction<String> pseudos) {
+        this.pseudos = pseudos;
+    }
+
+    /**
+     * Calcule les points correspondant à des scores.
+     *
+     * @param stats [defaites, nul, victoires]
+     * @return le nombre de points
+     */
+    public static int points(int[] stats) {
+        return POINTS_VICTOIRE * stats[2] + POINTS_NUL * stats[1];
+    }
+
+    /**
+     * Ajoute un joueur avec ses scores actuels, s'il n'est pas déjà classé.
+     *
+     * @param id    l'identifiant du joueur
+     * @param stats ses scores [defaites, nul, victoires]
+     */
+    public void ajouter(int id, int[] stats) {
+        verrou.writeLock().lock();
+        try {
+            if (id >= points.length) {
+                agrandirJoueurs(id);
+            }
+            if (points[id] == AUCUN) {
+                placer(id, points(stats));
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ajoute un joueur sans points, s'il n'est pas déjà classé.
+     *
+     * @param id l'identifiant du joueur
+     */
+    public void ajouterJoueur(int id) {
+        ajouter(id, new int[]{0, 0, 0});
+    }
+
+    /**
+     * Met à jour le classement après une partie.
+     *
+     * @param joueur     l'identifiant du joueur
+     * @param adversaire l'identifiant de l'adversaire
+     * @param statJoueur l'indice [defaites, nul, victoires] du résultat du joueur ;
+     *                   celui de l'adversaire est {@code 2 - statJoueur}
+     */
+    public void enregistrerResultat(int joueur, int adversaire, int statJoueur) {
+        Metriques.verrouiller(verrou.writeLock(), Metriques.ATTENTE_VERROU_CLASSEMENT);
+        try {
+            ajouterPoints(joueur, gain(statJoueur));
+            ajouterPoints(adversaire, gain(2 - statJoueur));
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Renvoie le rang d'un joueur (1 pour le premier).
+     *
+     * @param id l'identifiant du joueur
+     * @return son rang, ou -1 s'il n'est pas classé
+     */
+    public int getRang(int id) {
+        verrou.readLock().lock();
+        try {
+            int p = pointsDe(id);
+            return p == AUCUN ? -1 : rang(p);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Renvoie les points d'un joueur.
+     *
+     * @param id l'identifiant du joueur
+     * @return ses points, ou -1 s'il n'est pas classé
+     */
+    public int getPoints(int id) {
+        verrou.readLock().lock();
+        try {
+            return pointsDe(id);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    public int getNbJoueurs() {
+        verrou.readLock().lock();
+        try {
+            return total;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Renvoie les n premiers joueurs, sous la forme "rang. pseudo - points".
+     * Seuls les paliers parcourus sont visités : le coût ne dépend pas du
+     * nombre total de joueurs, mais de la taille de ces paliers.
+     *
+     * @param n le nombre de joueurs voulus
+     * @return une ligne par joueur, du premier au n-ième
+     */
+    public List<String> getTop(int n) {
+        List<String> lignes = new ArrayList<>();
+        verrou.readLock().lock();
+        try {
+            int k = 1; // Position (par points décroissants) du premier joueur du palier suivant
+            while (lignes.size() < n && k <= total) {
+                int palier = kieme(total - k + 1); // Le k-ième meilleur est le (total - k + 1)-ième plus faible
+                int rang = rang(palier);
+                for (String pseudo : premiersDuPalier(palier, n - lignes.size())) {
+                    lignes.add(rang + ". " + pseudo + " - " + palier + " points");
+                }
+                k = rang + effectifs[palier];
+            }
+            return lignes;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private static int gain(int stat) {
+        return stat == 2 ? POINTS_VICTOIRE : stat == 1 ? POINTS_NUL : 0;
+    }
+
+    private static int[] vide(int taille) {
+        int[] tableau = new int[taille];
+        Arrays.fill(tableau, AUCUN);
+        return tableau;
+    }
+
+    // Appelées avec le verrou de lecture ou d'écriture
+    private int pointsDe(int id) {
+        return id >= 0 && id < points.length ? points[id] : AUCUN;
+    }
+
+    // Les m premiers pseudos du palier par ordre alphabétique : un tas borné à m pseudos
+    private List<String> premiersDuPalier(int palier, int m) {
+        PriorityQueue<String> tas = new PriorityQueue<>(Collections.reverseOrder());
+        for (int id = tetes[palier]; id != AUCUN; id = suivants[id]) {
+            tas.add(pseudos.apply(id));
+            if (tas.size() > m) {
+                tas.poll(); // Retire le plus grand
+            }
+        }
+        List<String> premiers = new ArrayList<>(tas);
+        Collections.sort(premiers);
+        return premiers;
+    }
+
+    // Appelées avec le verrou d'écriture
+    private void ajouterPoints(int id, int gain) {
+        if (id >= points.length) {
+            agrandirJoueurs(id);
+        }
+        int avant = points[id];
+        if (avant == AUCUN) {
+            placer(id, gain);
+            return;
+        }
+        if (gain == 0) {
+            return;
+        }
+        retirer(id, avant);
+        placer(id, avant + gain);
+    }
+
+    private void placer(int id, int p) {
+        if (p >= effectifs.length) {
+            agrandir(p);
+        }
+        points[id] = p;
+        int tete = tetes[p];
+        precedents[id] = AUCUN;
+        suivants[id] = tete;
+        if (tete != AUCUN) {
+            precedents[tete] = id;
+        }
+        tetes[p] = id;
+        modifier(p, 1);
+        total++;
+    }
+
+    private void retirer(int id, int p) {
+        int precedent = precedents[id];
+        int suivant = suivants[id];
+        if (precedent == AUCUN) {
+            tetes[p] = suivant;
+        } else {
+            suivants[precedent] = suivant;
+        }
+        if (suivant != AUCUN) {
+            precedents[suivant] = precedent;
+        }
+        points[id] = AUCUN;
+        modifier(p, -1);
+        total--;
+    }
+
+    // Double la capacité des tableaux par identifiant jusqu'à contenir id
+    private void agrandirJoueurs(int id) {
+        int taille = points.length;
+        while (id >= taille) {
+            taille *= 2;
+        }
+        int ancienne = points.length;
+        points = Arrays.copyOf(points, taille);
+        Arrays.fill(points, ancienne, taille, AUCUN);
+        suivants = Arrays.copyOf(suivants, taille);
+        precedents = Arrays.copyOf(precedents, taille);
+    }
+
+    private void modifier(int palier, int delta) {
+        effectifs[palier] += delta;
+        for (int i = palier + 1; i < arbre.length; i += i & -i) {
+            arbre[i] += delta;
+        }
+    }
+
+    // Nombre de joueurs ayant au plus p points
+    private int prefixe(int p) {
+        int somme = 0;
+        for (int i = p + 1; i > 0; i -= i & -i) {
+            somme += arbre[i];
+        }
+        return somme;
+    }
+
+    private int rang(int p) {
+        return 1 + total - prefixe(p);
+    }
+
+    // Plus petit nombre de points p tel que prefixe(p) >= cible (1 <= cible <= total)
+    private int kieme(int cible) {
+        int position = 0;
+        for (int pas = Integer.highestOneBit(effectifs.length); pas > 0; pas >>= 1) {
+            int suivant = position + pas;
+            if (suivant < arbre.length && arbre[suivant] < cible) {
+                position = suivant;
+                cible -= arbre[suivant];
+            }
+        }
+        return position; // Indice Fenwick position + 1, soit le palier position
+    }
+
+    // Double le nombre de paliers jusqu'à contenir p, puis reconstruit l'arbre en O(P)
+    private void agrandir(int p) {
+        int taille = effectifs.length;
+        while (p >= taille) {
+            taille *= 2;
+        }
+        int ancienne = effectifs.length;
+        effectifs = Arrays.copyOf(effectifs, taille);
+        tetes = Arrays.copyOf(tetes, taille);
+        Arrays.fill(tetes, ancienne, taille, AUCUN);
+        arbre = new int[taille + 1];
+        for (int i = 1; i <= taille; i++) {
+            arbre[i] += effectifs[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= taille) {
+                arbre[parent] += arbre[i];
+            }
+        }
+    }
+}
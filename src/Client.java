@@ -1,5 +1,7 @@
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
@@ -16,6 +18,9 @@ public class Client {
     private int victoire;
     private int defaite;
     private int nul;
+    private boolean binaire; // Protocole binaire : le client tient sa propre grille
+    private final char[][] grille = new char[6][7]; // Grille locale (ligne 0 = bas), en mode binaire
+    private String adversaire;
 
     /**
      * Méthode principale qui démarre l'application cliente.
@@ -27,6 +32,15 @@ public class Client {
         String serverAddress = "localhost"; // Adresse par défaut
         int serverPort = 12345; // Port par défaut
 
+        if (args.length >= 1 && args[0].equalsIgnoreCase("charge")) { // java Client charge [adresse] [port] [sessions] [secondes]
+            try {
+                GenerateurCharge.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                System.err.println("Erreur du générateur de charge : " + e.getMessage());
+            }
+            return;
+        }
+
         // Vérification des arguments de la ligne de commande
         if (args.length >= 1) {
             serverAddress = args[0]; // Récupère l'adresse IP
@@ -40,6 +54,7 @@ public class Client {
         }
 
         Client client = new Client();
+        client.binaire = args.length >= 3 && args[2].equalsIgnoreCase("binaire"); // java Client [adresse] [port] [binaire]
         client.start(serverAddress, serverPort); // Passe l'adresse et le port à la méthode start
     }
 
@@ -60,6 +75,9 @@ public class Client {
             
             System.out.println("Entrez votre pseudo :");
             pseudo = scanner.nextLine();
+            if (binaire) {
+                out.println(ProtocoleBinaire.DEMANDE); // Demande du protocole binaire, avant le pseudo
+            }
             out.println(pseudo); // Envoi du pseudo au serveur
             System.out.println(
                 "\n===================================" +
@@ -80,6 +98,10 @@ public class Client {
             // Démarrer un thread pour écouter les messages du serveur
             Thread listener = new Thread(() -> {
                 try {
+                    if (binaire) {
+                        lireTrames(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+                        return;
+                    }
                     String serverMessage;
                     while ((serverMessage = in.readLine()) != null) {
                         System.out.println(serverMessage); // Affiche les messages reçus du serveur
@@ -137,6 +159,81 @@ public class Client {
         }
     }
 
+    /**
+     * Lit les trames du protocole binaire jusqu'à la fermeture de la connexion.
+     * La grille est mise à jour pion par pion et affichée localement.
+     *
+     * @param flux le flux de la socket
+     */
+    private void lireTrames(DataInputStream flux) throws IOException {
+        while (true) {
+            int longueur;
+            try {
+                longueur = flux.readUnsignedShort();
+            } catch (EOFException e) {
+                System.out.println("Connexion au serveur perdue.");
+                return;
+            }
+            byte code = flux.readByte();
+            byte[] donnees = new byte[longueur - 1];
+            flux.readFully(donnees);
+            switch (code) {
+                case ProtocoleBinaire.OP_VERSION:
+                    System.out.println("Protocole binaire, version " + donnees[0] + ".");
+                    break;
+                case ProtocoleBinaire.OP_TEXTE:
+                    System.out.println(new String(donnees, StandardCharsets.UTF_8));
+                    break;
+                case ProtocoleBinaire.OP_DEBUT:
+                    adversaire = new String(donnees, 1, donnees.length - 1, StandardCharsets.UTF_8);
+                    for (char[] ligne : grille) {
+                        Arrays.fill(ligne, '.');
+                    }
+                    System.out.println("Vous jouez les " + (donnees[0] == 0 ? "X" : "O") + " contre " + adversaire + ".");
+                    afficherGrille();
+                    break;
+                case ProtocoleBinaire.OP_PION:
+                    grille[donnees[1]][donnees[0]] = donnees[2] == 0 ? 'X' : 'O';
+                    afficherGrille();
+                    break;
+                case ProtocoleBinaire.OP_TOUR:
+                    System.out.println(donnees[0] == 1 ? "C'est à vous de jouer." : "C'est à " + adversaire + " de jouer.");
+                    break;
+                case ProtocoleBinaire.OP_SUIVI:
+                    int cases = grille.length * grille[0].length;
+                    for (int i = 0; i < cases; i++) {
+                        grille[i / grille[0].length][i % grille[0].length] = donnees[i] == 0 ? 'X' : donnees[i] == 1 ? 'O' : '.';
+                    }
+                    String[] joueurs = new String(donnees, cases, donnees.length - cases, StandardCharsets.UTF_8).split("\n", 2);
+                    System.out.println("Vous regardez " + joueurs[0] + " (X) contre " + (joueurs.length > 1 ? joueurs[1] : "?") + " (O).");
+                    afficherGrille();
+                    break;
+                case ProtocoleBinaire.OP_FIN:
+                    System.out.println(donnees[0] == 2 ? "Partie gagnée !" : donnees[0] == 1 ? "Match nul." : "Partie perdue.");
+                    break;
+                default:
+                    break; // Code inconnu (serveur plus récent) : trame ignorée
+            }
+        }
+    }
+
+    // Affiche la grille locale, dans le même format que le serveur en mode texte
+    private void afficherGrille() {
+        StringBuilder affichage = new StringBuilder("   1   2   3   4   5   6   7\n");
+        for (int i = grille.length - 1; i >= 0; i--) {
+            affichage.append("  +---+---+---+---+---+---+---+\n");
+            for (int j = 0; j < grille[i].length; j++) {
+                affichage.append("  ").append(grille[i][j]).append(' ');
+                if (j < grille[i].length - 1) {
+                    affichage.append("|");
+                }
+            }
+            affichage.append("\n");
+        }
+        affichage.append("  +---+---+---+---+---+---+---+");
+        System.out.println(affichage);
+    }
+
     /**
      * Vérifie si une chaîne de caractères représente un nombre entier.
      *
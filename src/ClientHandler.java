@@ -1,18 +1,36 @@
 import java.io.*;
 import java.net.Socket;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Classe qui gère la communication avec un client connecté au serveur.
- * Chaque client est traité dans un thread distinct pour permettre la gestion
- * concurrente des clients.
+ * Chaque client est traité dans une session distincte (thread classique,
+ * thread virtuel ou boucle NIO) pour permettre la gestion concurrente des clients.
  */
-public class ClientHandler extends Thread {
-    private Socket clientSocket; // Socket de communication avec le client
+public class ClientHandler implements Runnable {
+    private static final int TOP_DEFAUT = 10; // Joueurs affichés par "top" sans argument
+    private static final int TOP_MAX = 100;
+
+    // Écritures sur les sockets de tous les clients (appels système et octets), pour les mesures
+    private static final LongAdder ECRITURES = new LongAdder();
+    private static final LongAdder OCTETS_ECRITS = new LongAdder();
+
+    private Socket clientSocket; // Socket de communication avec le client (mode classique)
+    private NioConnexion connexion; // Connexion non bloquante (mode NIO)
     private Serveur server; // Référence au serveur
     private PrintWriter out; // Flux de sortie pour envoyer des messages au client
+    private OutputStream flux; // Flux d'octets vers la socket (mode classique), texte en UTF-8 et trames binaires
+    private FileSortie sortie; // Messages en attente d'envoi (null pour une session locale)
     private BufferedReader in; // Flux d'entrée pour lire les messages du client
     private String pseudo; // Pseudo du client
+    private volatile int idJoueur = -1; // Identifiant du joueur dans le stockage des scores, attribué à la connexion
+    private volatile boolean deconnecte = false; // Évite de désenregistrer deux fois le client
+    private volatile boolean binaire = false; // Protocole binaire négocié (voir ProtocoleBinaire)
+    private int niveauBot = 0; // Niveau du bot, 0 pour un joueur humain
 
     // Historique des parties
     private int totalParties = 0;
@@ -29,70 +47,257 @@ public class ClientHandler extends Thread {
     public ClientHandler(Socket clientSocket, Serveur server) {
         this.clientSocket = clientSocket;
         this.server = server;
+        this.sortie = new FileSortie();
+    }
+
+    /**
+     * Constructeur utilisé en mode NIO : aucune thread n'est démarrée, les
+     * lignes sont transmises par la boucle d'événements via {@link #recevoirLigne}.
+     * 
+     * @param connexion La connexion non bloquante du client
+     * @param server    La référence au serveur
+     */
+    public ClientHandler(NioConnexion connexion, Serveur server) {
+        this.connexion = connexion;
+        this.server = server;
+        this.sortie = new FileSortie(connexion::signaler); // La boucle NIO videra la file
+    }
+
+    /**
+     * Constructeur d'une session locale, sans connexion réseau : les messages
+     * destinés au client sont écrits dans le flux fourni et les lignes sont
+     * transmises par {@link #recevoirLigne}. Sert notamment aux bancs de mesure.
+     * 
+     * @param server La référence au serveur
+     * @param out    Le flux qui reçoit les messages destinés au client
+     */
+    public ClientHandler(Serveur server, PrintWriter out) {
+        this.server = server;
+        this.out = out;
     }
 
     /**
-     * Méthode qui est exécutée lorsque le thread démarre.
-     * Elle établit la communication avec le client, reçoit les messages,
-     * et appelle la méthode appropriée pour chaque type de message.
+     * Crée le joueur d'un bot : une session locale dont les messages sont
+     * ignorés, qui n'est pas enregistrée parmi les clients connectés.
+     * 
+     * @param server La référence au serveur
+     * @param niveau Le niveau du bot, de 1 à 5
+     * @return Le joueur du bot
+     */
+    public static ClientHandler bot(Serveur server, int niveau) {
+        ClientHandler bot = new ClientHandler(server, new PrintWriter(Writer.nullWriter()));
+        bot.pseudo = "bot-" + niveau;
+        bot.niveauBot = niveau;
+        return bot;
+    }
+
+    /**
+     * Méthode qui est exécutée lorsque la session démarre.
+     * Elle établit la communication avec le client, lance l'écrivain qui vide
+     * la file de sortie, reçoit les messages, et appelle la méthode appropriée
+     * pour chaque type de message.
      */
     @Override
     public void run() {
         try {
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
+            flux = new BufferedOutputStream(new FluxCompte(clientSocket.getOutputStream()));
             in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            pseudo = in.readLine();
-            server.registerClient(this, pseudo);
-            Map<String, int[]> currentScores = server.getScores();
-
-            // Initialiser les scores du joueur si inexistant
-            if (!currentScores.containsKey(pseudo)) {
-                currentScores.put(pseudo, new int[] { 0, 0, 0 }); // [defaites, nuls, victoires]
-                System.out.println("Nouveau joueur ajouté avec des scores par défaut.");
-            }
+            server.executer(this::ecrire);
             String message;
             while ((message = in.readLine()) != null) {
-                handleMessage(message);
+                recevoirLigne(message);
             }
         } catch (IOException e) {
-            System.out.println("Erreur avec le client " + pseudo);
+            Traces.tracer(Traces.Evenement.ERREUR_CLIENT, pseudo);
         } finally {
             disconnect();
         }
     }
 
     /**
-     * Gère les différents types de messages envoyés par le client.
-     * 
-     * @param message Le message reçu du client
+     * Écrivain de la session : vide la file de sortie vers la socket.
+     * Le tampon n'est vidé sur le réseau que lorsque la file est vide, ce qui
+     * regroupe les rafales de messages en peu d'écritures.
      */
-    private void handleMessage(String message) {
-        if (message.startsWith("quit")) {
-            disconnect();
-
-        } else if (message.startsWith("play ")) {
-            String targetPlayer = message.substring(5);
-            server.sendInvitation(this, targetPlayer);
+    private void ecrire() {
+        try {
+            Object message;
+            while ((message = sortie.attendre()) != null) {
+                // Lignes, textes partagés et trames passent par le même tampon : une seule écriture par lot
+                if (message instanceof String && !binaire) {
+                    flux.write(((String) message).getBytes(StandardCharsets.UTF_8));
+                    flux.write('\n');
+                } else {
+                    flux.write(encoder(message));
+                }
+                if (sortie.estVide()) {
+                    flux.flush();
+                }
+            }
+        } catch (IOException e) {
+            disconnect(); // Socket fermée ou en erreur
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        } else if (message.equalsIgnoreCase("yes") || message.equalsIgnoreCase("no")) {
-            server.handleResponse(this, message);
+    /**
+     * Encode un message de la file de sortie selon le protocole du client.
+     * 
+     * @param message Une ligne de texte ou une trame binaire déjà encodée
+     * @return Les octets à écrire sur la socket
+     */
+    public byte[] encoder(Object message) {
+        if (message instanceof byte[]) {
+            return (byte[]) message;
+        }
+        if (binaire) {
+            return ProtocoleBinaire.texte((String) message);
+        }
+        return (message + "\n").getBytes(StandardCharsets.UTF_8);
+    }
 
-        } else if (message.matches("\\d+")) { // Si le message est un numéro, c'est un mouvement
-            server.handleMove(this, message); // Envoi du mouvement au serveur
+    /**
+     * Traite une ligne reçue du client : la première ligne est le pseudo,
+     * les suivantes sont des commandes. Tout ce que la commande envoie, à ce
+     * client comme aux autres, part en un seul envoi par client à la fin du
+     * traitement (voir {@link FileSortie#ouvrirCycle()}).
+     * 
+     * @param message La ligne reçue (sans fin de ligne)
+     */
+    public void recevoirLigne(String message) {
+        FileSortie.ouvrirCycle();
+        try {
+            traiterLigne(message);
+        } finally {
+            FileSortie.fermerCycle();
+        }
+    }
 
-        } else if (message.startsWith("ff")) {
-            server.handleMove(this, "ff");
+    private void traiterLigne(String message) {
+        if (pseudo == null && !binaire && sortie != null && message.equals(ProtocoleBinaire.DEMANDE)) {
+            binaire = true; // Le pseudo suivra sur la ligne suivante
+            envoyerTrame(ProtocoleBinaire.version());
+        } else if (pseudo == null) {
+            if (!ScoreStore.pseudoValide(message)) { // Seul contrôle : les stockages de scores ne tronquent jamais un pseudo
+                send("Pseudo trop long (" + ScoreStore.PSEUDO_MAX + " octets au plus). Entrez un autre pseudo :");
+                return;
+            }
+            pseudo = message;
+            server.registerClient(this, pseudo);
 
-        } else if (message.equalsIgnoreCase("help")) {
-            afficherMenu();
+            // Identifiant du joueur, créé avec des scores à zéro si inexistant
+            ScoreStore scores = Serveur.getScores();
+            int connus = scores.getNbJoueurs();
+            idJoueur = scores.interner(pseudo);
+            if (idJoueur >= connus) { // Les identifiants sont attribués dans l'ordre
+                Traces.tracer(Traces.Evenement.NOUVEAU_JOUEUR, pseudo);
+            }
+            Serveur.getClassement().ajouterJoueur(idJoueur);
+        } else {
+            handleMessage(message);
+        }
+    }
 
-        } else if (message.equalsIgnoreCase("stat")) {
-            showHistory();  // Cette méthode affiche l'historique du joueur
+    /**
+     * Gère les différents types de messages envoyés par le client : un coup
+     * (un nombre), une commande de la table {@link #COMMANDES}, ou sinon un
+     * message de chat pour le lobby.
+     * 
+     * @param message Le message reçu du client
+     */
+    private void handleMessage(String message) {
+        long debut = System.nanoTime();
+        Metriques.Commande type;
+        int colonne = Commandes.colonne(message);
+        Commandes.Commande commande;
+        if (colonne >= 0) { // Un numéro : c'est un mouvement
+            server.handleMove(this, colonne);
+            type = Metriques.Commande.COUP;
+        } else if ((commande = COMMANDES.chercher(message)) != null) {
+            type = commande.executer(this, message);
         } else if (!message.isBlank()) {
             server.broadcastMessage(pseudo, message);
-
+            type = Metriques.Commande.CHAT;
         } else {
             send("Commande non reconnue.");
+            type = Metriques.Commande.AUTRE;
+        }
+        type.enregistrer(System.nanoTime() - debut);
+    }
+
+    // Commandes du protocole texte ; une nouvelle commande s'ajoute ici, avec son action
+    private static final Commandes COMMANDES = new Commandes();
+    static {
+        Metriques.Commande autre = Metriques.Commande.AUTRE;
+        COMMANDES.enregistrer("quit", Commandes.Argument.FACULTATIF, autre, null, (client, argument) -> client.disconnect());
+        COMMANDES.enregistrer("play", Commandes.Argument.OBLIGATOIRE, Metriques.Commande.PLAY, "play <pseudo> ou play bot [niveau]",
+                ClientHandler::jouer);
+        COMMANDES.enregistrer("queue", Commandes.Argument.FACULTATIF, Metriques.Commande.PLAY, null, (client, argument) -> {
+            if (argument.isEmpty()) {
+                client.server.rejoindreFile(client);
+            } else if (argument.equalsIgnoreCase("leave")) {
+                client.server.quitterFile(client);
+            } else {
+                client.send("Usage : queue [leave]");
+            }
+        });
+        COMMANDES.enregistrer("watch", Commandes.Argument.OBLIGATOIRE, autre, "watch <pseudo>",
+                (client, argument) -> client.server.regarder(client, argument));
+        COMMANDES.enregistrer("unwatch", Commandes.Argument.AUCUN, autre, null, (client, argument) -> client.server.arreterRegarder(client));
+        COMMANDES.enregistrer("yes", Commandes.Argument.AUCUN, Metriques.Commande.REPONSE, null,
+                (client, argument) -> client.server.handleResponse(client, "yes"));
+        COMMANDES.enregistrer("no", Commandes.Argument.AUCUN, Metriques.Commande.REPONSE, null,
+                (client, argument) -> client.server.handleResponse(client, "no"));
+        COMMANDES.enregistrer("ff", Commandes.Argument.FACULTATIF, Metriques.Commande.COUP, null,
+                (client, argument) -> client.server.handleMove(client, Serveur.ABANDON));
+        COMMANDES.enregistrer("help", Commandes.Argument.AUCUN, autre, null, (client, argument) -> client.afficherMenu());
+        COMMANDES.enregistrer("stat", Commandes.Argument.AUCUN, Metriques.Commande.STAT, null, (client, argument) -> client.showHistory());
+        COMMANDES.enregistrer("top", Commandes.Argument.FACULTATIF, autre, null, ClientHandler::afficherTop);
+        COMMANDES.enregistrer("rank", Commandes.Argument.FACULTATIF, autre, null,
+                (client, argument) -> client.afficherRang(argument.isEmpty() ? client.pseudo : argument));
+        COMMANDES.enregistrer("replay", Commandes.Argument.OBLIGATOIRE, autre, "replay <numéro>", ClientHandler::rejouerPartie);
+        COMMANDES.enregistrer("history", Commandes.Argument.FACULTATIF, autre, null,
+                (client, argument) -> client.afficherHistorique(argument.isEmpty() ? client.pseudo : argument));
+        COMMANDES.enregistrer("join", Commandes.Argument.OBLIGATOIRE, autre, "join <salon>",
+                (client, argument) -> client.server.rejoindreSalon(client, argument));
+        COMMANDES.enregistrer("leave", Commandes.Argument.OBLIGATOIRE, autre, "leave <salon>",
+                (client, argument) -> client.server.quitterSalon(client, argument));
+        COMMANDES.enregistrer("say", Commandes.Argument.OBLIGATOIRE, autre, "say <salon> <message>", ClientHandler::parler);
+        COMMANDES.enregistrer("who", Commandes.Argument.FACULTATIF, autre, null,
+                (client, argument) -> client.server.listerDisponibles(client, argument));
+        COMMANDES.enregistrer("salons", Commandes.Argument.AUCUN, autre, null, (client, argument) -> client.server.listerSalons(client));
+        COMMANDES.enregistrer("metrics", Commandes.Argument.AUCUN, autre, null, (client, argument) -> client.afficherMetriques());
+    }
+
+    /**
+     * Renvoie la table des commandes du protocole texte, par exemple pour y
+     * ajouter une commande au démarrage du serveur ou pour les bancs de mesure.
+     * 
+     * @return La table des commandes
+     */
+    public static Commandes getCommandes() {
+        return COMMANDES;
+    }
+
+    // play <pseudo> invite un joueur ; play bot [niveau] lance une partie contre le bot
+    private void jouer(String argument) {
+        if (argument.length() >= 3 && argument.regionMatches(true, 0, "bot", 0, 3)
+                && (argument.length() == 3 || argument.charAt(3) == ' ')) {
+            server.jouerContreBot(this, argument.substring(3).trim());
+        } else {
+            server.sendInvitation(this, argument);
+        }
+    }
+
+    // say <salon> <message>
+    private void parler(String argument) {
+        int espace = argument.indexOf(' ');
+        String message = espace < 0 ? "" : argument.substring(espace + 1).trim();
+        if (message.isEmpty()) {
+            send("Usage : say <salon> <message>");
+        } else {
+            server.parlerSalon(this, argument.substring(0, espace), message);
         }
     }
 
@@ -104,27 +309,63 @@ public class ClientHandler extends Thread {
         send("          *** MENU DES COMMANDES ***");
         send("===================================");
 
-        send("\n[1] play [pseudo]    - Inviter un joueur à jouer.");
+        send("\n[1] play [pseudo]    - Inviter un joueur à jouer (play bot [1-5] : jouer contre le bot).");
         send("[2] yes/no             - Accepter ou refuser une invitation.");
         send("[3] [numéro]           - Jouer dans la colonne spécifiée.");
         send("[4] stat               - Afficher l'historique des parties.");
-        send("[5] ff                 - Abandonner la partie");
-        send("[6] quit               - Quitter le serveur.");
+        send("[5] top [n]            - Afficher les n meilleurs joueurs (10 par défaut).");
+        send("[6] rank [pseudo]      - Afficher le rang d'un joueur (le vôtre par défaut).");
+        send("[7] join/leave [salon] - Rejoindre ou quitter un salon de discussion.");
+        send("[8] say [salon] [msg]  - Parler dans un salon (\"partie\" : votre partie en cours).");
+        send("[9] salons             - Lister vos salons.");
+        send("[10] queue [leave]     - Chercher un adversaire de niveau proche (leave : quitter la file).");
+        send("[11] watch/unwatch [pseudo] - Regarder la partie d'un joueur, ou arrêter.");
+        send("[12] history [pseudo]  - Lister les dernières parties d'un joueur (les vôtres par défaut).");
+        send("[13] replay [numéro]   - Revoir une partie coup par coup.");
+        send("[14] who [préfixe] [page] - Lister les joueurs disponibles, par pages.");
+        send("[15] ff                - Abandonner la partie");
+        send("[16] quit              - Quitter le serveur.");
 
         send("\n===================================");
         send("  ** Utilisez les commandes ci-dessus pour interagir avec le serveur. **");
         send("===================================\n");
     }
 
+    // Métriques du serveur, pour les seules connexions locales (administration sur la machine du serveur)
+    private void afficherMetriques() {
+        java.net.InetAddress adresse = null;
+        if (clientSocket != null) {
+            adresse = clientSocket.getInetAddress();
+        } else if (connexion != null) {
+            adresse = connexion.getCanal().socket().getInetAddress();
+        }
+        if (adresse == null || !adresse.isLoopbackAddress()) {
+            send("Commande réservée à l'administration (connexion locale).");
+            return;
+        }
+        send(Metriques.texte().stripTrailing());
+    }
+
     /**
      * Déconnecte le client du serveur et ferme la connexion.
      */
-    private void disconnect() {
+    public void disconnect() {
+        if (deconnecte) {
+            return;
+        }
+        deconnecte = true;
+        if (sortie != null) {
+            sortie.fermer(); // Arrête l'écrivain
+        }
         try {
             server.unregisterClient(this); // Retirer le client du serveur
-            clientSocket.close(); // Fermer la connexion socket
+            if (connexion != null) {
+                connexion.fermer(); // Fermer le canal NIO
+            } else if (clientSocket != null) {
+                clientSocket.close(); // Fermer la connexion socket
+            }
         } catch (IOException e) {
-            System.out.println("Erreur lors de la déconnexion de " + pseudo);
+            Traces.tracer(Traces.Evenement.ERREUR_DECONNEXION, pseudo);
         }
     }
 
@@ -136,7 +377,100 @@ public class ClientHandler extends Thread {
      * @param message Le message à envoyer
      */
     public void send(String message) {
-        out.println(message);
+        send(message, FileSortie.Type.NORMAL);
+    }
+
+    /**
+     * Envoie un message au client. Le message est seulement déposé dans la file
+     * de sortie : l'appelant ne bloque jamais sur le réseau. Si le client ne
+     * lit plus et que sa file est saturée, il est déconnecté.
+     * 
+     * @param message Le message à envoyer
+     * @param type    La nature du message (normal, chat, grille)
+     */
+    public void send(String message, FileSortie.Type type) {
+        if (sortie == null) { // Session locale
+            out.println(message);
+            return;
+        }
+        deposer(message, type);
+    }
+
+    /**
+     * Envoie une trame du protocole binaire. Réservé aux clients qui l'ont négocié.
+     * 
+     * @param trame La trame encodée (voir {@link ProtocoleBinaire})
+     */
+    public void envoyerTrame(byte[] trame) {
+        deposer(trame, FileSortie.Type.NORMAL);
+    }
+
+    /**
+     * Envoie un texte déjà encodé en UTF-8, fins de ligne comprises, à un client
+     * texte. Le même tableau peut être déposé dans les files de plusieurs
+     * clients : il ne doit plus être modifié.
+     * 
+     * @param octets Le texte encodé
+     * @param type   La nature du message (normal, chat, grille)
+     */
+    public void envoyerPartage(byte[] octets, FileSortie.Type type) {
+        if (sortie == null) { // Session locale
+            out.print(new String(octets, StandardCharsets.UTF_8));
+            out.flush();
+            return;
+        }
+        deposer(octets, type);
+    }
+
+    private void deposer(Object message, FileSortie.Type type) {
+        if (!sortie.offrir(message, type)) {
+            Traces.tracer(Traces.Evenement.CLIENT_LENT, pseudo);
+            disconnect();
+        }
+    }
+
+    public boolean isBot() {
+        return niveauBot > 0;
+    }
+
+    public int getNiveauBot() {
+        return niveauBot;
+    }
+
+    /**
+     * Indique si le client a négocié le protocole binaire.
+     * 
+     * @return true pour un client binaire, false pour un client texte
+     */
+    public boolean isBinaire() {
+        return binaire;
+    }
+
+    /**
+     * Compte une écriture sur une socket.
+     * 
+     * @param octets Le nombre d'octets écrits
+     */
+    static void compterEcriture(int octets) {
+        ECRITURES.increment();
+        OCTETS_ECRITS.add(octets);
+    }
+
+    public static long getEcritures() {
+        return ECRITURES.sum();
+    }
+
+    public static long getOctetsEcrits() {
+        return OCTETS_ECRITS.sum();
+    }
+
+    /**
+     * Récupère la file de sortie du client (profondeur et compteurs de pertes).
+     * 
+     * @return La file de sortie, ou null pour une session locale
+     */
+    public FileSortie getFileSortie() {
+        return sortie;
     }
 
     /**
@@ -148,6 +482,19 @@ public class ClientHandler extends Thread {
         return pseudo;
     }
 
+    /**
+     * Récupère l'identifiant du joueur dans le stockage des scores. Une session
+     * créée sans connexion (bancs de mesure) reçoit le sien au premier appel.
+     * 
+     * @return L'identifiant du joueur
+     */
+    public int getIdJoueur() {
+        if (idJoueur < 0) {
+            idJoueur = Serveur.getScores().interner(pseudo);
+        }
+        return idJoueur;
+    }
+
     public void incrementPartie() {
         totalParties++;
     }
@@ -162,13 +509,152 @@ public class ClientHandler extends Thread {
 
     // Afficher l'historique des scores pour le joueur actuel
     public void showHistory() {
-        Map<String, int[]> scores = server.getScores(); // Récupère la map des scores
-        int[] playerScores = scores.getOrDefault(pseudo, new int[]{0, 0, 0}); // Récupère les scores du joueur
+        int[] playerScores = Serveur.getScores().getStats(getIdJoueur()); // Lus par identifiant, sans hacher le pseudo
         send("Historique des parties pour " + pseudo + ":");
         send("Défaites : " + playerScores[0]);
         send("Matchs nuls : " + playerScores[1]);
         send("Victoires : " + playerScores[2]);
     }
-    
 
+    /**
+     * Affiche les meilleurs joueurs du classement.
+     * 
+     * @param argument Le nombre de joueurs demandé (vide pour la valeur par défaut)
+     */
+    private void afficherTop(String argument) {
+        int n = TOP_DEFAUT;
+        if (!argument.isEmpty()) {
+            try {
+                n = Integer.parseInt(argument);
+            } catch (NumberFormatException e) {
+                send("Usage : top [n]");
+                return;
+            }
+        }
+        n = Math.max(1, Math.min(n, TOP_MAX));
+        send("Classement (" + Classement.POINTS_VICTOIRE + " points par victoire, "
+                + Classement.POINTS_NUL + " par match nul) :");
+        for (String ligne : Serveur.getClassement().getTop(n)) {
+            send(ligne);
+        }
+    }
+
+    /**
+     * Affiche le rang et les points d'un joueur.
+     * 
+     * @param cible Le pseudo du joueur
+     */
+    private void afficherRang(String cible) {
+        Classement classement = Serveur.getClassement();
+        int id = Serveur.getScores().getId(cible);
+        int rang = classement.getRang(id);
+        if (rang < 0) {
+            send("Le joueur " + cible + " n'est pas classé.");
+            return;
+        }
+        send(cible + " est " + rang + (rang == 1 ? "er" : "e") + " sur " + classement.getNbJoueurs()
+                + " joueurs avec " + classement.getPoints(id) + " points.");
+    }
+
+    /**
+     * Renvoie une partie du journal coup par coup : une grille par coup pour un
+     * client texte, une trame de suivi puis un pion par coup pour un client binaire.
+     * 
+     * @param argument Le numéro de la partie
+     */
+    private void rejouerPartie(String argument) {
+        JournalParties journal = Serveur.getJournalParties();
+        if (journal == null) {
+            send("Le journal des parties n'est pas disponible.");
+            return;
+        }
+        JournalParties.Partie partie;
+        try {
+            partie = journal.lire(Long.parseLong(argument));
+        } catch (NumberFormatException e) {
+            send("Usage : replay <numéro>");
+            return;
+        } catch (IOException e) {
+            send("Partie illisible : " + e.getMessage());
+            return;
+        }
+        if (partie == null) {
+            send("Partie " + argument + " inconnue.");
+            return;
+        }
+        MoteurPuissance4 moteur = new MoteurPuissance4();
+        byte[] coups = partie.getCoups();
+        if (binaire) {
+            envoyerTrame(ProtocoleBinaire.suivi(moteur, partie.getJoueurX(), partie.getJoueurO()));
+            for (byte colonne : coups) {
+                int couleur = moteur.getJoueurCourant();
+                envoyerTrame(ProtocoleBinaire.pion(colonne, moteur.jouer(colonne), couleur));
+            }
+            envoyerTrame(ProtocoleBinaire.texte(resumer(partie)));
+            return;
+        }
+        send("[Replay] Partie n°" + partie.getNumero() + " : " + partie.getJoueurX() + " (X) contre "
+                + partie.getJoueurO() + " (O), " + coups.length + " coups.");
+        for (int i = 0; i < coups.length; i++) {
+            moteur.jouer(coups[i]);
+            send("[Replay] " + (i + 1) + ". " + (i % 2 == 0 ? partie.getJoueurX() + " (X)" : partie.getJoueurO() + " (O)")
+                    + " joue en colonne " + coups[i] + ".");
+            send(Puissance4.rendreGrille(moteur));
+        }
+        send("[Replay] " + resumer(partie));
+    }
+
+    /**
+     * Liste les dernières parties d'un joueur, de la plus récente à la plus ancienne.
+     * 
+     * @param cible Le pseudo du joueur
+     */
+    private void afficherHistorique(String cible) {
+        JournalParties journal = Serveur.getJournalParties();
+        if (journal == null) {
+            send("Le journal des parties n'est pas disponible.");
+            return;
+        }
+        long[] numeros = journal.recentes(cible);
+        if (numeros.length == 0) {
+            send("Aucune partie enregistrée pour " + cible + ".");
+            return;
+        }
+        send("Dernières parties de " + cible + " :");
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneId.systemDefault());
+        for (long numero : numeros) {
+            try {
+                JournalParties.Partie partie = journal.lire(numero);
+                send("  n°" + numero + "  " + format.format(Instant.ofEpochMilli(partie.getDebut())) + "  "
+                        + partie.getJoueurX() + " contre " + partie.getJoueurO() + "  " + resumer(partie));
+            } catch (IOException e) {
+                send("  n°" + numero + "  illisible : " + e.getMessage());
+            }
+        }
+    }
+
+    // Résultat et durée d'une partie du journal
+    private static String resumer(JournalParties.Partie partie) {
+        int resultat = partie.getResultat() & ~JournalParties.ABANDON;
+        String fin = resultat == JournalParties.NUL ? "Match nul"
+                : (resultat == JournalParties.VICTOIRE_X ? partie.getJoueurX() : partie.getJoueurO()) + " gagne"
+                + ((partie.getResultat() & JournalParties.ABANDON) != 0 ? " par abandon" : "");
+        return fin + " en " + partie.getNbCoups() + " coups (" + partie.getDuree() / 1000 + " s).";
+    }
+
+    /**
+     * Flux de la socket qui compte les écritures qui lui parviennent (une par
+     * vidage du tampon, soit un appel système).
+     */
+    private static class FluxCompte extends FilterOutputStream {
+        FluxCompte(OutputStream socket) {
+            super(socket);
+        }
+
+        @Override
+        public void write(byte[] octets, int debut, int longueur) throws IOException {
+            out.write(octets, debut, longueur);
+            compterEcriture(longueur);
+        }
+    }
 }
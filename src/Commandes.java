@@ -0,0 +1,193 @@
+/**
+ * Table des commandes du protocole texte : chaque ligne reçue est analysée une
+ * seule fois, sans expression régulière ni exception.
+ *
+ * Les noms de commandes sont rangés dans un arbre de préfixes (une case par
+ * lettre, sans distinction de casse) : le premier mot de la ligne est suivi
+ * lettre à lettre, sans découper ni copier la ligne. L'argument n'est extrait
+ * que pour une commande qui en prend un. Une ligne faite de chiffres est un
+ * coup, lu directement en entier par {@link #colonne(String)}.
+ *
+ * Ajouter une commande, c'est l'enregistrer avec son action
+ * ({@link #enregistrer}), avant la mise en service : la table n'est plus
+ * modifiée ensuite, et se lit sans verrou depuis tous les threads.
+ */
+public final class Commandes {
+
+    /**
+     * Ce que la commande attend après son nom.
+     */
+    public enum Argument {
+        AUCUN, // Une ligne avec du texte après le nom n'est pas cette commande (du chat, par exemple)
+        FACULTATIF, // Argument vide s'il n'y en a pas
+        OBLIGATOIRE // Sans argument, l'usage de la commande est rappelé
+    }
+
+    /**
+     * Action d'une commande.
+     */
+    @FunctionalInterface
+    public interface Action {
+        /**
+         * Exécute la commande.
+         *
+         * @param client   le client qui l'a envoyée
+         * @param argument le texte qui suit le nom, sans les espaces autour ("" s'il n'y en a pas)
+         */
+        void executer(ClientHandler client, String argument);
+    }
+
+    /**
+     * Commande enregistrée.
+     */
+    public static final class Commande {
+        private final String nom;
+        private final Argument argument;
+        private final Metriques.Commande type;
+        private final String usage;
+        private final Action action;
+
+        private Commande(String nom, Argument argument, Metriques.Commande type, String usage, Action action) {
+            this.nom = nom;
+            this.argument = argument;
+            this.type = type;
+            this.usage = usage;
+            this.action = action;
+        }
+
+        /**
+         * Exécute la commande reconnue dans une ligne.
+         *
+         * @param client le client qui a envoyé la ligne
+         * @param ligne  la ligne, qui commence par le nom de la commande
+         * @return le type de la commande, pour les métriques
+         */
+        public Metriques.Commande executer(ClientHandler client, String ligne) {
+            String texte = argument == Argument.AUCUN ? "" : extraireArgument(ligne, nom.length());
+            if (argument == Argument.OBLIGATOIRE && texte.isEmpty()) {
+                client.send("Usage : " + usage);
+                return Metriques.Commande.AUTRE;
+            }
+            action.executer(client, texte);
+            return type;
+        }
+
+        public String getNom() {
+            return nom;
+        }
+    }
+
+    private static final int LETTRES = 26;
+    private static final int CHIFFRES_MAX = 9; // Au-delà, le nombre ne tient pas forcément dans un int
+
+    private final Noeud racine = new Noeud();
+
+    /**
+     * Enregistre une commande. À appeler avant la mise en service.
+     *
+     * @param nom      le nom de la commande, en lettres ASCII (sans distinction de casse)
+     * @param argument ce que la commande attend après son nom
+     * @param type     le type de la commande pour les métriques
+     * @param usage    l'usage rappelé quand un argument obligatoire manque
+     * @param action   l'action de la commande
+     * @throws IllegalArgumentException si le nom est invalide ou déjà enregistré
+     */
+    public void enregistrer(String nom, Argument argument, Metriques.Commande type, String usage, Action action) {
+        if (nom.isEmpty()) {
+            throw new IllegalArgumentException("Nom de commande vide.");
+        }
+        Noeud noeud = racine;
+        for (int i = 0; i < nom.length(); i++) {
+            int lettre = lettre(nom.charAt(i));
+            if (lettre < 0) {
+                throw new IllegalArgumentException("Nom de commande invalide : " + nom);
+            }
+            if (noeud.suivants[lettre] == null) {
+                noeud.suivants[lettre] = new Noeud();
+            }
+            noeud = noeud.suivants[lettre];
+        }
+        if (noeud.commande != null) {
+            throw new IllegalArgumentException("Commande déjà enregistrée : " + nom);
+        }
+        noeud.commande = new Commande(nom.toLowerCase(), argument, type, usage, action);
+    }
+
+    /**
+     * Reconnaît la commande d'une ligne, d'après son premier mot.
+     *
+     * @param ligne la ligne reçue
+     * @return la commande, ou null si la ligne n'en est pas une
+     */
+    public Commande chercher(String ligne) {
+        Noeud noeud = racine;
+        int longueur = ligne.length();
+        int i = 0;
+        for (; i < longueur && ligne.charAt(i) != ' '; i++) {
+            int lettre = lettre(ligne.charAt(i));
+            noeud = lettre < 0 ? null : noeud.suivants[lettre];
+            if (noeud == null) {
+                return null;
+            }
+        }
+        Commande commande = noeud.commande;
+        if (commande != null && commande.argument == Argument.AUCUN && !ligneVideApres(ligne, i)) {
+            return null;
+        }
+        return commande;
+    }
+
+    /**
+     * Lit un coup : une ligne faite uniquement de chiffres.
+     *
+     * @param ligne la ligne reçue
+     * @return la colonne, Integer.MAX_VALUE pour un nombre trop grand, ou -1 si la ligne n'est pas un nombre
+     */
+    public static int colonne(String ligne) {
+        int longueur = ligne.length();
+        if (longueur == 0) {
+            return -1;
+        }
+        int valeur = 0;
+        for (int i = 0; i < longueur; i++) {
+            int chiffre = ligne.charAt(i) - '0';
+            if (chiffre < 0 || chiffre > 9) {
+                return -1;
+            }
+            valeur = i < CHIFFRES_MAX ? valeur * 10 + chiffre : Integer.MAX_VALUE;
+        }
+        return valeur;
+    }
+
+    // Texte qui suit le nom, sans les espaces autour ; "" sans allocation s'il n'y en a pas
+    private static String extraireArgument(String ligne, int debut) {
+        int fin = ligne.length();
+        while (debut < fin && ligne.charAt(debut) <= ' ') {
+            debut++;
+        }
+        while (fin > debut && ligne.charAt(fin - 1) <= ' ') {
+            fin--;
+        }
+        return debut == fin ? "" : ligne.substring(debut, fin);
+    }
+
+    private static boolean ligneVideApres(String ligne, int debut) {
+        for (int i = debut; i < ligne.length(); i++) {
+            if (ligne.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Indice d'une lettre ASCII, majuscule ou minuscule ; -1 pour tout autre caractère
+    private static int lettre(char c) {
+        int indice = (c | 0x20) - 'a';
+        return indice >= 0 && indice < LETTRES ? indice : -1;
+    }
+
+    private static final class Noeud {
+        final Noeud[] suivants = new Noeud[LETTRES];
+        Commande commande;
+    }
+}
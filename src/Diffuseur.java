@@ -0,0 +1,345 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Diffusion des messages de chat par salons (publication / abonnement).
+ *
+ * Les abonnés sont répartis en fragments, chacun servi par son propre thread :
+ * une publication est confiée à chaque fragment, qui ne parcourt que ses propres
+ * abonnés au salon. Un fragment traite ses publications par tours de
+ * {@code p4.chat.tickMs} millisecondes ; les messages destinés à un même abonné
+ * pendant un tour sont regroupés en un seul dépôt dans sa {@link FileSortie},
+ * donc une seule écriture.
+ *
+ * Les arrivées et départs de joueurs sont regroupés en un résumé publié dans le
+ * salon {@value #LOBBY} au plus toutes les {@code p4.chat.resumeMs} millisecondes.
+ */
+public class Diffuseur {
+    public static final String LOBBY = "lobby";
+
+    private static final int NB_FRAGMENTS = Integer.getInteger("p4.chat.fragments",
+            Runtime.getRuntime().availableProcessors());
+    private static final long TICK_MS = Long.getLong("p4.chat.tickMs", 10);
+    private static final long RESUME_MS = Long.getLong("p4.chat.resumeMs", 1000);
+    private static final int PSEUDOS_RESUME = 10; // Pseudos cités au plus dans un résumé
+
+    private final Fragment[] fragments;
+
+    private final ReentrantLock verrouAnnonces = new ReentrantLock();
+    private List<String> arrivees = new ArrayList<>();
+    private List<String> departs = new ArrayList<>();
+
+    /**
+     * Crée le diffuseur et démarre ses threads (démons).
+     */
+    public Diffuseur() {
+        fragments = new Fragment[Math.max(1, NB_FRAGMENTS)];
+        for (int i = 0; i < fragments.length; i++) {
+            fragments[i] = new Fragment();
+            Thread thread = new Thread(fragments[i], "diffusion-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        if (RESUME_MS > 0) {
+            Thread resumes = new Thread(this::publierResumes, "resume-lobby");
+            resumes.setDaemon(true);
+            resumes.start();
+        }
+    }
+
+    /**
+     * Abonne un client à un salon.
+     *
+     * @param client le client
+     * @param salon  le nom du salon
+     */
+    public void abonner(ClientHandler client, String salon) {
+        fragment(client).abonner(client, salon);
+    }
+
+    /**
+     * Désabonne un client d'un salon.
+     *
+     * @param client le client
+     * @param salon  le nom du salon
+     * @return false si le client n'y était pas abonné
+     */
+    public boolean desabonner(ClientHandler client, String salon) {
+        return fragment(client).desabonner(client, salon);
+    }
+
+    /**
+     * Désabonne un client de tous ses salons (à la déconnexion).
+     *
+     * @param client le client
+     */
+    public void desabonnerTout(ClientHandler client) {
+        fragment(client).desabonnerTout(client);
+    }
+
+    /**
+     * Indique si un client est abonné à un salon.
+     *
+     * @param client le client
+     * @param salon  le nom du salon
+     * @return true s'il y est abonné
+     */
+    public boolean estAbonne(ClientHandler client, String salon) {
+        return fragment(client).salonsDe(client).contains(salon);
+    }
+
+    /**
+     * Renvoie les salons auxquels un client est abonné.
+     *
+     * @param client le client
+     * @return une copie de la liste des salons
+     */
+    public List<String> getSalons(ClientHandler client) {
+        return new ArrayList<>(fragment(client).salonsDe(client));
+    }
+
+    /**
+     * Publie un message dans un salon. Ne bloque pas : la distribution est
+     * faite par les threads des fragments au tour suivant.
+     *
+     * @param salon   le nom du salon
+     * @param message le message
+     */
+    public void publier(String salon, String message) {
+        Publication publication = new Publication(salon, message);
+        for (Fragment fragment : fragments) {
+            fragment.publications.add(publication);
+        }
+    }
+
+    /**
+     * Renvoie le nombre de publications pas encore distribuées, tous fragments
+     * confondus.
+     *
+     * @return le nombre de publications en attente
+     */
+    public int getEnAttente() {
+        int enAttente = 0;
+        for (Fragment fragment : fragments) {
+            enAttente += fragment.publications.size();
+        }
+        return enAttente;
+    }
+
+    /**
+     * Annonce l'arrivée d'un joueur dans le salon {@value #LOBBY}.
+     *
+     * @param pseudo le pseudo du joueur
+     */
+    public void annoncerArrivee(String pseudo) {
+        annoncer(pseudo, true);
+    }
+
+    /**
+     * Annonce le départ d'un joueur dans le salon {@value #LOBBY}.
+     *
+     * @param pseudo le pseudo du joueur
+     */
+    public void annoncerDepart(String pseudo) {
+        annoncer(pseudo, false);
+    }
+
+    private void annoncer(String pseudo, boolean arrivee) {
+        if (RESUME_MS <= 0) { // Pas de résumé : annonce immédiate
+            publier(LOBBY, "[" + pseudo + "] a " + (arrivee ? "rejoint" : "quitté") + " le serveur.");
+            return;
+        }
+        verrouAnnonces.lock();
+        try {
+            (arrivee ? arrivees : departs).add(pseudo);
+        } finally {
+            verrouAnnonces.unlock();
+        }
+    }
+
+    // Boucle du thread des résumés : une seule publication par intervalle, quel que soit le nombre d'arrivées
+    private void publierResumes() {
+        try {
+            while (true) {
+                Thread.sleep(RESUME_MS);
+                List<String> nouveaux;
+                List<String> partis;
+                verrouAnnonces.lock();
+                try {
+                    nouveaux = arrivees;
+                    partis = departs;
+                    arrivees = new ArrayList<>();
+                    departs = new ArrayList<>();
+                } finally {
+                    verrouAnnonces.unlock();
+                }
+                if (nouveaux.size() + partis.size() == 1) { // Un seul événement : annonce habituelle
+                    boolean arrivee = !nouveaux.isEmpty();
+                    String pseudo = arrivee ? nouveaux.get(0) : partis.get(0);
+                    publier(LOBBY, "[" + pseudo + "] a " + (arrivee ? "rejoint" : "quitté") + " le serveur.");
+                } else if (!nouveaux.isEmpty() || !partis.isEmpty()) {
+                    StringBuilder resume = new StringBuilder("[Lobby]");
+                    if (!nouveaux.isEmpty()) {
+                        resume.append(' ').append(nouveaux.size()).append(" arrivée(s) : ");
+                        citer(resume, nouveaux);
+                    }
+                    if (!partis.isEmpty()) {
+                        resume.append(nouveaux.isEmpty() ? " " : " ; ").append(partis.size()).append(" départ(s) : ");
+                        citer(resume, partis);
+                    }
+                    publier(LOBBY, resume.toString());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void citer(StringBuilder resume, List<String> pseudos) {
+        int cites = Math.min(pseudos.size(), PSEUDOS_RESUME);
+        resume.append(String.join(", ", pseudos.subList(0, cites)));
+        if (pseudos.size() > cites) {
+            resume.append(" et ").append(pseudos.size() - cites).append(" autre(s)");
+        }
+    }
+
+    private Fragment fragment(ClientHandler client) {
+        return fragments[Math.floorMod(System.identityHashCode(client), fragments.length)];
+    }
+
+    /**
+     * Message publié dans un salon.
+     */
+    private static final class Publication {
+        final String salon;
+        final String message;
+
+        Publication(String salon, String message) {
+            this.salon = salon;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Part des abonnés servie par un même thread.
+     */
+    private static final class Fragment implements Runnable {
+        private final ReentrantLock verrou = new ReentrantLock();
+        private final Map<String, Set<ClientHandler>> abonnes = new HashMap<>(); // Par salon
+        private final Map<ClientHandler, Set<String>> salons = new HashMap<>(); // Par abonné
+        private final LinkedBlockingQueue<Publication> publications = new LinkedBlockingQueue<>();
+
+        void abonner(ClientHandler client, String salon) {
+            verrou.lock();
+            try {
+                abonnes.computeIfAbsent(salon, cle -> new LinkedHashSet<>()).add(client);
+                salons.computeIfAbsent(client, cle -> new LinkedHashSet<>()).add(salon);
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        boolean desabonner(ClientHandler client, String salon) {
+            verrou.lock();
+            try {
+                Set<String> siens = salons.get(client);
+                if (siens == null || !siens.remove(salon)) {
+                    return false;
+                }
+                if (siens.isEmpty()) {
+                    salons.remove(client);
+                }
+                retirer(client, salon);
+                return true;
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        void desabonnerTout(ClientHandler client) {
+            verrou.lock();
+            try {
+                Set<String> siens = salons.remove(client);
+                if (siens != null) {
+                    for (String salon : siens) {
+                        retirer(client, salon);
+                    }
+                }
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        Set<String> salonsDe(ClientHandler client) {
+            verrou.lock();
+            try {
+                Set<String> siens = salons.get(client);
+                return siens == null ? new LinkedHashSet<>() : new LinkedHashSet<>(siens);
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        // Appelée avec le verrou ; un salon vide est oublié
+        private void retirer(ClientHandler client, String salon) {
+            Set<ClientHandler> membres = abonnes.get(salon);
+            if (membres != null) {
+                membres.remove(client);
+                if (membres.isEmpty()) {
+                    abonnes.remove(salon);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Publication> lot = new ArrayList<>();
+            Map<ClientHandler, StringBuilder> envois = new HashMap<>();
+            try {
+                while (true) {
+                    lot.add(publications.take());
+                    if (TICK_MS > 0) {
+                        Thread.sleep(TICK_MS); // Laisse le tour se remplir
+                    }
+                    publications.drainTo(lot);
+
+                    // Regroupe, abonné par abonné, les messages du tour
+                    verrou.lock();
+                    try {
+                        for (Publication publication : lot) {
+                            Set<ClientHandler> membres = abonnes.get(publication.salon);
+                            if (membres == null) {
+                                continue;
+                            }
+                            for (ClientHandler membre : membres) {
+                                StringBuilder envoi = envois.get(membre);
+                                if (envoi == null) {
+                                    envois.put(membre, new StringBuilder(publication.message));
+                                } else {
+                                    envoi.append('\n').append(publication.message);
+                                }
+                            }
+                        }
+                    } finally {
+                        verrou.unlock();
+                    }
+
+                    // Un seul dépôt par abonné, hors verrou
+                    for (Map.Entry<ClientHandler, StringBuilder> envoi : envois.entrySet()) {
+                        envoi.getKey().send(envoi.getValue().toString(), FileSortie.Type.CHAT);
+                    }
+                    lot.clear();
+                    envois.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * File d'attente des joueurs qui cherchent un adversaire (commande {@code queue}).
+ *
+ * Les joueurs sont rangés par paliers de cote, chaque palier étant une file
+ * sans verrou : s'inscrire ne bloque jamais. Un thread d'appariement vide
+ * toutes les files tous les {@code p4.file.tickMs} millisecondes et forme les
+ * paires en une passe : du joueur qui attend depuis le plus longtemps au plus
+ * récent, chacun prend l'adversaire le plus ancien du palier le plus proche.
+ * La fenêtre de recherche s'élargit d'un palier de chaque côté toutes les
+ * {@code p4.file.elargissementMs} millisecondes d'attente : au bout de
+ * {@value #NB_PALIERS} élargissements, n'importe quel adversaire convient, ce
+ * qui borne l'attente dès qu'un deuxième joueur est inscrit.
+ *
+ * La cote va de 0 à 1000 : c'est la part des points pris (victoire 1, nul 1/2)
+ * sur les parties jouées, lissée pour qu'un nouveau joueur soit à 500.
+ */
+public class FileAttente {
+    public static final int COTE_MAX = 1000;
+    private static final int LARGEUR_PALIER = 50;
+    private static final int NB_PALIERS = COTE_MAX / LARGEUR_PALIER + 1;
+    private static final long TICK_MS = Long.getLong("p4.file.tickMs", 100);
+    private static final long ELARGISSEMENT_NS = Long.getLong("p4.file.elargissementMs", 2000) * 1_000_000L;
+
+    private final ConcurrentLinkedQueue<Inscription>[] paliers;
+    private final Map<ClientHandler, Inscription> inscrits = new ConcurrentHashMap<>();
+    private final BiConsumer<ClientHandler, ClientHandler> demarrer;
+
+    /**
+     * Crée la file et démarre son thread d'appariement (démon).
+     *
+     * @param demarrer appelée avec chaque paire formée, depuis le thread d'appariement
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public FileAttente(BiConsumer<ClientHandler, ClientHandler> demarrer) {
+        this.demarrer = demarrer;
+        paliers = new ConcurrentLinkedQueue[NB_PALIERS];
+        for (int i = 0; i < NB_PALIERS; i++) {
+            paliers[i] = new ConcurrentLinkedQueue<>();
+        }
+        Thread thread = new Thread(this::apparierEnBoucle, "file-attente");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Calcule la cote d'un joueur à partir de ses statistiques.
+     *
+     * @param stats [defaites, nuls, victoires], ou null pour un nouveau joueur
+     * @return la cote, de 0 à {@value #COTE_MAX}
+     */
+    public static int cote(int[] stats) {
+        if (stats == null) {
+            return COTE_MAX / 2;
+        }
+        long parties = (long) stats[0] + stats[1] + stats[2];
+        return (int) (COTE_MAX * (2L * stats[2] + stats[1] + 2) / (2 * parties + 4));
+    }
+
+    /**
+     * Inscrit un joueur dans la file.
+     *
+     * @param client le joueur
+     * @param cote   sa cote
+     * @return false s'il y était déjà
+     */
+    public boolean inscrire(ClientHandler client, int cote) {
+        Inscription inscription = new Inscription(client, Math.max(0, Math.min(cote, COTE_MAX)), System.nanoTime());
+        if (inscrits.putIfAbsent(client, inscription) != null) {
+            return false;
+        }
+        paliers[inscription.cote / LARGEUR_PALIER].add(inscription);
+        return true;
+    }
+
+    /**
+     * Retire un joueur de la file (départ, déconnexion, partie commencée autrement).
+     * Son inscription est abandonnée à la prochaine passe d'appariement.
+     *
+     * @param client le joueur
+     * @return false s'il n'y était pas
+     */
+    public boolean retirer(ClientHandler client) {
+        Inscription inscription = inscrits.remove(client);
+        if (inscription == null) {
+            return false;
+        }
+        inscription.annulee = true;
+        return true;
+    }
+
+    /**
+     * Renvoie le nombre de joueurs inscrits.
+     *
+     * @return le nombre de joueurs en attente d'un adversaire
+     */
+    public int getTaille() {
+        return inscrits.size();
+    }
+
+    // Boucle du thread d'appariement : une passe par tour
+    private void apparierEnBoucle() {
+        while (true) {
+            try {
+                Thread.sleep(TICK_MS);
+                apparier(System.nanoTime());
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                Traces.tracer(Traces.Evenement.ERREUR_APPARIEMENT, e);
+            }
+        }
+    }
+
+    /**
+     * Forme les paires parmi les joueurs inscrits ; les autres sont remis dans leur palier.
+     * Si un joueur plus ancien reste sans adversaire, c'est qu'aucun joueur n'est
+     * dans sa fenêtre ; un joueur plus récent, dont la fenêtre est plus étroite,
+     * ne peut donc pas le choisir : chaque palier se parcourt du plus ancien au
+     * plus récent sans jamais revenir en arrière.
+     */
+    private void apparier(long maintenant) {
+        List<Inscription> tous = new ArrayList<>();
+        Inscription[][] parPalier = new Inscription[NB_PALIERS][];
+        for (int p = 0; p < NB_PALIERS; p++) {
+            List<Inscription> palier = new ArrayList<>();
+            Inscription inscription;
+            while ((inscription = paliers[p].poll()) != null) {
+                if (!inscription.annulee) {
+                    palier.add(inscription);
+                }
+            }
+            parPalier[p] = palier.toArray(new Inscription[0]); // Déjà dans l'ordre d'arrivée
+            tous.addAll(palier);
+        }
+        if (tous.size() < 2) {
+            for (Inscription inscription : tous) {
+                paliers[inscription.cote / LARGEUR_PALIER].add(inscription);
+            }
+            return;
+        }
+        tous.sort(Comparator.comparingLong(inscription -> inscription.arrivee));
+
+        int[] tetes = new int[NB_PALIERS]; // Premier candidat possible de chaque palier
+        for (Inscription inscription : tous) {
+            if (inscription.apparie) {
+                continue;
+            }
+            int palier = inscription.cote / LARGEUR_PALIER;
+            long fenetre = Math.min(NB_PALIERS, (maintenant - inscription.arrivee) / ELARGISSEMENT_NS);
+            Inscription adversaire = null;
+            for (int ecart = 0; ecart <= fenetre && adversaire == null; ecart++) {
+                adversaire = candidat(parPalier, tetes, palier - ecart, inscription);
+                if (adversaire == null && ecart > 0) {
+                    adversaire = candidat(parPalier, tetes, palier + ecart, inscription);
+                }
+            }
+            if (adversaire == null) {
+                continue;
+            }
+            inscription.apparie = true;
+            adversaire.apparie = true;
+            // Seul le retrait de la table des inscrits fait foi : le joueur a pu partir entre-temps
+            boolean present = inscrits.remove(inscription.client, inscription);
+            boolean adversairePresent = inscrits.remove(adversaire.client, adversaire);
+            if (present && adversairePresent) {
+                Metriques.ATTENTE_FILE.enregistrer(maintenant - inscription.arrivee);
+                Metriques.ATTENTE_FILE.enregistrer(maintenant - adversaire.arrivee);
+                demarrer.accept(inscription.client, adversaire.client);
+            } else if (present) { // Remis dans son palier avec les joueurs sans adversaire
+                inscrits.put(inscription.client, inscription);
+                inscription.apparie = false;
+            } else if (adversairePresent) {
+                inscrits.put(adversaire.client, adversaire);
+                adversaire.apparie = false;
+            }
+        }
+
+        // Les joueurs sans adversaire repartent dans leur palier, toujours dans l'ordre d'arrivée
+        for (Inscription inscription : tous) {
+            if (!inscription.apparie && !inscription.annulee) {
+                paliers[inscription.cote / LARGEUR_PALIER].add(inscription);
+            }
+        }
+    }
+
+    // Plus ancien joueur libre d'un palier, autre que celui qui cherche
+    private static Inscription candidat(Inscription[][] parPalier, int[] tetes, int palier, Inscription cherche) {
+        if (palier < 0 || palier >= NB_PALIERS) {
+            return null;
+        }
+        Inscription[] inscriptions = parPalier[palier];
+        while (tetes[palier] < inscriptions.length && inscriptions[tetes[palier]].apparie) {
+            tetes[palier]++;
+        }
+        for (int i = tetes[palier]; i < inscriptions.length; i++) {
+            Inscription inscription = inscriptions[i];
+            if (inscription != cherche && !inscription.apparie) {
+                return inscription;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inscription d'un joueur dans la file.
+     */
+    private static final class Inscription {
+        final ClientHandler client;
+        final int cote;
+        final long arrivee;
+        volatile boolean annulee = false;
+        boolean apparie = false; // Utilisé par le seul thread d'appariement
+
+        Inscription(ClientHandler client, int cote, long arrivee) {
+            this.client = client;
+            this.cote = cote;
+            this.arrivee = arrivee;
+        }
+    }
+}
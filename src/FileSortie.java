@@ -0,0 +1,334 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File bornée des messages à envoyer à un client.
+ * Les producteurs (diffusions, grille, menu...) ne font qu'y déposer des
+ * messages, sans jamais attendre le réseau ; un écrivain propre à la connexion
+ * (thread d'écriture ou boucle NIO) la vide vers la socket.
+ * Un message est une ligne de texte ({@code String}) ou une trame du
+ * {@link ProtocoleBinaire} déjà encodée ({@code byte[]}).
+ *
+ * Quand le client ne lit pas assez vite, la file applique les politiques
+ * suivantes, réglables par propriétés système :
+ * <ul>
+ *   <li>{@code p4.sortie.seuilChat} : au-delà de cette profondeur, les messages
+ *       de chat et d'information sont jetés ;</li>
+ *   <li>{@code p4.sortie.fusionGrilles} : une nouvelle grille remplace celle
+ *       du même type (partie jouée ou partie regardée) qui attend encore
+ *       d'être envoyée ;</li>
+ *   <li>{@code p4.sortie.capacite} : file pleine ; selon
+ *       {@code p4.sortie.deconnexion}, le client est déconnecté ou le message jeté.</li>
+ * </ul>
+ *
+ * Les messages produits par une même commande partent ensemble : pendant un
+ * cycle de commande ({@link #ouvrirCycle()} / {@link #fermerCycle()}), les
+ * files que le thread remplit sont retenues, et leur écrivain ne les voit qu'à
+ * la fin du cycle, pour un seul envoi sur le réseau. Au-delà de
+ * {@code p4.sortie.seuilLot} messages retenus, la file est libérée sans
+ * attendre la fin du cycle.
+ */
+public class FileSortie {
+
+    /**
+     * Nature d'un message, qui détermine ce qu'on peut en faire quand le client est lent.
+     */
+    public enum Type {
+        NORMAL, // Réponse à une commande, message de partie : jamais jeté
+        CHAT, // Chat et annonces : jetable
+        GRILLE, // Affichage de la grille : seule la dernière compte
+        GRILLE_SPECTATEUR // Grille d'une partie regardée : seule la dernière compte, sans jamais remplacer celle du joueur
+    }
+
+    private static final int CAPACITE = Integer.getInteger("p4.sortie.capacite", 1024);
+    private static final int SEUIL_CHAT = Integer.getInteger("p4.sortie.seuilChat", CAPACITE / 2);
+    private static final boolean FUSION_GRILLES = Boolean.parseBoolean(System.getProperty("p4.sortie.fusionGrilles", "true"));
+    private static final boolean DECONNEXION = Boolean.parseBoolean(System.getProperty("p4.sortie.deconnexion", "true"));
+    private static final int SEUIL_LOT = Integer.getInteger("p4.sortie.seuilLot", 64);
+    private static final int MAX_RETENUES = 64; // Files retenues par un cycle au plus ; au-delà, les messages partent aussitôt
+
+    // Cycle de commande du thread courant : files retenues, et profondeur d'imbrication
+    private static final ThreadLocal<Cycle> CYCLE = ThreadLocal.withInitial(Cycle::new);
+
+    private final ArrayDeque<Object> messages = new ArrayDeque<>();
+    private final ArrayDeque<Type> types = new ArrayDeque<>(); // Type de chaque message, dans le même ordre
+    private final ReentrantLock verrou = new ReentrantLock();
+    private final Condition nonVide = verrou.newCondition();
+    private final int[] grillesEnAttente = new int[Type.values().length]; // Par type de grille
+    private int retenues = 0; // Cycles de commande en cours qui retiennent la file
+    private boolean fermee = false;
+    private final Runnable reveil; // Prévient l'écrivain qui n'attend pas sur la condition (boucle NIO), ou null
+
+    /**
+     * Crée une file vidée par un thread d'écriture, qui attend sur {@link #attendre()}.
+     */
+    public FileSortie() {
+        this(null);
+    }
+
+    /**
+     * Crée une file vidée par un écrivain qui doit être prévenu des messages prêts.
+     *
+     * @param reveil appelée, hors du verrou, quand des messages sont prêts à partir
+     */
+    public FileSortie(Runnable reveil) {
+        this.reveil = reveil;
+    }
+
+    /**
+     * Ouvre un cycle de commande sur le thread courant : les files où il dépose
+     * des messages sont retenues jusqu'à {@link #fermerCycle()}. Les cycles
+     * s'imbriquent ; seul le plus extérieur libère les files.
+     */
+    public static void ouvrirCycle() {
+        CYCLE.get().profondeur++;
+    }
+
+    /**
+     * Ferme le cycle de commande du thread courant : les files retenues sont
+     * libérées et leurs écrivains envoient tout ce que la commande a produit.
+     */
+    public static void fermerCycle() {
+        Cycle cycle = CYCLE.get();
+        if (--cycle.profondeur > 0) {
+            return;
+        }
+        for (FileSortie file : cycle.files) {
+            file.liberer();
+        }
+        cycle.files.clear();
+    }
+
+    // Compteurs de toutes les files du serveur, exportés en métriques : ils survivent aux déconnexions
+    private static final LongAdder PROFONDEUR = new LongAdder(); // Messages en attente, tous clients confondus
+    private static final LongAdder CHATS_JETES = new LongAdder();
+    private static final LongAdder GRILLES_FUSIONNEES = new LongAdder();
+    private static final LongAdder MESSAGES_JETES = new LongAdder();
+
+    /**
+     * Dépose un message dans la file. Ne bloque jamais sur le réseau.
+     *
+     * @param message le message : ligne de texte (sans fin de ligne) ou trame binaire
+     * @param type    la nature du message
+     * @return false si la file est saturée et que le client doit être déconnecté
+     */
+    public boolean offrir(Object message, Type type) {
+        boolean pret;
+        verrou.lock();
+        try {
+            if (fermee) {
+                return true;
+            }
+            retenir();
+            int profondeur = messages.size();
+            if (type == Type.CHAT && profondeur >= SEUIL_CHAT) {
+                CHATS_JETES.increment();
+                return true;
+            }
+            if (estGrille(type) && FUSION_GRILLES && grillesEnAttente[type.ordinal()] > 0) {
+                retirerGrille(type);
+                GRILLES_FUSIONNEES.increment();
+                profondeur--;
+            }
+            if (profondeur >= CAPACITE) {
+                MESSAGES_JETES.increment();
+                return !DECONNEXION;
+            }
+            messages.addLast(message);
+            types.addLast(type);
+            PROFONDEUR.increment();
+            if (estGrille(type)) {
+                grillesEnAttente[type.ordinal()]++;
+            }
+            pret = estPrete();
+            if (pret) {
+                nonVide.signal();
+            }
+        } finally {
+            verrou.unlock();
+        }
+        if (pret && reveil != null) {
+            reveil.run();
+        }
+        return true;
+    }
+
+    // Retient la file si le thread est dans un cycle de commande (une fois par cycle). Appelée avec le verrou
+    private void retenir() {
+        Cycle cycle = CYCLE.get();
+        if (cycle.profondeur > 0 && cycle.files.size() < MAX_RETENUES && !cycle.files.contains(this)) {
+            cycle.files.add(this);
+            retenues++;
+        }
+    }
+
+    // Fin d'un cycle qui retenait la file : l'écrivain est prévenu si des messages sont prêts
+    private void liberer() {
+        boolean pret;
+        verrou.lock();
+        try {
+            retenues--;
+            pret = estPrete();
+            if (pret) {
+                nonVide.signal();
+            }
+        } finally {
+            verrou.unlock();
+        }
+        if (pret && reveil != null) {
+            reveil.run();
+        }
+    }
+
+    // Des messages peuvent partir : aucune commande ne les retient, ou il y en a assez pour un envoi. Appelée avec le verrou
+    private boolean estPrete() {
+        return !messages.isEmpty() && (retenues == 0 || messages.size() >= SEUIL_LOT);
+    }
+
+    private static boolean estGrille(Type type) {
+        return type == Type.GRILLE || type == Type.GRILLE_SPECTATEUR;
+    }
+
+    // Retire la grille en attente de ce type (il y en a au plus une quand la fusion est active)
+    private void retirerGrille(Type type) {
+        Iterator<Object> itMessages = messages.iterator();
+        Iterator<Type> itTypes = types.iterator();
+        while (itTypes.hasNext()) {
+            itMessages.next();
+            if (itTypes.next() == type) {
+                itMessages.remove();
+                itTypes.remove();
+                grillesEnAttente[type.ordinal()]--;
+                PROFONDEUR.decrement();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retire le prochain message prêt à partir, sans attendre.
+     *
+     * @return le message, ou null si aucun n'est prêt
+     */
+    public Object prendre() {
+        verrou.lock();
+        try {
+            return estPrete() ? retirer() : null;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Retire le prochain message, en attendant qu'il y en ait un prêt à partir.
+     *
+     * @return le message, ou null si la file a été fermée
+     */
+    public Object attendre() throws InterruptedException {
+        verrou.lock();
+        try {
+            while (!estPrete() && !fermee) {
+                nonVide.await();
+            }
+            return fermee ? null : retirer();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    private Object retirer() {
+        Object message = messages.pollFirst();
+        if (message != null) {
+            PROFONDEUR.decrement();
+            Type type = types.pollFirst();
+            if (estGrille(type)) {
+                grillesEnAttente[type.ordinal()]--;
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Indique qu'aucun message n'est prêt à partir (l'écrivain peut alors vider
+     * son tampon) : la file est vide, ou retenue par une commande en cours.
+     *
+     * @return true si aucun message n'est prêt
+     */
+    public boolean estVide() {
+        verrou.lock();
+        try {
+            return !estPrete();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Ferme la file : les messages en attente sont abandonnés et l'écrivain s'arrête.
+     */
+    public void fermer() {
+        verrou.lock();
+        try {
+            fermee = true;
+            PROFONDEUR.add(-messages.size());
+            messages.clear();
+            types.clear();
+            Arrays.fill(grillesEnAttente, 0);
+            nonVide.signalAll();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Renvoie le nombre de messages en attente dans toutes les files du serveur.
+     *
+     * @return la profondeur totale des files de sortie
+     */
+    public static long getProfondeurTotale() {
+        return PROFONDEUR.sum();
+    }
+
+    /**
+     * Renvoie le nombre de messages de chat jetés (file au-delà de
+     * {@code p4.sortie.seuilChat}) depuis le démarrage, tous clients confondus.
+     *
+     * @return le nombre de chats jetés
+     */
+    public static long getChatsJetes() {
+        return CHATS_JETES.sum();
+    }
+
+    /**
+     * Renvoie le nombre de grilles remplacées par une plus récente avant
+     * d'être envoyées, depuis le démarrage.
+     *
+     * @return le nombre de grilles fusionnées
+     */
+    public static long getGrillesFusionnees() {
+        return GRILLES_FUSIONNEES.sum();
+    }
+
+    /**
+     * Renvoie le nombre de messages refusés par une file pleine, depuis le démarrage.
+     *
+     * @return le nombre de messages jetés
+     */
+    public static long getMessagesJetes() {
+        return MESSAGES_JETES.sum();
+    }
+
+    /**
+     * Cycle de commande d'un thread : les files qu'il retient.
+     */
+    private static final class Cycle {
+        final List<FileSortie> files = new ArrayList<>();
+        int profondeur = 0;
+    }
+}
@@ -0,0 +1,471 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * Générateur de charge : simule des milliers de joueurs depuis une seule JVM,
+ * sur un seul thread et un {@link Selector}.
+ *
+ * Les sessions vont par paires : la session paire invite la suivante, qui
+ * accepte ; elles jouent (coups au hasard ou du moteur), puis recommencent une
+ * partie. Chaque session envoie aussi des messages de chat au rythme demandé.
+ * On mesure la latence entre une commande et la réponse correspondante du
+ * serveur :
+ * <ul>
+ *   <li>connexion : pseudo envoyé → liste des joueurs connectés ;</li>
+ *   <li>invitation : {@code play} → « Invitation envoyée » ;</li>
+ *   <li>appariement (avec {@code p4.charge.appariement=file}) : {@code queue} → début de la partie ;</li>
+ *   <li>coup : colonne envoyée → changement de tour ou fin de partie ;</li>
+ *   <li>chat : message envoyé → son retour dans le lobby.</li>
+ * </ul>
+ * Le débit est affiché chaque seconde et les centiles en fin de mesure.
+ * Fonctionne avec tous les modes du serveur, en protocole texte ou binaire.
+ *
+ * Utilisation : {@code java Client charge [hote] [port] [sessions] [secondes]}, réglages :
+ * <ul>
+ *   <li>{@code p4.charge.coups} ({@code aleatoire}) : {@code aleatoire} ou {@code moteur} ;</li>
+ *   <li>{@code p4.charge.niveau} (1) : niveau du moteur ;</li>
+ *   <li>{@code p4.charge.chatsParSeconde} (0.1) : messages de chat par session et par seconde ;</li>
+ *   <li>{@code p4.charge.reflexionMs} (0) : délai avant chaque coup ;</li>
+ *   <li>{@code p4.charge.protocole} ({@code texte}) : {@code texte} ou {@code binaire} ;</li>
+ *   <li>{@code p4.charge.connexionsParSeconde} (500) : rythme d'ouverture des sessions ;</li>
+ *   <li>{@code p4.charge.appariement} ({@code invitation}) : {@code invitation} entre sessions
+ *       voisines, ou {@code file} (chaque session passe par la file d'attente du serveur) ;</li>
+ *   <li>{@code p4.charge.prefixe} ({@code charge}) : début des pseudos.</li>
+ * </ul>
+ */
+public class GenerateurCharge {
+    private static final boolean MOTEUR = "moteur".equalsIgnoreCase(System.getProperty("p4.charge.coups", "aleatoire"));
+    private static final int NIVEAU = Integer.getInteger("p4.charge.niveau", 1);
+    private static final double CHATS_PAR_SECONDE = Double.parseDouble(System.getProperty("p4.charge.chatsParSeconde", "0.1"));
+    private static final long REFLEXION_NS = Long.getLong("p4.charge.reflexionMs", 0) * 1_000_000L;
+    private static final boolean BINAIRE = "binaire".equalsIgnoreCase(System.getProperty("p4.charge.protocole", "texte"));
+    private static final int CONNEXIONS_PAR_SECONDE = Integer.getInteger("p4.charge.connexionsParSeconde", 500);
+    private static final String PREFIXE = System.getProperty("p4.charge.prefixe", "charge");
+    private static final boolean FILE = "file".equalsIgnoreCase(System.getProperty("p4.charge.appariement", "invitation"));
+    private static final int FINS_PAR_PARTIE = FILE ? 2 : 1; // Avec la file, chaque session compte ses fins de partie
+
+    private static final long SECONDE = 1_000_000_000L;
+    private static final long NON_PREVU = Long.MAX_VALUE;
+
+    private final InetSocketAddress adresse;
+    private final Session[] sessions;
+    private final Selector selecteur;
+    private final SplittableRandom hasard = new SplittableRandom(42);
+    private final ByteBuffer lecture = ByteBuffer.allocate(64 * 1024);
+
+    // Latences depuis le début, et latences des coups de la seconde en cours
+    private final Histogramme connexions = new Histogramme();
+    private final Histogramme invitations = new Histogramme();
+    private final Histogramme appariements = new Histogramme();
+    private final Histogramme coups = new Histogramme();
+    private final Histogramme chats = new Histogramme();
+    private final Histogramme coupsSeconde = new Histogramme();
+    private long parties = 0;
+    private long partiesSeconde = 0;
+    private long chatsSeconde = 0;
+    private int connectees = 0;
+    private int erreurs = 0;
+
+    public static void main(String[] args) throws IOException {
+        String hote = args.length >= 1 ? args[0] : "localhost";
+        int port = args.length >= 2 ? Integer.parseInt(args[1]) : 12345;
+        int nbSessions = args.length >= 3 ? Integer.parseInt(args[2]) : 1000;
+        int secondes = args.length >= 4 ? Integer.parseInt(args[3]) : 30;
+        new GenerateurCharge(new InetSocketAddress(hote, port), nbSessions).executer(secondes);
+    }
+
+    private GenerateurCharge(InetSocketAddress adresse, int nbSessions) throws IOException {
+        this.adresse = adresse;
+        this.sessions = new Session[nbSessions + (nbSessions & 1)]; // Nombre pair : des paires complètes
+        this.selecteur = Selector.open();
+    }
+
+    private void executer(int secondes) throws IOException {
+        System.out.println(sessions.length + " sessions vers " + adresse + ", protocole " + (BINAIRE ? "binaire" : "texte")
+                + ", coups " + (MOTEUR ? "du moteur (niveau " + NIVEAU + ")" : "au hasard"));
+        long debut = System.nanoTime();
+        long fin = debut + secondes * SECONDE;
+        long prochainBilan = debut + SECONDE;
+        int ouvertes = 0;
+        while (true) {
+            long maintenant = System.nanoTime();
+            if (maintenant >= fin) {
+                break;
+            }
+            // Ouverture progressive des sessions
+            long permises = Math.min(sessions.length, (maintenant - debut) * CONNEXIONS_PAR_SECONDE / SECONDE + 1);
+            while (ouvertes < permises) {
+                ouvrir(ouvertes++);
+            }
+
+            selecteur.select(5);
+            Iterator<SelectionKey> cles = selecteur.selectedKeys().iterator();
+            while (cles.hasNext()) {
+                SelectionKey cle = cles.next();
+                cles.remove();
+                Session session = (Session) cle.attachment();
+                try {
+                    if (cle.isConnectable()) {
+                        session.canal.finishConnect();
+                        cle.interestOps(SelectionKey.OP_READ);
+                        connectees++;
+                        if (BINAIRE) {
+                            session.envoyer(ProtocoleBinaire.DEMANDE);
+                        }
+                        session.envoiConnexion = System.nanoTime();
+                        session.envoyer(session.pseudo);
+                    }
+                    if (cle.isValid() && cle.isWritable()) {
+                        session.vider();
+                    }
+                    if (cle.isValid() && cle.isReadable()) {
+                        lire(session);
+                    }
+                } catch (IOException e) {
+                    session.fermer();
+                    erreurs++;
+                }
+            }
+
+            maintenant = System.nanoTime();
+            for (int i = 0; i < ouvertes; i++) {
+                try {
+                    sessions[i].agir(maintenant);
+                } catch (IOException e) { // Connexion coupée : seule cette session s'arrête, la mesure continue
+                    sessions[i].fermer();
+                    erreurs++;
+                }
+            }
+
+            if (maintenant >= prochainBilan) {
+                System.out.printf("t=%ds sessions=%d parties/s=%d coups/s=%d chats/s=%d coups : %s%n",
+                        (maintenant - debut) / SECONDE, connectees, partiesSeconde / FINS_PAR_PARTIE, coupsSeconde.getTotal(),
+                        chatsSeconde, coupsSeconde.resume());
+                partiesSeconde = 0;
+                chatsSeconde = 0;
+                coupsSeconde.effacer();
+                prochainBilan += SECONDE;
+            }
+        }
+
+        double duree = (System.nanoTime() - debut) / (double) SECONDE;
+        long parties = this.parties / FINS_PAR_PARTIE;
+        System.out.printf("Bilan sur %.1f s : %d parties (%.1f/s), %d coups (%.1f/s), %d erreurs de connexion%n",
+                duree, parties, parties / duree, coups.getTotal(), coups.getTotal() / duree, erreurs);
+        System.out.println("connexion  : " + connexions.resume());
+        System.out.println("invitation : " + invitations.resume());
+        if (FILE) {
+            System.out.println("appariement: " + appariements.resume());
+        }
+        System.out.println("coup       : " + coups.resume());
+        System.out.println("chat       : " + chats.resume());
+        for (Session session : sessions) {
+            if (session != null) {
+                session.fermer();
+            }
+        }
+        selecteur.close();
+    }
+
+    private void ouvrir(int indice) throws IOException {
+        Session session = new Session(indice);
+        sessions[indice] = session;
+        session.canal = SocketChannel.open();
+        session.canal.configureBlocking(false);
+        session.canal.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+        session.cle = session.canal.register(selecteur, SelectionKey.OP_CONNECT, session);
+        session.canal.connect(adresse);
+    }
+
+    private void lire(Session session) throws IOException {
+        lecture.clear();
+        int lus = session.canal.read(lecture);
+        if (lus < 0) {
+            session.fermer();
+            return;
+        }
+        lecture.flip();
+        long maintenant = System.nanoTime();
+        while (lecture.hasRemaining()) {
+            session.recevoirOctet(lecture.get(), maintenant);
+        }
+    }
+
+    /**
+     * Un joueur simulé.
+     */
+    private final class Session {
+        final int indice;
+        final String pseudo;
+        final String partenaire;
+        final boolean inviteur; // La session paire invite, l'impaire accepte
+        SocketChannel canal;
+        SelectionKey cle;
+        private final ArrayDeque<ByteBuffer> aEcrire = new ArrayDeque<>();
+
+        // Réception : ligne de texte ou trame binaire en cours
+        private byte[] recu = new byte[256];
+        private int longueur = 0;
+        private int attendus = -1; // Octets restants de la trame binaire en cours (-1 : en-tête pas encore lu)
+
+        // Partie en cours
+        private MoteurPuissance4 plateau = new MoteurPuissance4();
+        private final char[][] grille = new char[MoteurPuissance4.LIGNES][MoteurPuissance4.COLONNES];
+        private int ligneGrille = -1; // Ligne de la grille texte en cours de lecture (-1 : hors grille)
+
+        // Commandes en attente de réponse (0 : aucune)
+        long envoiConnexion = 0;
+        private long envoiInvitation = 0;
+        private long envoiCoup = 0;
+        private final ArrayDeque<Long> envoisChat = new ArrayDeque<>();
+
+        // Actions programmées
+        private long prochainCoup = NON_PREVU;
+        private long prochaineInvitation = NON_PREVU;
+        private long prochainChat;
+        private boolean enregistre = false;
+        private boolean fermee = false;
+
+        Session(int indice) {
+            this.indice = indice;
+            this.pseudo = PREFIXE + indice;
+            this.partenaire = PREFIXE + (indice ^ 1);
+            this.inviteur = (indice & 1) == 0;
+            this.prochainChat = System.nanoTime() + delaiChat();
+        }
+
+        void agir(long maintenant) throws IOException {
+            if (fermee || !enregistre) {
+                return;
+            }
+            if (maintenant >= prochaineInvitation) {
+                prochaineInvitation = NON_PREVU;
+                envoiInvitation = maintenant;
+                envoyer(FILE ? "queue" : "play " + partenaire);
+            }
+            if (maintenant >= prochainCoup) {
+                prochainCoup = NON_PREVU;
+                envoiCoup = maintenant;
+                envoyer(Integer.toString(choisirCoup()));
+            }
+            if (CHATS_PAR_SECONDE > 0 && maintenant >= prochainChat) {
+                prochainChat = maintenant + delaiChat();
+                envoisChat.add(maintenant);
+                chatsSeconde++;
+                envoyer("message de " + pseudo);
+            }
+        }
+
+        private int choisirCoup() {
+            if (MOTEUR) {
+                return Solveur.chercher(plateau, Solveur.profondeurDuNiveau(NIVEAU), 100).getColonne();
+            }
+            int colonne;
+            int essais = 0;
+            do {
+                colonne = hasard.nextInt(MoteurPuissance4.COLONNES);
+            } while (!plateau.peutJouer(colonne) && ++essais < 100);
+            return colonne;
+        }
+
+        // Délai jusqu'au prochain chat : loi exponentielle, pour des envois indépendants
+        private long delaiChat() {
+            if (CHATS_PAR_SECONDE <= 0) {
+                return NON_PREVU / 2;
+            }
+            return (long) (-Math.log(1 - hasard.nextDouble()) / CHATS_PAR_SECONDE * SECONDE);
+        }
+
+        void recevoirOctet(byte b, long maintenant) throws IOException {
+            if (!BINAIRE) {
+                if (b == '\n') {
+                    recevoirTexte(new String(recu, 0, longueur, StandardCharsets.UTF_8), maintenant);
+                    longueur = 0;
+                } else {
+                    ajouter(b);
+                }
+                return;
+            }
+            // Trame binaire : 2 octets de longueur, puis la trame
+            ajouter(b);
+            if (attendus < 0 && longueur == 2) {
+                attendus = ((recu[0] & 0xFF) << 8 | (recu[1] & 0xFF));
+                longueur = 0;
+            } else if (attendus >= 0 && longueur == attendus) {
+                recevoirTrame(Arrays.copyOf(recu, longueur), maintenant);
+                longueur = 0;
+                attendus = -1;
+            }
+        }
+
+        private void ajouter(byte b) {
+            if (longueur == recu.length) {
+                recu = Arrays.copyOf(recu, recu.length * 2);
+            }
+            recu[longueur++] = b;
+        }
+
+        private void recevoirTrame(byte[] trame, long maintenant) throws IOException {
+            switch (trame[0]) {
+                case ProtocoleBinaire.OP_TEXTE:
+                    for (String ligne : new String(trame, 1, trame.length - 1, StandardCharsets.UTF_8).split("\n")) {
+                        recevoirTexte(ligne, maintenant);
+                    }
+                    break;
+                case ProtocoleBinaire.OP_DEBUT:
+                    plateau = new MoteurPuissance4();
+                    break;
+                case ProtocoleBinaire.OP_PION:
+                    if (plateau.peutJouer(trame[1])) {
+                        plateau.jouer(trame[1]);
+                    }
+                    break;
+                case ProtocoleBinaire.OP_TOUR:
+                    if (trame[1] == 1) {
+                        prochainCoup = maintenant + REFLEXION_NS;
+                    } else {
+                        repondreCoup(maintenant);
+                    }
+                    break;
+                case ProtocoleBinaire.OP_FIN:
+                    finDePartie(maintenant);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void recevoirTexte(String ligne, long maintenant) throws IOException {
+            if (!enregistre && ligne.contains("Joueurs connect")) {
+                enregistre = true;
+                connexions.enregistrer(maintenant - envoiConnexion);
+                if (inviteur || FILE) {
+                    prochaineInvitation = maintenant + SECONDE / 10; // Le temps que le partenaire se connecte
+                }
+            } else if (ligne.contains("Invitation envoy")) {
+                invitations.enregistrer(maintenant - envoiInvitation);
+            } else if (ligne.contains("n'est pas disponible")) {
+                prochaineInvitation = maintenant + SECONDE / 5; // Partenaire pas encore là : on réessaie
+            } else if (ligne.contains("vous invite")) {
+                envoyer("yes");
+            } else if (ligne.contains("La partie commence")) {
+                if (FILE && envoiInvitation != 0) {
+                    appariements.enregistrer(maintenant - envoiInvitation);
+                    envoiInvitation = 0;
+                }
+                plateau = new MoteurPuissance4();
+            } else if (ligne.startsWith("[Chat] " + pseudo + ": ")) {
+                Long envoi = envoisChat.poll();
+                if (envoi != null) {
+                    chats.enregistrer(maintenant - envoi);
+                }
+            } else if (ligne.contains("Mouvement invalide")) {
+                repondreCoup(maintenant);
+                prochainCoup = maintenant; // Nouvel essai, sur une autre colonne si le hasard le veut
+            } else if (!BINAIRE) { // En binaire, la partie est suivie par les trames
+                recevoirPartieTexte(ligne, maintenant);
+            }
+        }
+
+        private void recevoirPartieTexte(String ligne, long maintenant) {
+            if (ligne.startsWith("   1   2")) {
+                ligneGrille = MoteurPuissance4.LIGNES - 1; // La grille s'affiche de haut en bas
+            } else if (ligneGrille >= 0 && ligne.indexOf('|') >= 0) {
+                for (int colonne = 0; colonne < MoteurPuissance4.COLONNES; colonne++) {
+                    int position = 2 + 5 * colonne;
+                    grille[ligneGrille][colonne] = position < ligne.length() ? ligne.charAt(position) : '.';
+                }
+                if (--ligneGrille < 0) {
+                    synchroniserPlateau();
+                }
+            } else if (ligne.contains("vous de jouer")) {
+                prochainCoup = maintenant + REFLEXION_NS;
+            } else if (ligne.startsWith("C'est ") && ligne.contains(" de jouer")) {
+                repondreCoup(maintenant);
+            } else if (ligne.contains("Vous avez gagn") || ligne.contains(" a gagn") || ligne.contains("Match nul")
+                    || ligne.contains("abandonn")) {
+                finDePartie(maintenant);
+            }
+        }
+
+        // Rejoue sur le plateau local les pions apparus dans la grille reçue (un ou deux, selon les fusions)
+        private void synchroniserPlateau() {
+            boolean progres = true;
+            while (progres) {
+                progres = false;
+                for (int colonne = 0; colonne < MoteurPuissance4.COLONNES; colonne++) {
+                    if (!plateau.peutJouer(colonne)) {
+                        continue;
+                    }
+                    int ligne = 0;
+                    while (plateau.getCase(ligne, colonne) != -1) {
+                        ligne++;
+                    }
+                    char attendu = plateau.getJoueurCourant() == 0 ? 'X' : 'O';
+                    if (grille[ligne][colonne] == attendu) {
+                        plateau.jouer(colonne);
+                        progres = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void repondreCoup(long maintenant) {
+            if (envoiCoup != 0) {
+                coups.enregistrer(maintenant - envoiCoup);
+                coupsSeconde.enregistrer(maintenant - envoiCoup);
+                envoiCoup = 0;
+            }
+        }
+
+        private void finDePartie(long maintenant) {
+            repondreCoup(maintenant);
+            prochainCoup = NON_PREVU;
+            if (inviteur || FILE) {
+                parties++;
+                partiesSeconde++;
+                prochaineInvitation = maintenant + SECONDE / 100;
+            }
+        }
+
+        void envoyer(String ligne) throws IOException {
+            aEcrire.add(ByteBuffer.wrap((ligne + "\n").getBytes(StandardCharsets.UTF_8)));
+            vider();
+        }
+
+        void vider() throws IOException {
+            while (!aEcrire.isEmpty()) {
+                ByteBuffer tampon = aEcrire.peek();
+                canal.write(tampon);
+                if (tampon.hasRemaining()) {
+                    cle.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                aEcrire.poll();
+            }
+            cle.interestOps(SelectionKey.OP_READ);
+        }
+
+        void fermer() {
+            if (fermee) {
+                return;
+            }
+            fermee = true;
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // Déjà fermée
+            }
+        }
+    }
+}
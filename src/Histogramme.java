@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * Histogramme de latences à précision relative constante, dans l'esprit de
+ * HdrHistogram : les valeurs (en microsecondes) sont rangées dans des
+ * intervalles dont la largeur double à chaque puissance de deux, chaque
+ * puissance étant découpée en {@value #SOUS_INTERVALLES} parts. L'erreur sur
+ * un percentile est donc d'environ 1,5 %, avec une mémoire fixe de quelques
+ * kilo-octets et un enregistrement en temps constant.
+ *
+ * Non synchronisé : chaque thread tient ses propres histogrammes, fusionnés
+ * avec {@link #ajouter(Histogramme)}.
+ */
+public class Histogramme {
+    private static final int BITS = 6;
+    private static final int SOUS_INTERVALLES = 1 << BITS;
+    private static final int EXACTES = 2 * SOUS_INTERVALLES; // Valeurs sous 128 µs : comptées une par une
+    static final int TAILLE = EXACTES + (63 - BITS) * SOUS_INTERVALLES;
+
+    private final long[] comptes = new long[TAILLE];
+    private long total = 0;
+    private long max = 0;
+
+    /**
+     * Enregistre une durée.
+     *
+     * @param nanos la durée en nanosecondes
+     */
+    public void enregistrer(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        comptes[indice(micros)]++;
+        total++;
+        max = Math.max(max, micros);
+    }
+
+    /**
+     * Ajoute les valeurs d'un autre histogramme à celui-ci.
+     *
+     * @param autre l'histogramme à ajouter
+     */
+    public void ajouter(Histogramme autre) {
+        for (int i = 0; i < TAILLE; i++) {
+            comptes[i] += autre.comptes[i];
+        }
+        total += autre.total;
+        max = Math.max(max, autre.max);
+    }
+
+    /**
+     * Renvoie la valeur sous laquelle se trouve une part donnée des mesures.
+     *
+     * @param centile la part voulue, entre 0 et 100 (par exemple 99.9)
+     * @return la valeur en microsecondes (borne haute de son intervalle), 0 sans mesure
+     */
+    public long centile(double centile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rang = (long) Math.ceil(centile / 100.0 * total);
+        long cumul = 0;
+        for (int i = 0; i < TAILLE; i++) {
+            cumul += comptes[i];
+            if (cumul >= Math.max(1, rang)) {
+                return Math.min(borneHaute(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Ajoute des mesures déjà rangées dans un intervalle (comptes tenus ailleurs,
+     * voir {@link Metriques}). Le maximum retenu est la borne haute de l'intervalle.
+     *
+     * @param indice l'intervalle, obtenu par {@link #indice(long)}
+     * @param compte le nombre de mesures
+     */
+    void ajouter(int indice, long compte) {
+        comptes[indice] += compte;
+        total += compte;
+        max = Math.max(max, borneHaute(indice));
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Vide l'histogramme.
+     */
+    public void effacer() {
+        Arrays.fill(comptes, 0);
+        total = 0;
+        max = 0;
+    }
+
+    /**
+     * Résume l'histogramme : nombre de mesures, p50, p99, p99,9 et maximum, en millisecondes.
+     *
+     * @return une ligne de texte lisible
+     */
+    public String resume() {
+        return String.format("n=%d p50=%.2f p99=%.2f p99.9=%.2f max=%.2f ms", total,
+                centile(50) / 1000.0, centile(99) / 1000.0, centile(99.9) / 1000.0, max / 1000.0);
+    }
+
+    // Intervalle d'une valeur en microsecondes
+    static int indice(long micros) {
+        if (micros < EXACTES) {
+            return (int) micros;
+        }
+        int exposant = 63 - Long.numberOfLeadingZeros(micros); // >= BITS + 1
+        int sous = (int) (micros >>> (exposant - BITS)) & (SOUS_INTERVALLES - 1);
+        return EXACTES + (exposant - BITS - 1) * SOUS_INTERVALLES + sous;
+    }
+
+    private static long borneHaute(int indice) {
+        if (indice < EXACTES) {
+            return indice;
+        }
+        int exposant = (indice - EXACTES) / SOUS_INTERVALLES + BITS + 1;
+        int sous = (indice - EXACTES) % SOUS_INTERVALLES;
+        return ((long) (SOUS_INTERVALLES + sous + 1) << (exposant - BITS)) - 1;
+    }
+}
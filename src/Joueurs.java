@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * Table des pseudos : chaque pseudo reçoit un identifiant entier dense (0, 1,
+ * 2...) à sa première apparition, et le garde. Les données des joueurs peuvent
+ * alors être rangées dans des tableaux de types primitifs indicés par
+ * identifiant, au lieu d'un objet par joueur dans une table par pseudo.
+ *
+ * L'index est un adressage ouvert (sondage linéaire) de cases {@code int} :
+ * identifiant + 1, 0 pour une case vide. Le hachage de chaque pseudo est gardé
+ * à côté, pour ne comparer les chaînes qu'en cas de hachage égal. Retrouver le
+ * pseudo d'un identifiant ({@link #getPseudo(int)}) se fait sans verrou ; les
+ * ajouts et les recherches par pseudo sont synchronisés, et n'ont lieu qu'à la
+ * connexion d'un joueur ou pour les commandes qui nomment un autre joueur.
+ */
+public final class Joueurs {
+    private static final int CAPACITE_INITIALE = 1024;
+
+    private int[] cases = new int[2 * CAPACITE_INITIALE]; // Index (puissance de 2, à moitié plein au plus)
+    private int[] hachages = new int[CAPACITE_INITIALE]; // Par identifiant
+    private volatile String[] pseudos = new String[CAPACITE_INITIALE]; // Par identifiant
+    private volatile int nombre = 0;
+
+    /**
+     * Renvoie l'identifiant d'un pseudo, attribué à sa première apparition.
+     *
+     * @param pseudo le pseudo
+     * @return son identifiant, de 0 à {@link #getNombre()} - 1
+     */
+    public synchronized int interner(String pseudo) {
+        int hachage = hacher(pseudo);
+        int id = chercher(pseudo, hachage);
+        if (id >= 0) {
+            return id;
+        }
+        id = nombre;
+        if (id == hachages.length) {
+            hachages = Arrays.copyOf(hachages, id * 2);
+            pseudos = Arrays.copyOf(pseudos, id * 2);
+        }
+        if (2 * (id + 1) > cases.length) {
+            reindexer(cases.length * 2);
+        }
+        hachages[id] = hachage;
+        pseudos[id] = pseudo;
+        placer(id, hachage);
+        nombre = id + 1; // Publication : le pseudo est écrit avant
+        return id;
+    }
+
+    /**
+     * Renvoie l'identifiant d'un pseudo déjà connu.
+     *
+     * @param pseudo le pseudo
+     * @return son identifiant, ou -1 s'il n'en a pas
+     */
+    public synchronized int getId(String pseudo) {
+        return chercher(pseudo, hacher(pseudo));
+    }
+
+    /**
+     * Renvoie le pseudo d'un identifiant.
+     *
+     * @param id un identifiant attribué par {@link #interner(String)}
+     * @return le pseudo
+     */
+    public String getPseudo(int id) {
+        if (id < 0 || id >= nombre) {
+            throw new IllegalArgumentException("Identifiant de joueur inconnu : " + id);
+        }
+        return pseudos[id];
+    }
+
+    /**
+     * Renvoie le nombre d'identifiants attribués.
+     *
+     * @return le nombre de pseudos connus
+     */
+    public int getNombre() {
+        return nombre;
+    }
+
+    // Appelée avec le moniteur
+    private int chercher(String pseudo, int hachage) {
+        int masque = cases.length - 1;
+        for (int i = hachage & masque; ; i = (i + 1) & masque) {
+            int idPlusUn = cases[i];
+            if (idPlusUn == 0) {
+                return -1;
+            }
+            if (hachages[idPlusUn - 1] == hachage && pseudos[idPlusUn - 1].equals(pseudo)) {
+                return idPlusUn - 1;
+            }
+        }
+    }
+
+    private void placer(int id, int hachage) {
+        int masque = cases.length - 1;
+        int i = hachage & masque;
+        while (cases[i] != 0) {
+            i = (i + 1) & masque;
+        }
+        cases[i] = id + 1;
+    }
+
+    private void reindexer(int capacite) {
+        cases = new int[capacite];
+        for (int id = 0; id < nombre; id++) {
+            placer(id, hachages[id]);
+        }
+    }
+
+    // Hachage de la chaîne (mis en cache par String), puis mélange des bits
+    private static int hacher(String pseudo) {
+        int h = pseudo.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,508 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal des parties terminées, pour les commandes {@code replay} et {@code history}.
+ *
+ * Chaque partie est un enregistrement binaire compact, ajouté à la fin du
+ * segment courant ({@code parties/parties-000001.seg}, ...) ; un nouveau
+ * segment est ouvert quand le courant dépasse {@code p4.parties.tailleSegment}
+ * octets. Les enregistrements sont écrits par un thread dédié, par lots, avec
+ * un seul {@code fsync} par fenêtre de {@code p4.parties.intervalleMs} :
+ * terminer une partie ne fait que déposer son enregistrement dans une file.
+ *
+ * Format d'un enregistrement (gros-boutiste) :
+ * <pre>
+ * [longueur du reste : 2 octets][numéro : 8][début : 8, ms depuis l'époque][durée : 4, ms]
+ * [résultat : 1][nombre de coups : 1][joueur X (writeUTF)][joueur O (writeUTF)]
+ * [coups : 3 bits par colonne jouée, le premier coup dans les bits de poids faible]
+ * </pre>
+ *
+ * Deux index en mémoire sont reconstruits au démarrage en ne lisant que les
+ * en-têtes : la position de chaque partie par numéro (les numéros se suivent),
+ * et les {@code p4.parties.historique} dernières parties de chaque joueur.
+ * Relire une partie ne lit que son enregistrement, à sa position dans le
+ * segment : aucun segment n'est chargé en mémoire.
+ */
+public class JournalParties {
+    private static final long INTERVALLE_MS = Long.getLong("p4.parties.intervalleMs", 200);
+    private static final long TAILLE_SEGMENT = Long.getLong("p4.parties.tailleSegment", 8 * 1024 * 1024);
+    private static final int HISTORIQUE = Integer.getInteger("p4.parties.historique", 20);
+    private static final String PREFIXE = "parties-";
+    private static final String SUFFIXE = ".seg";
+    private static final int EN_TETE = 8 + 8 + 4 + 1 + 1; // Numéro, début, durée, résultat, nombre de coups
+    private static final int TAILLE_MAX = 0xFFFF;
+
+    public static final int VICTOIRE_X = 0;
+    public static final int VICTOIRE_O = 1;
+    public static final int NUL = 2;
+    public static final int ABANDON = 4; // Ajouté au résultat quand le perdant a abandonné
+
+    private final Path dossier;
+    private final BlockingQueue<Partie> enAttente = new LinkedBlockingQueue<>();
+    private final Map<Integer, FileChannel> lecteurs = new ConcurrentHashMap<>(); // Segments ouverts en lecture
+    private final Map<String, Historique> parJoueur = new ConcurrentHashMap<>();
+    private volatile long[] positions = new long[1024]; // Par numéro - 1 : segment << 32 | position, -1 si absente
+    private volatile long nbIndexees = 0; // Parties dont la position est publiée
+    private long prochainNumero = 1; // Protégé par le moniteur du journal
+    private volatile boolean actif = false;
+    private FileChannel canal; // Segment courant, utilisé uniquement par l'écrivain
+    private int segment = 1;
+    private Thread ecrivain;
+
+    /**
+     * Partie enregistrée : joueurs, dates, résultat et coups.
+     */
+    public static final class Partie {
+        final long numero;
+        final String joueurX;
+        final String joueurO;
+        final long debut;
+        final int duree;
+        final int resultat;
+        final byte[] coups;
+
+        Partie(long numero, String joueurX, String joueurO, long debut, int duree, int resultat, byte[] coups) {
+            this.numero = numero;
+            this.joueurX = joueurX;
+            this.joueurO = joueurO;
+            this.debut = debut;
+            this.duree = duree;
+            this.resultat = resultat;
+            this.coups = coups;
+        }
+
+        public long getNumero() {
+            return numero;
+        }
+
+        public String getJoueurX() {
+            return joueurX;
+        }
+
+        public String getJoueurO() {
+            return joueurO;
+        }
+
+        public long getDebut() {
+            return debut;
+        }
+
+        public int getDuree() {
+            return duree;
+        }
+
+        /**
+         * @return {@link #VICTOIRE_X}, {@link #VICTOIRE_O} ou {@link #NUL}, plus {@link #ABANDON} le cas échéant
+         */
+        public int getResultat() {
+            return resultat;
+        }
+
+        public int getNbCoups() {
+            return coups.length;
+        }
+
+        /**
+         * @return les colonnes jouées, dans l'ordre (X joue les coups pairs)
+         */
+        public byte[] getCoups() {
+            return coups.clone();
+        }
+    }
+
+    /**
+     * Dernières parties d'un joueur, en anneau.
+     */
+    private static final class Historique {
+        private final long[] numeros = new long[HISTORIQUE];
+        private int total = 0;
+
+        synchronized void ajouter(long numero) {
+            numeros[total % numeros.length] = numero;
+            total++;
+        }
+
+        synchronized long[] recentes() {
+            int n = Math.min(total, numeros.length);
+            long[] recentes = new long[n];
+            for (int i = 0; i < n; i++) {
+                recentes[i] = numeros[(total - 1 - i) % numeros.length];
+            }
+            return recentes;
+        }
+    }
+
+    /**
+     * Constructeur du journal.
+     *
+     * @param dossier le dossier des segments, créé au besoin
+     */
+    public JournalParties(String dossier) {
+        this.dossier = Paths.get(dossier);
+    }
+
+    /**
+     * Reconstruit les index à partir des en-têtes des segments. Une fin de
+     * dernier segment incomplète (crash pendant une écriture) est tronquée.
+     */
+    public void charger() throws IOException {
+        Files.createDirectories(dossier);
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(dossier, PREFIXE + "*" + SUFFIXE)) {
+            for (Path fichier : fichiers) {
+                String nom = fichier.getFileName().toString();
+                try {
+                    segments.put(Integer.parseInt(nom.substring(PREFIXE.length(), nom.length() - SUFFIXE.length())), fichier);
+                } catch (NumberFormatException e) {
+                    // Fichier étranger au journal
+                }
+            }
+        }
+        for (Map.Entry<Integer, Path> entree : segments.entrySet()) {
+            segment = entree.getKey();
+            long valide = indexer(segment, entree.getValue());
+            if (Files.size(entree.getValue()) > valide) {
+                System.out.println("Fin du segment " + entree.getValue().getFileName() + " incomplète, tronquée à "
+                        + valide + " octets.");
+                try (FileChannel c = FileChannel.open(entree.getValue(), StandardOpenOption.WRITE)) {
+                    c.truncate(valide);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ouvre le segment courant et démarre le thread d'écriture.
+     */
+    public void demarrer() throws IOException {
+        Files.createDirectories(dossier);
+        canal = FileChannel.open(fichierSegment(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        actif = true;
+        ecrivain = new Thread(this::ecrireEnBoucle, "journal-parties");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+    }
+
+    /**
+     * Ajoute une partie terminée au journal. Ne bloque jamais : l'écriture est
+     * faite par le thread du journal, la partie est relisible une fois écrite.
+     *
+     * @param joueurX  le pseudo du joueur X (qui a commencé)
+     * @param joueurO  le pseudo du joueur O
+     * @param debut    l'heure de début, en millisecondes depuis l'époque
+     * @param fin      l'heure de fin, en millisecondes depuis l'époque
+     * @param resultat {@link #VICTOIRE_X}, {@link #VICTOIRE_O} ou {@link #NUL}, plus {@link #ABANDON} le cas échéant
+     * @param coups    les colonnes jouées, dans l'ordre
+     * @return le numéro de la partie
+     */
+    public synchronized long ajouter(String joueurX, String joueurO, long debut, long fin, int resultat, byte[] coups) {
+        long numero = prochainNumero++;
+        int duree = (int) Math.max(0, Math.min(Integer.MAX_VALUE, fin - debut));
+        // Sous le moniteur : la file reste dans l'ordre des numéros, que l'écrivain suit
+        enAttente.add(new Partie(numero, joueurX, joueurO, debut, duree, resultat, coups));
+        return numero;
+    }
+
+    /**
+     * Relit une partie, en ne lisant que son enregistrement.
+     *
+     * @param numero le numéro de la partie
+     * @return la partie, ou null si elle n'existe pas (ou n'est pas encore écrite)
+     */
+    public Partie lire(long numero) throws IOException {
+        if (numero < 1 || numero > nbIndexees) {
+            return null;
+        }
+        long position = positions[(int) (numero - 1)];
+        if (position < 0) {
+            return null;
+        }
+        int numeroSegment = (int) (position >>> 32);
+        FileChannel lecteur = lecteurs.get(numeroSegment);
+        if (lecteur == null) {
+            lecteur = FileChannel.open(fichierSegment(numeroSegment), StandardOpenOption.READ);
+            FileChannel existant = lecteurs.putIfAbsent(numeroSegment, lecteur);
+            if (existant != null) {
+                lecteur.close();
+                lecteur = existant;
+            }
+        }
+        long debut = position & 0xFFFFFFFFL;
+        ByteBuffer longueur = ByteBuffer.allocate(2);
+        lireTout(lecteur, longueur, debut);
+        ByteBuffer enregistrement = ByteBuffer.allocate(longueur.getShort(0) & 0xFFFF);
+        lireTout(lecteur, enregistrement, debut + 2);
+        return decoder(new DataInputStream(new ByteArrayInputStream(enregistrement.array())));
+    }
+
+    /**
+     * Renvoie les numéros des dernières parties d'un joueur, de la plus récente
+     * à la plus ancienne ({@code p4.parties.historique} au plus).
+     *
+     * @param pseudo le pseudo du joueur
+     * @return les numéros, éventuellement aucun
+     */
+    public long[] recentes(String pseudo) {
+        Historique historique = parJoueur.get(pseudo);
+        return historique == null ? new long[0] : historique.recentes();
+    }
+
+    /**
+     * Renvoie le nombre de parties relisibles.
+     *
+     * @return le nombre de parties écrites dans le journal
+     */
+    public long getNbParties() {
+        return nbIndexees;
+    }
+
+    /**
+     * Arrête le journal : les parties en attente sont écrites et synchronisées.
+     */
+    public void fermer() {
+        actif = false;
+        try {
+            ecrivain.join();
+            canal.close();
+            for (FileChannel lecteur : lecteurs.values()) {
+                lecteur.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Erreur lors de la fermeture du journal des parties : " + e.getMessage());
+        }
+    }
+
+    // Boucle du thread d'écriture : un lot par fenêtre de regroupement, un seul fsync par lot
+    private void ecrireEnBoucle() {
+        List<Partie> lot = new ArrayList<>();
+        ByteArrayOutputStream octets = new ByteArrayOutputStream();
+        DataOutputStream sortie = new DataOutputStream(octets);
+        long[] decalages = new long[0];
+        while (actif || !enAttente.isEmpty()) {
+            try {
+                Partie premiere = enAttente.poll(100, TimeUnit.MILLISECONDS);
+                if (premiere == null) {
+                    continue;
+                }
+                lot.add(premiere);
+                if (INTERVALLE_MS > 0 && actif) {
+                    Thread.sleep(INTERVALLE_MS);
+                }
+                enAttente.drainTo(lot);
+
+                long debut = System.nanoTime();
+                if (canal.size() >= TAILLE_SEGMENT) {
+                    canal.close();
+                    segment++;
+                    canal = FileChannel.open(fichierSegment(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.APPEND);
+                }
+                long base = canal.size();
+                octets.reset();
+                if (decalages.length < lot.size()) {
+                    decalages = new long[lot.size()];
+                }
+                for (int i = 0; i < lot.size(); i++) {
+                    long position = base + octets.size();
+                    decalages[i] = encoder(lot.get(i), sortie) ? position : -1;
+                }
+                ByteBuffer tampon = ByteBuffer.wrap(octets.toByteArray());
+                while (tampon.hasRemaining()) {
+                    canal.write(tampon);
+                }
+                canal.force(false);
+                for (int i = 0; i < lot.size(); i++) {
+                    Partie partie = lot.get(i);
+                    indexer(partie.numero, decalages[i] < 0 ? -1 : (long) segment << 32 | decalages[i],
+                            partie.joueurX, partie.joueurO);
+                }
+                Metriques.PARTIES_LOT_JOURNAL.enregistrer(System.nanoTime() - debut);
+                lot.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                Traces.tracer(Traces.Evenement.ERREUR_JOURNAL_PARTIES, "Erreur d'écriture du journal des parties", e);
+                for (Partie partie : lot) {
+                    indexer(partie.numero, -1, partie.joueurX, partie.joueurO);
+                }
+                lot.clear();
+            }
+        }
+    }
+
+    // Publie la position d'une partie et l'ajoute à l'historique de ses joueurs.
+    // Appelée dans l'ordre des numéros, par le chargement puis par l'écrivain seul.
+    private void indexer(long numero, long position, String joueurX, String joueurO) {
+        long[] tableau = positions;
+        int i = (int) (numero - 1);
+        if (i >= tableau.length) {
+            tableau = Arrays.copyOf(tableau, Math.max(i + 1, tableau.length * 2));
+            positions = tableau;
+        }
+        for (long absente = nbIndexees; absente < i; absente++) {
+            tableau[(int) absente] = -1; // Numéros sautés (parties non journalisées)
+        }
+        tableau[i] = position;
+        if (position >= 0) {
+            parJoueur.computeIfAbsent(joueurX, cle -> new Historique()).ajouter(numero);
+            parJoueur.computeIfAbsent(joueurO, cle -> new Historique()).ajouter(numero);
+        }
+        nbIndexees = numero; // Publication : la position est visible des lecteurs
+    }
+
+    // Indexe les parties d'un segment en ne lisant que leurs en-têtes ; renvoie la longueur valide
+    private long indexer(int numeroSegment, Path fichier) throws IOException {
+        long valide = 0;
+        try (InputStream flux = new BufferedInputStream(Files.newInputStream(fichier));
+             DataInputStream entree = new DataInputStream(flux)) {
+            while (true) {
+                long numero;
+                int longueur;
+                int nbCoups;
+                String joueurX;
+                String joueurO;
+                try {
+                    longueur = entree.readUnsignedShort();
+                    numero = entree.readLong();
+                    entree.readLong(); // Début
+                    entree.readInt(); // Durée
+                    entree.readUnsignedByte(); // Résultat
+                    nbCoups = entree.readUnsignedByte();
+                    joueurX = entree.readUTF();
+                    joueurO = entree.readUTF();
+                } catch (EOFException | UTFDataFormatException e) {
+                    break;
+                }
+                int lu = EN_TETE + 2 + longueurUtf(joueurX) + 2 + longueurUtf(joueurO);
+                int octetsCoups = (3 * nbCoups + 7) / 8;
+                if (longueur != lu + octetsCoups || numero < prochainNumero) {
+                    break; // Octets invalides
+                }
+                entree.skipNBytes(octetsCoups);
+                indexer(numero, (long) numeroSegment << 32 | valide, joueurX, joueurO);
+                prochainNumero = numero + 1;
+                valide += 2 + longueur;
+            }
+        } catch (EOFException e) {
+            // Coups incomplets : la partie est ignorée
+        }
+        return valide;
+    }
+
+    // Encode une partie à la suite du lot ; false si elle ne tient pas dans un enregistrement
+    private static boolean encoder(Partie partie, DataOutputStream sortie) throws IOException {
+        if (longueurEncodee(partie) - 2 > TAILLE_MAX || partie.coups.length > MoteurPuissance4.LIGNES * MoteurPuissance4.COLONNES) {
+            Traces.tracer(Traces.Evenement.PARTIE_TROP_LONGUE, null, partie.numero);
+            return false;
+        }
+        sortie.writeShort(longueurEncodee(partie) - 2);
+        sortie.writeLong(partie.numero);
+        sortie.writeLong(partie.debut);
+        sortie.writeInt(partie.duree);
+        sortie.writeByte(partie.resultat);
+        sortie.writeByte(partie.coups.length);
+        sortie.writeUTF(partie.joueurX);
+        sortie.writeUTF(partie.joueurO);
+        int accumulateur = 0;
+        int bits = 0;
+        for (byte colonne : partie.coups) {
+            accumulateur |= (colonne & 0b111) << bits;
+            bits += 3;
+            while (bits >= 8) {
+                sortie.writeByte(accumulateur);
+                accumulateur >>>= 8;
+                bits -= 8;
+            }
+        }
+        if (bits > 0) {
+            sortie.writeByte(accumulateur);
+        }
+        return true;
+    }
+
+    // Décode un enregistrement, sans son préfixe de longueur
+    private static Partie decoder(DataInputStream entree) throws IOException {
+        long numero = entree.readLong();
+        long debut = entree.readLong();
+        int duree = entree.readInt();
+        int resultat = entree.readUnsignedByte();
+        byte[] coups = new byte[entree.readUnsignedByte()];
+        String joueurX = entree.readUTF();
+        String joueurO = entree.readUTF();
+        int accumulateur = 0;
+        int bits = 0;
+        for (int i = 0; i < coups.length; i++) {
+            if (bits < 3) {
+                accumulateur |= entree.readUnsignedByte() << bits;
+                bits += 8;
+            }
+            coups[i] = (byte) (accumulateur & 0b111);
+            accumulateur >>>= 3;
+            bits -= 3;
+        }
+        return new Partie(numero, joueurX, joueurO, debut, duree, resultat, coups);
+    }
+
+    // Taille de l'enregistrement, préfixe de longueur compris
+    private static int longueurEncodee(Partie partie) {
+        return 2 + EN_TETE + 2 + longueurUtf(partie.joueurX) + 2 + longueurUtf(partie.joueurO)
+                + (3 * partie.coups.length + 7) / 8;
+    }
+
+    private static void lireTout(FileChannel lecteur, ByteBuffer tampon, long position) throws IOException {
+        while (tampon.hasRemaining()) {
+            int lus = lecteur.read(tampon, position + tampon.position());
+            if (lus < 0) {
+                throw new EOFException("Enregistrement de partie tronqué");
+            }
+        }
+    }
+
+    private Path fichierSegment(int numero) {
+        return dossier.resolve(String.format("%s%06d%s", PREFIXE, numero, SUFFIXE));
+    }
+
+    // Nombre d'octets écrits par writeUTF, hors les 2 octets de longueur (UTF-8 modifié)
+    private static int longueurUtf(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                n++;
+            } else if (c > 0x07FF) {
+                n += 3;
+            } else {
+                n += 2;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,342 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UTFDataFormatException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistance des scores par journal en ajout seul.
+ *
+ * Chaque fin de partie ajoute un petit enregistrement binaire au journal
+ * ({@code scores.json.journal}) au lieu de réécrire tout {@code scores.json}.
+ * Les enregistrements sont écrits par un thread dédié, par lots : un seul
+ * {@code fsync} couvre toutes les parties terminées pendant la fenêtre
+ * {@code p4.journal.intervalleMs}, qui est aussi la perte maximale en cas de crash.
+ *
+ * Quand le journal dépasse {@code p4.journal.tailleCompaction} octets, il est
+ * mis de côté et fusionné en arrière-plan dans {@code scores.json}. Au
+ * démarrage, l'état est rechargé à partir de {@code scores.json} et du journal.
+ *
+ * Protocole de compaction (l'état se déduit des fichiers présents après un crash) :
+ * <ol>
+ *   <li>le journal courant est renommé en {@code .ancien} et un journal vide est ouvert ;</li>
+ *   <li>{@code scores.json} + {@code .ancien} sont écrits dans {@code .tmp}, puis synchronisés ;</li>
+ *   <li>{@code .ancien} est renommé en {@code .applique} : le nouvel instantané fait foi ;</li>
+ *   <li>{@code .tmp} remplace {@code scores.json}, puis {@code .applique} est supprimé.</li>
+ * </ol>
+ */
+public class JournalScores {
+    private static final long INTERVALLE_MS = Long.getLong("p4.journal.intervalleMs", 200);
+    private static final long TAILLE_COMPACTION = Long.getLong("p4.journal.tailleCompaction", 1024 * 1024);
+
+    private final Path instantane; // scores.json
+    private final Path journal; // Journal courant
+    private final Path ancien; // Journal en cours de compaction
+    private final Path applique; // Journal déjà intégré à l'instantané temporaire
+    private final Path temporaire; // Instantané en cours d'écriture
+
+    private final BlockingQueue<Resultat> enAttente = new LinkedBlockingQueue<>();
+    private final AtomicBoolean compactionEnCours = new AtomicBoolean(false);
+    private volatile boolean actif = false;
+    private FileChannel canal; // Utilisé uniquement par l'écrivain
+    private Thread ecrivain;
+
+    /**
+     * Résultat d'une partie, du point de vue du premier joueur.
+     */
+    private static final class Resultat {
+        final String joueur;
+        final String adversaire;
+        final int statJoueur; // Indice [defaites, nul, victoires] du joueur ; l'adversaire reçoit 2 - statJoueur
+
+        Resultat(String joueur, String adversaire, int statJoueur) {
+            this.joueur = joueur;
+            this.adversaire = adversaire;
+            this.statJoueur = statJoueur;
+        }
+    }
+
+    /**
+     * Constructeur du journal.
+     *
+     * @param fichierScores le chemin de l'instantané JSON (scores.json)
+     */
+    public JournalScores(String fichierScores) {
+        this.instantane = Paths.get(fichierScores);
+        this.journal = Paths.get(fichierScores + ".journal");
+        this.ancien = Paths.get(fichierScores + ".journal.ancien");
+        this.applique = Paths.get(fichierScores + ".journal.applique");
+        this.temporaire = Paths.get(fichierScores + ".tmp");
+    }
+
+    /**
+     * Termine une éventuelle compaction interrompue, puis recharge les scores :
+     * instantané, journal mis de côté, et journal courant. Une fin de journal
+     * incomplète (crash pendant une écriture) est tronquée.
+     *
+     * @return les scores [defaites, nul, victoires] par pseudo
+     */
+    public Map<String, int[]> charger() throws IOException {
+        if (Files.exists(applique)) {
+            // Le crash a eu lieu entre les étapes 3 et 4 : l'instantané temporaire est complet
+            if (Files.exists(temporaire)) {
+                Files.move(temporaire, instantane, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.delete(applique);
+        } else {
+            Files.deleteIfExists(temporaire); // Instantané incomplet, il sera refait
+        }
+
+        Map<String, int[]> scores = lireInstantane();
+        if (Files.exists(ancien)) {
+            rejouer(ancien, scores);
+        }
+        long valide = rejouer(journal, scores);
+        if (Files.exists(journal) && Files.size(journal) > valide) {
+            System.out.println("Fin du journal des scores incomplète, tronquée à " + valide + " octets.");
+            try (FileChannel c = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+                c.truncate(valide);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Ouvre le journal et démarre le thread d'écriture.
+     * Une compaction laissée en plan au démarrage est relancée.
+     */
+    public void demarrer() throws IOException {
+        canal = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        actif = true;
+        ecrivain = new Thread(this::ecrireEnBoucle, "journal-scores");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+        if (Files.exists(ancien)) {
+            lancerCompaction();
+        }
+    }
+
+    /**
+     * Ajoute le résultat d'une partie au journal. Ne bloque jamais :
+     * l'écriture et la synchronisation sont faites par le thread du journal.
+     *
+     * @param joueur     le pseudo du joueur
+     * @param adversaire le pseudo de l'adversaire
+     * @param statJoueur l'indice [defaites, nul, victoires] incrémenté pour le joueur
+     */
+    public void ajouter(String joueur, String adversaire, int statJoueur) {
+        enAttente.add(new Resultat(joueur, adversaire, statJoueur));
+    }
+
+    /**
+     * Arrête le journal : les résultats en attente sont écrits et synchronisés,
+     * puis le journal est fusionné dans scores.json.
+     */
+    public void fermer() {
+        actif = false;
+        try {
+            ecrivain.join();
+            canal.close();
+            if (compactionEnCours.compareAndSet(false, true)) {
+                if (!Files.exists(ancien) && Files.size(journal) > 0) {
+                    Files.move(journal, ancien, StandardCopyOption.ATOMIC_MOVE);
+                }
+                if (Files.exists(ancien)) {
+                    compacter();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Erreur lors de la fermeture du journal des scores : " + e.getMessage());
+        }
+    }
+
+    // Boucle du thread d'écriture : attend un premier résultat, laisse la fenêtre
+    // de regroupement s'écouler, puis écrit tout le lot avec un seul fsync.
+    private void ecrireEnBoucle() {
+        List<Resultat> lot = new ArrayList<>();
+        ByteArrayOutputStream octets = new ByteArrayOutputStream();
+        DataOutputStream sortie = new DataOutputStream(octets);
+        while (actif || !enAttente.isEmpty()) {
+            try {
+                Resultat premier = enAttente.poll(100, TimeUnit.MILLISECONDS);
+                if (premier == null) {
+                    continue;
+                }
+                lot.add(premier);
+                if (INTERVALLE_MS > 0 && actif) {
+                    Thread.sleep(INTERVALLE_MS);
+                }
+                enAttente.drainTo(lot);
+
+                long debut = System.nanoTime();
+                octets.reset();
+                for (Resultat resultat : lot) {
+                    encoder(resultat, sortie);
+                }
+                ByteBuffer tampon = ByteBuffer.wrap(octets.toByteArray());
+                while (tampon.hasRemaining()) {
+                    canal.write(tampon);
+                }
+                canal.force(false); // Validation groupée de tout le lot
+                Metriques.SCORES_LOT_JOURNAL.enregistrer(System.nanoTime() - debut);
+                lot.clear();
+
+                if (canal.size() >= TAILLE_COMPACTION) {
+                    pivoter();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                Traces.tracer(Traces.Evenement.ERREUR_JOURNAL_SCORES, "Erreur d'écriture du journal des scores", e);
+                lot.clear();
+            }
+        }
+    }
+
+    // Enregistrement : [stat du joueur (1 octet)][joueur (writeUTF)][adversaire (writeUTF)]
+    private static void encoder(Resultat resultat, DataOutputStream sortie) throws IOException {
+        if (longueurUtf(resultat.joueur) > 0xFFFF || longueurUtf(resultat.adversaire) > 0xFFFF) {
+            Traces.tracer(Traces.Evenement.PSEUDO_TROP_LONG);
+            return;
+        }
+        sortie.writeByte(resultat.statJoueur);
+        sortie.writeUTF(resultat.joueur);
+        sortie.writeUTF(resultat.adversaire);
+    }
+
+    // Met le journal courant de côté et en ouvre un nouveau, puis lance la compaction.
+    // Appelée uniquement par l'écrivain.
+    private void pivoter() throws IOException {
+        if (!compactionEnCours.compareAndSet(false, true)) {
+            return; // La compaction précédente n'est pas finie, le journal continue de grossir
+        }
+        if (Files.exists(ancien)) {
+            compactionEnCours.set(false);
+            return;
+        }
+        canal.close();
+        Files.move(journal, ancien, StandardCopyOption.ATOMIC_MOVE);
+        canal = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        compactionEnCours.set(false);
+        lancerCompaction();
+    }
+
+    private void lancerCompaction() {
+        if (!compactionEnCours.compareAndSet(false, true)) {
+            return;
+        }
+        Thread compacteur = new Thread(() -> {
+            try {
+                compacter();
+            } catch (IOException e) {
+                Traces.tracer(Traces.Evenement.ERREUR_JOURNAL_SCORES, "Erreur lors de la compaction des scores", e);
+                compactionEnCours.set(false);
+            }
+        }, "compaction-scores");
+        compacteur.setDaemon(true);
+        compacteur.start();
+    }
+
+    // Fusionne scores.json et le journal mis de côté dans un nouvel instantané.
+    // Appelée avec compactionEnCours à true.
+    private void compacter() throws IOException {
+        long debut = System.nanoTime();
+        Map<String, int[]> scores = lireInstantane();
+        rejouer(ancien, scores);
+
+        try (FileOutputStream fichier = new FileOutputStream(temporaire.toFile());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(fichier, StandardCharsets.UTF_8))) {
+            JsonScores.ecrire(writer, scores); // En flux : pas de copie du fichier entier en mémoire
+            fichier.getFD().sync();
+        }
+        Files.move(ancien, applique, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(temporaire, instantane, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(applique);
+        compactionEnCours.set(false);
+        Metriques.SCORES_COMPACTION.enregistrer(System.nanoTime() - debut);
+    }
+
+    private Map<String, int[]> lireInstantane() throws IOException {
+        Map<String, int[]> scores = new HashMap<>();
+        if (Files.exists(instantane)) {
+            try (Reader lecteur = Files.newBufferedReader(instantane, StandardCharsets.UTF_8)) {
+                JsonScores.lire(lecteur, scores::put);
+            }
+        }
+        return scores;
+    }
+
+    // Applique les résultats d'un journal aux scores ; renvoie la longueur de la
+    // partie valide du journal (la fin peut être incomplète après un crash).
+    private static long rejouer(Path fichier, Map<String, int[]> scores) throws IOException {
+        if (!Files.exists(fichier)) {
+            return 0;
+        }
+        long valide = 0;
+        try (InputStream flux = new BufferedInputStream(Files.newInputStream(fichier));
+             DataInputStream entree = new DataInputStream(flux)) {
+            while (true) {
+                int statJoueur;
+                String joueur;
+                String adversaire;
+                try {
+                    statJoueur = entree.readUnsignedByte();
+                    joueur = entree.readUTF();
+                    adversaire = entree.readUTF();
+                } catch (EOFException | UTFDataFormatException e) {
+                    break;
+                }
+                if (statJoueur > 2) {
+                    break; // Octets invalides
+                }
+                scores.computeIfAbsent(joueur, k -> new int[]{0, 0, 0})[statJoueur]++;
+                scores.computeIfAbsent(adversaire, k -> new int[]{0, 0, 0})[2 - statJoueur]++;
+                valide += 1 + 2 + longueurUtf(joueur) + 2 + longueurUtf(adversaire);
+            }
+        }
+        return valide;
+    }
+
+    // Nombre d'octets écrits par writeUTF, hors les 2 octets de longueur (UTF-8 modifié)
+    private static int longueurUtf(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                n++;
+            } else if (c > 0x07FF) {
+                n += 3;
+            } else {
+                n += 2;
+            }
+        }
+        return n;
+    }
+}
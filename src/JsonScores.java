@@ -0,0 +1,438 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Lecture et écriture en flux du fichier de scores ({@code scores.json}) :
+ * <pre>
+ * {
+ *   "pseudo": {"defaites": 0, "nul": 0, "victoires": 0},
+ *   ...
+ * }
+ * </pre>
+ *
+ * Le lecteur parcourt le texte caractère par caractère dans un tampon de taille
+ * fixe et rend chaque joueur dès que son objet est fermé : la mémoire utilisée
+ * ne dépend pas de la taille du fichier, seulement de ce que l'appelant garde.
+ * Les pseudos sont échappés à l'écriture et déséchappés à la lecture
+ * (guillemets, barres obliques inverses, caractères de contrôle, séquences
+ * Unicode). Les clés inconnues sont
+ * ignorées ; les nombres peuvent être entre guillemets, et les clés anglaises
+ * de l'ancien format ({@code defeats}, {@code draws}, {@code victories}) sont acceptées.
+ */
+public final class JsonScores {
+    private static final int TAILLE_TAMPON = 8192;
+    private static final String[][] CLES = {
+            {"defaites", "defeats"}, {"nul", "draws"}, {"victoires", "victories"}
+    };
+
+    private final Reader source;
+    private final char[] tampon = new char[TAILLE_TAMPON];
+    private int position = 0;
+    private int fin = 0;
+    private long consommes = 0; // Caractères lus avant le tampon courant, pour les messages d'erreur
+    private final StringBuilder chaine = new StringBuilder(); // Réutilisé pour chaque chaîne lue
+
+    private JsonScores(Reader source) {
+        this.source = source;
+    }
+
+    /**
+     * Lit un fichier de scores en flux.
+     *
+     * @param source le texte JSON (un objet vide ou un texte vide ne donnent aucun joueur)
+     * @param action appelée pour chaque joueur avec son pseudo et un nouveau tableau [defaites, nul, victoires]
+     * @throws IOException en cas d'erreur de lecture ou de JSON invalide
+     */
+    public static void lire(Reader source, BiConsumer<String, int[]> action) throws IOException {
+        new JsonScores(source).lireObjet(action);
+    }
+
+    /**
+     * Lit un fichier de scores encodé en UTF-8, par exemple un fichier projeté en
+     * mémoire. Les octets sont décodés au fil de la lecture.
+     *
+     * @param octets le texte JSON, de sa position à sa limite
+     * @param action appelée pour chaque joueur avec son pseudo et un nouveau tableau [defaites, nul, victoires]
+     * @throws IOException en cas de JSON ou d'UTF-8 invalide
+     */
+    public static void lire(ByteBuffer octets, BiConsumer<String, int[]> action) throws IOException {
+        lire(new LecteurOctets(octets), action);
+    }
+
+    /**
+     * Écrit des scores dans l'ordre de la table.
+     *
+     * @param sortie la destination, vidée mais pas fermée
+     * @param scores les scores [defaites, nul, victoires] par pseudo
+     */
+    public static void ecrire(Writer sortie, Map<String, int[]> scores) throws IOException {
+        Ecrivain ecrivain = new Ecrivain(sortie);
+        for (Map.Entry<String, int[]> entree : scores.entrySet()) {
+            ecrivain.ecrire(entree.getKey(), entree.getValue());
+        }
+        ecrivain.terminer();
+    }
+
+    // Objet racine : { "pseudo": { ... }, ... }
+    private void lireObjet(BiConsumer<String, int[]> action) throws IOException {
+        int c = suivantSignificatif();
+        if (c < 0) {
+            return; // Fichier vide
+        }
+        attendre(c, '{');
+        c = suivantSignificatif();
+        if (c == '}') {
+            attendre(suivantSignificatif(), -1);
+            return;
+        }
+        while (true) {
+            attendre(c, '"');
+            String pseudo = lireChaine().toString();
+            attendre(suivantSignificatif(), ':');
+            action.accept(pseudo, lireStats());
+            c = suivantSignificatif();
+            if (c == '}') {
+                break;
+            }
+            attendre(c, ',');
+            c = suivantSignificatif();
+        }
+        attendre(suivantSignificatif(), -1);
+    }
+
+    // Objet d'un joueur : { "defaites": n, "nul": n, "victoires": n }
+    private int[] lireStats() throws IOException {
+        int[] stats = new int[3];
+        attendre(suivantSignificatif(), '{');
+        int c = suivantSignificatif();
+        if (c == '}') {
+            return stats;
+        }
+        while (true) {
+            attendre(c, '"');
+            int indice = indiceCle(lireChaine());
+            attendre(suivantSignificatif(), ':');
+            c = suivantSignificatif();
+            if (indice >= 0 && (c == '-' || (c >= '0' && c <= '9'))) {
+                stats[indice] = lireEntier(c);
+            } else if (indice >= 0 && c == '"') {
+                String nombre = lireChaine().toString().trim();
+                try {
+                    stats[indice] = nombre.isEmpty() ? 0 : Integer.parseInt(nombre);
+                } catch (NumberFormatException e) {
+                    throw erreur("nombre invalide \"" + nombre + "\"");
+                }
+            } else {
+                sauterValeur(c);
+            }
+            c = suivantSignificatif();
+            if (c == '}') {
+                return stats;
+            }
+            attendre(c, ',');
+            c = suivantSignificatif();
+        }
+    }
+
+    private static int indiceCle(CharSequence cle) {
+        for (int i = 0; i < CLES.length; i++) {
+            for (String nom : CLES[i]) {
+                if (nom.contentEquals(cle)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Entier JSON dont le premier caractère est déjà lu ; la partie décimale éventuelle est ignorée
+    private int lireEntier(int premier) throws IOException {
+        boolean negatif = premier == '-';
+        long valeur = negatif ? 0 : premier - '0';
+        int c;
+        while ((c = regarder()) >= '0' && c <= '9') {
+            position++;
+            valeur = Math.min(valeur * 10 + (c - '0'), Integer.MAX_VALUE + 1L);
+        }
+        if (c == '.' || c == 'e' || c == 'E') {
+            while ((c = regarder()) >= 0 && (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-'
+                    || (c >= '0' && c <= '9'))) {
+                position++;
+            }
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, negatif ? -valeur : valeur));
+    }
+
+    // Chaîne dont le guillemet ouvrant est déjà lu ; le tampon rendu est réutilisé à l'appel suivant
+    private StringBuilder lireChaine() throws IOException {
+        chaine.setLength(0);
+        while (true) {
+            int c = suivant();
+            if (c < 0) {
+                throw erreur("chaîne non terminée");
+            }
+            if (c == '"') {
+                return chaine;
+            }
+            if (c != '\\') {
+                chaine.append((char) c);
+                continue;
+            }
+            c = suivant();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    chaine.append((char) c);
+                    break;
+                case 'b':
+                    chaine.append('\b');
+                    break;
+                case 'f':
+                    chaine.append('\f');
+                    break;
+                case 'n':
+                    chaine.append('\n');
+                    break;
+                case 'r':
+                    chaine.append('\r');
+                    break;
+                case 't':
+                    chaine.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int chiffre = Character.digit(suivant(), 16);
+                        if (chiffre < 0) {
+                            throw erreur("séquence \\u invalide");
+                        }
+                        code = code * 16 + chiffre;
+                    }
+                    chaine.append((char) code);
+                    break;
+                default:
+                    throw erreur("échappement invalide");
+            }
+        }
+    }
+
+    // Saute une valeur quelconque (clé inconnue) dont le premier caractère est déjà lu
+    private void sauterValeur(int premier) throws IOException {
+        if (premier == '"') {
+            lireChaine();
+            return;
+        }
+        if (premier == '{' || premier == '[') {
+            int profondeur = 1;
+            while (profondeur > 0) {
+                int c = suivant();
+                if (c < 0) {
+                    throw erreur("valeur non terminée");
+                } else if (c == '"') {
+                    lireChaine();
+                } else if (c == '{' || c == '[') {
+                    profondeur++;
+                } else if (c == '}' || c == ']') {
+                    profondeur--;
+                }
+            }
+            return;
+        }
+        int c; // Nombre, true, false ou null : jusqu'au séparateur, laissé à l'appelant
+        while ((c = regarder()) >= 0 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+            position++;
+        }
+    }
+
+    private void attendre(int lu, int attendu) throws IOException {
+        if (lu != attendu) {
+            throw erreur(attendu < 0 ? "fin du texte attendue" : "'" + (char) attendu + "' attendu");
+        }
+    }
+
+    private IOException erreur(String message) {
+        return new IOException("JSON des scores invalide au caractère " + (consommes + position) + " : " + message);
+    }
+
+    private int suivantSignificatif() throws IOException {
+        int c;
+        do {
+            c = suivant();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\uFEFF'); // Marque d'ordre des octets tolérée
+        return c;
+    }
+
+    private int suivant() throws IOException {
+        int c = regarder();
+        if (c >= 0) {
+            position++;
+        }
+        return c;
+    }
+
+    // Caractère courant sans le consommer, -1 en fin de texte
+    private int regarder() throws IOException {
+        if (position == fin) {
+            consommes += fin;
+            position = 0;
+            fin = 0;
+            int lus;
+            do {
+                lus = source.read(tampon, 0, tampon.length);
+            } while (lus == 0);
+            if (lus < 0) {
+                return -1;
+            }
+            fin = lus;
+        }
+        return tampon[position];
+    }
+
+    /**
+     * Écriture d'un fichier de scores en flux, joueur par joueur.
+     * Le format est celui que relit {@link JsonScores#lire(Reader, BiConsumer)}.
+     */
+    public static final class Ecrivain implements Closeable {
+        private final Writer sortie;
+        private final char[] chiffres = new char[11];
+        private boolean premier = true;
+
+        /**
+         * @param sortie la destination (à bufferiser pour un gros fichier)
+         */
+        public Ecrivain(Writer sortie) throws IOException {
+            this.sortie = sortie;
+            sortie.write("{\n");
+        }
+
+        /**
+         * Écrit les scores d'un joueur.
+         *
+         * @param pseudo le pseudo, échappé au besoin
+         * @param stats  [defaites, nul, victoires]
+         */
+        public void ecrire(String pseudo, int[] stats) throws IOException {
+            sortie.write(premier ? "  \"" : ",\n  \"");
+            premier = false;
+            echapper(pseudo);
+            sortie.write("\": {\"defaites\": ");
+            ecrireEntier(stats[0]);
+            sortie.write(", \"nul\": ");
+            ecrireEntier(stats[1]);
+            sortie.write(", \"victoires\": ");
+            ecrireEntier(stats[2]);
+            sortie.write('}');
+        }
+
+        /**
+         * Ferme l'objet racine et vide la destination, sans la fermer.
+         */
+        public void terminer() throws IOException {
+            sortie.write("\n}");
+            sortie.flush();
+        }
+
+        /**
+         * Termine le fichier et ferme la destination.
+         */
+        @Override
+        public void close() throws IOException {
+            terminer();
+            sortie.close();
+        }
+
+        private void echapper(String texte) throws IOException {
+            int debut = 0;
+            for (int i = 0; i < texte.length(); i++) {
+                char c = texte.charAt(i);
+                if (c != '"' && c != '\\' && c >= 0x20) {
+                    continue;
+                }
+                sortie.write(texte, debut, i - debut);
+                debut = i + 1;
+                switch (c) {
+                    case '"':
+                        sortie.write("\\\"");
+                        break;
+                    case '\\':
+                        sortie.write("\\\\");
+                        break;
+                    case '\n':
+                        sortie.write("\\n");
+                        break;
+                    case '\r':
+                        sortie.write("\\r");
+                        break;
+                    case '\t':
+                        sortie.write("\\t");
+                        break;
+                    default:
+                        sortie.write(String.format("\\u%04x", (int) c));
+                        break;
+                }
+            }
+            sortie.write(texte, debut, texte.length() - debut);
+        }
+
+        private void ecrireEntier(int valeur) throws IOException {
+            long reste = Math.abs((long) valeur);
+            int i = chiffres.length;
+            do {
+                chiffres[--i] = (char) ('0' + reste % 10);
+                reste /= 10;
+            } while (reste > 0);
+            if (valeur < 0) {
+                sortie.write('-');
+            }
+            sortie.write(chiffres, i, chiffres.length - i);
+        }
+    }
+
+    /**
+     * Lecteur de texte UTF-8 sur un tampon d'octets, décodé à la demande.
+     */
+    private static final class LecteurOctets extends Reader {
+        private final ByteBuffer octets;
+        private final CharsetDecoder decodeur = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        private boolean termine = false;
+
+        LecteurOctets(ByteBuffer octets) {
+            this.octets = octets.slice();
+        }
+
+        @Override
+        public int read(char[] destination, int debut, int longueur) throws IOException {
+            if (termine) {
+                return -1;
+            }
+            CharBuffer caracteres = CharBuffer.wrap(destination, debut, longueur);
+            CoderResult resultat = decodeur.decode(octets, caracteres, true);
+            if (resultat.isError()) {
+                resultat.throwException();
+            }
+            if (resultat.isUnderflow()) { // Tous les octets sont décodés
+                decodeur.flush(caracteres);
+                termine = true;
+            }
+            int lus = caracteres.position() - debut;
+            return lus == 0 && termine ? -1 : lus;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongSupplier;
+
+/**
+ * Métriques du serveur : durées des commandes par type, attente sur les verrous
+ * partagés, durées des écritures de scores, et jauges lues à la demande
+ * (clients connectés, parties en cours, invitations en attente...).
+ *
+ * L'enregistrement d'une durée n'incrémente qu'une case d'un
+ * {@link AtomicLongArray} : ni verrou, ni allocation. Les centiles sont
+ * calculés à la lecture, sur une copie dans un {@link Histogramme}.
+ *
+ * Le texte produit par {@link #texte()} (une métrique par ligne, au format
+ * d'exposition de Prometheus) est renvoyé par la commande {@code metrics}
+ * (réservée aux connexions locales) et par le point d'accès HTTP
+ * {@code http://127.0.0.1:<p4.metrics.port>/metrics}.
+ */
+public class Metriques {
+    private static final List<Latence> LATENCES = new CopyOnWriteArrayList<>();
+    private static final Map<String, LongSupplier> JAUGES = new ConcurrentSkipListMap<>();
+
+    public static final Latence ATTENTE_VERROU_PARTIE = latence("p4_attente_verrou", "verrou=\"partie\"");
+    public static final Latence ATTENTE_VERROU_CLASSEMENT = latence("p4_attente_verrou", "verrou=\"classement\"");
+    public static final Latence SCORES_ENREGISTREMENT = latence("p4_scores", "operation=\"enregistrement\"");
+    public static final Latence SCORES_LOT_JOURNAL = latence("p4_scores", "operation=\"lot_journal\"");
+    public static final Latence SCORES_COMPACTION = latence("p4_scores", "operation=\"compaction\"");
+    public static final Latence SCORES_SYNCHRO = latence("p4_scores", "operation=\"synchro_mappe\"");
+    public static final Latence PARTIES_LOT_JOURNAL = latence("p4_parties", "operation=\"lot_journal\"");
+    public static final Latence ATTENTE_FILE = latence("p4_attente", "file=\"appariement\"");
+
+    private static final double[] CENTILES = {50, 99, 99.9};
+
+    /**
+     * Types de commandes, chacun avec le nombre et la durée de ses traitements.
+     */
+    public enum Commande {
+        PLAY("play"), REPONSE("reponse"), COUP("coup"), CHAT("chat"), STAT("stat"), AUTRE("autre");
+
+        private final Latence latence;
+
+        Commande(String nom) {
+            latence = latence("p4_commande", "commande=\"" + nom + "\"");
+        }
+
+        /**
+         * Enregistre le traitement d'une commande de ce type.
+         *
+         * @param nanos la durée du traitement, en nanosecondes
+         */
+        public void enregistrer(long nanos) {
+            latence.enregistrer(nanos);
+        }
+    }
+
+    private Metriques() {
+    }
+
+    private static Latence latence(String nom, String etiquettes) {
+        Latence latence = new Latence(nom, etiquettes);
+        LATENCES.add(latence);
+        return latence;
+    }
+
+    /**
+     * Déclare une jauge, lue à chaque export. Une jauge du même nom est remplacée.
+     *
+     * @param nom    le nom de la métrique (par exemple {@code p4_clients_connectes})
+     * @param valeur la fonction qui donne sa valeur courante
+     */
+    public static void jauge(String nom, LongSupplier valeur) {
+        JAUGES.put(nom, valeur);
+    }
+
+    /**
+     * Prend un verrou en mesurant l'attente : zéro s'il est libre, le temps
+     * écoulé jusqu'à son obtention sinon.
+     *
+     * @param verrou  le verrou à prendre
+     * @param attente la mesure où enregistrer l'attente
+     */
+    public static void verrouiller(Lock verrou, Latence attente) {
+        if (verrou.tryLock()) {
+            attente.enregistrer(0);
+            return;
+        }
+        long debut = System.nanoTime();
+        verrou.lock();
+        attente.enregistrer(System.nanoTime() - debut);
+    }
+
+    /**
+     * Exporte toutes les métriques, une par ligne : pour chaque durée, le nombre
+     * de mesures, les centiles 50, 99 et 99,9 et le maximum en microsecondes ;
+     * puis la valeur courante de chaque jauge.
+     *
+     * @return le texte des métriques
+     */
+    public static String texte() {
+        Commande.values(); // Les durées des commandes sont déclarées au chargement de l'énumération
+        StringBuilder texte = new StringBuilder();
+        for (Latence latence : LATENCES) {
+            Histogramme copie = latence.copier();
+            String etiquettes = latence.etiquettes;
+            texte.append(latence.nom).append("_total{").append(etiquettes).append("} ").append(copie.getTotal()).append('\n');
+            for (double centile : CENTILES) {
+                texte.append(latence.nom).append("_us{").append(etiquettes).append(",centile=\"")
+                        .append(centile == (long) centile ? Long.toString((long) centile) : Double.toString(centile))
+                        .append("\"} ").append(copie.centile(centile)).append('\n');
+            }
+            texte.append(latence.nom).append("_us_max{").append(etiquettes).append("} ").append(copie.getMax()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> jauge : JAUGES.entrySet()) {
+            texte.append(jauge.getKey()).append(' ').append(jauge.getValue().getAsLong()).append('\n');
+        }
+        return texte.toString();
+    }
+
+    /**
+     * Démarre le point d'accès HTTP des métriques, sur l'interface locale
+     * uniquement : {@code GET /metrics} renvoie {@link #texte()}.
+     *
+     * @param port le port d'écoute
+     * @throws IOException si le port n'est pas disponible
+     */
+    public static void demarrerHttp(int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", echange -> {
+            byte[] corps = texte().getBytes(StandardCharsets.UTF_8);
+            echange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            echange.sendResponseHeaders(200, corps.length);
+            try (OutputStream sortie = echange.getResponseBody()) {
+                sortie.write(corps);
+            }
+        });
+        http.start();
+        System.out.println("Métriques sur http://127.0.0.1:" + port + "/metrics");
+    }
+
+    /**
+     * Distribution de durées, enregistrable par plusieurs threads à la fois.
+     * Même découpage que {@link Histogramme}.
+     */
+    public static final class Latence {
+        private final String nom;
+        private final String etiquettes;
+        private final AtomicLongArray comptes = new AtomicLongArray(Histogramme.TAILLE);
+
+        private Latence(String nom, String etiquettes) {
+            this.nom = nom;
+            this.etiquettes = etiquettes;
+        }
+
+        /**
+         * Enregistre une durée.
+         *
+         * @param nanos la durée en nanosecondes
+         */
+        public void enregistrer(long nanos) {
+            comptes.incrementAndGet(Histogramme.indice(Math.max(0, nanos / 1000)));
+        }
+
+        /**
+         * Copie les mesures dans un histogramme, pour en calculer les centiles.
+         * Les enregistrements concurrents à la copie peuvent y figurer ou non.
+         *
+         * @return la copie
+         */
+        public Histogramme copier() {
+            Histogramme copie = new Histogramme();
+            for (int i = 0; i < Histogramme.TAILLE; i++) {
+                long compte = comptes.get(i);
+                if (compte != 0) {
+                    copie.ajouter(i, compte);
+                }
+            }
+            return copie;
+        }
+    }
+}
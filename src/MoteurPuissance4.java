@@ -0,0 +1,190 @@
+/**
+ * Cœur de calcul du Puissance 4, représenté par deux bitboards de 64 bits.
+ *
+ * Chaque colonne occupe 7 bits : 6 pour les cases (bit 0 = case du bas) et un
+ * bit de garde toujours vide, qui empêche les alignements de "déborder" d'une
+ * colonne sur la suivante. La case (ligne, colonne) correspond donc au bit
+ * {@code colonne * 7 + ligne}, la ligne 0 étant celle du bas.
+ *
+ * Jouer un coup est en O(1), et tester une victoire ne demande que quelques
+ * décalages et ET binaires. Aucune allocation n'est faite après la construction.
+ */
+public class MoteurPuissance4 {
+    public static final int LIGNES = 6;
+    public static final int COLONNES = 7;
+    private static final int HAUTEUR = LIGNES + 1; // Bits par colonne, garde comprise
+    private static final long BAS = basGrille(); // Bit du bas de chaque colonne
+    private static final long GRILLE = BAS * ((1L << LIGNES) - 1); // Toutes les cases, sans les gardes
+    private static final int[] DECALAGES = {HAUTEUR, HAUTEUR - 1, HAUTEUR + 1}; // Horizontale et diagonales
+
+    private final long[] pions = new long[2]; // Pions du joueur 0 et du joueur 1
+    private final int[] hauteurs = new int[COLONNES]; // Nombre de pions par colonne
+    private int coups = 0; // Nombre de coups joués
+
+    /**
+     * Indique si une colonne existe et n'est pas pleine.
+     *
+     * @param colonne la colonne (0 à 6)
+     * @return true si un pion peut y être joué
+     */
+    public boolean peutJouer(int colonne) {
+        return colonne >= 0 && colonne < COLONNES && hauteurs[colonne] < LIGNES;
+    }
+
+    /**
+     * Joue un pion du joueur courant dans une colonne.
+     * La colonne doit être jouable (voir {@link #peutJouer(int)}).
+     *
+     * @param colonne la colonne (0 à 6)
+     * @return la ligne où le pion est tombé (0 = ligne du bas)
+     */
+    public int jouer(int colonne) {
+        int ligne = hauteurs[colonne]++;
+        pions[coups & 1] |= 1L << (colonne * HAUTEUR + ligne);
+        coups++;
+        return ligne;
+    }
+
+    /**
+     * Annule le dernier coup, qui doit avoir été joué dans cette colonne.
+     * Sert à la recherche du bot, qui explore les coups sur place.
+     *
+     * @param colonne la colonne du dernier coup
+     */
+    public void annuler(int colonne) {
+        coups--;
+        pions[coups & 1] &= ~(1L << (colonne * HAUTEUR + --hauteurs[colonne]));
+    }
+
+    /**
+     * Indique si le joueur courant gagnerait en jouant dans une colonne,
+     * sans jouer le coup. La colonne doit être jouable.
+     *
+     * @param colonne la colonne (0 à 6)
+     * @return true si le coup est gagnant
+     */
+    public boolean gagneEnJouant(int colonne) {
+        return aligne(pions[coups & 1] | 1L << (colonne * HAUTEUR + hauteurs[colonne]));
+    }
+
+    /**
+     * Renvoie les cases vides où un joueur alignerait quatre pions.
+     *
+     * @param joueur l'indice du joueur (0 ou 1)
+     * @return le masque des cases gagnantes pour ce joueur
+     */
+    public long getMenaces(int joueur) {
+        long p = pions[joueur];
+        long r = (p << 1) & (p << 2) & (p << 3); // Verticale : seulement vers le haut
+        for (int d : DECALAGES) {
+            long paire = (p << d) & (p << 2 * d);
+            r |= paire & (p << 3 * d);
+            r |= paire & (p >>> d);
+            paire = (p >>> d) & (p >>> 2 * d);
+            r |= paire & (p << d);
+            r |= paire & (p >>> 3 * d);
+        }
+        return r & (GRILLE ^ (pions[0] | pions[1]));
+    }
+
+    /**
+     * Renvoie une clé qui identifie la position de façon unique (49 bits) :
+     * pions du joueur courant + masque des cases occupées + bit du bas de chaque colonne.
+     *
+     * @return la clé de la position
+     */
+    public long getCle() {
+        return pions[coups & 1] + (pions[0] | pions[1]) + BAS;
+    }
+
+    /**
+     * Crée une copie indépendante de la position.
+     *
+     * @return la copie
+     */
+    public MoteurPuissance4 copie() {
+        MoteurPuissance4 copie = new MoteurPuissance4();
+        copie.pions[0] = pions[0];
+        copie.pions[1] = pions[1];
+        System.arraycopy(hauteurs, 0, copie.hauteurs, 0, COLONNES);
+        copie.coups = coups;
+        return copie;
+    }
+
+    /**
+     * Indique si un joueur a aligné quatre pions.
+     *
+     * @param joueur l'indice du joueur (0 ou 1)
+     * @return true si le joueur a gagné
+     */
+    public boolean aGagne(int joueur) {
+        return aligne(pions[joueur]);
+    }
+
+    /**
+     * Indique si la grille est pleine, c'est-à-dire si les 42 coups ont été joués.
+     *
+     * @return true si la grille est pleine
+     */
+    public boolean estPleine() {
+        return coups == LIGNES * COLONNES;
+    }
+
+    /**
+     * Renvoie l'indice du joueur qui doit jouer (0 ou 1).
+     *
+     * @return le joueur courant
+     */
+    public int getJoueurCourant() {
+        return coups & 1;
+    }
+
+    public int getCoups() {
+        return coups;
+    }
+
+    /**
+     * Renvoie le contenu d'une case.
+     *
+     * @param ligne   la ligne (0 = ligne du bas)
+     * @param colonne la colonne (0 à 6)
+     * @return 0 ou 1 selon le joueur qui occupe la case, -1 si elle est vide
+     */
+    public int getCase(int ligne, int colonne) {
+        long bit = 1L << (colonne * HAUTEUR + ligne);
+        if ((pions[0] & bit) != 0) {
+            return 0;
+        }
+        if ((pions[1] & bit) != 0) {
+            return 1;
+        }
+        return -1;
+    }
+
+    private static long basGrille() {
+        long bas = 0;
+        for (int colonne = 0; colonne < COLONNES; colonne++) {
+            bas |= 1L << (colonne * HAUTEUR);
+        }
+        return bas;
+    }
+
+    // Cherche quatre bits alignés dans les quatre directions :
+    // vertical (1), horizontal (7), diagonale / (8) et diagonale \ (6)
+    private static boolean aligne(long p) {
+        long m = p & (p >> 1);
+        if ((m & (m >> 2)) != 0) {
+            return true;
+        }
+        m = p & (p >> HAUTEUR);
+        if ((m & (m >> (2 * HAUTEUR))) != 0) {
+            return true;
+        }
+        m = p & (p >> (HAUTEUR + 1));
+        if ((m & (m >> (2 * (HAUTEUR + 1)))) != 0) {
+            return true;
+        }
+        m = p & (p >> (HAUTEUR - 1));
+        return (m & (m >> (2 * (HAUTEUR - 1)))) != 0;
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Connexion d'un client en mode NIO.
+ * Découpe les octets reçus en lignes ; la {@link FileSortie} du client est
+ * vidée par la {@link BoucleNio} propriétaire sans jamais bloquer.
+ */
+public class NioConnexion {
+    private static final int TAILLE_LIGNE_MAX = 64 * 1024; // Au-delà, le client est déconnecté
+    private static final int MAX_GROUPE = 64; // Messages envoyés par une même écriture, au plus
+
+    private final SocketChannel canal;
+    private final BoucleNio boucle;
+    private SelectionKey cle;
+    private ClientHandler handler;
+
+    private byte[] ligne = new byte[256]; // Ligne en cours de réception
+    private int longueur = 0;
+
+    private ByteBuffer[] groupe; // Messages de l'écriture en cours, créé au premier envoi
+    private int premier = 0; // Premier message du groupe qui n'est pas entièrement écrit
+    private int nbGroupe = 0;
+    private final AtomicBoolean ecritureProgrammee = new AtomicBoolean(false);
+    private volatile boolean fermee = false;
+
+    /**
+     * Constructeur de la connexion.
+     *
+     * @param canal  le canal non bloquant du client
+     * @param boucle la boucle d'événements qui gère ce canal
+     */
+    public NioConnexion(SocketChannel canal, BoucleNio boucle) {
+        this.canal = canal;
+        this.boucle = boucle;
+    }
+
+    public SocketChannel getCanal() {
+        return canal;
+    }
+
+    public ClientHandler getHandler() {
+        return handler;
+    }
+
+    public void setHandler(ClientHandler handler) {
+        this.handler = handler;
+    }
+
+    public void setCle(SelectionKey cle) {
+        this.cle = cle;
+    }
+
+    /**
+     * Découpe les octets lus en lignes terminées par '\n' et transmet chaque
+     * ligne complète au handler. Un éventuel '\r' final est ignoré.
+     *
+     * @param octets les octets reçus (en mode lecture)
+     */
+    public void decouperLignes(ByteBuffer octets) {
+        while (octets.hasRemaining() && !fermee) {
+            byte b = octets.get();
+            if (b == '\n') {
+                int fin = longueur;
+                if (fin > 0 && ligne[fin - 1] == '\r') {
+                    fin--;
+                }
+                String message = new String(ligne, 0, fin, StandardCharsets.UTF_8);
+                longueur = 0;
+                handler.recevoirLigne(message);
+            } else {
+                if (longueur == ligne.length) {
+                    if (ligne.length >= TAILLE_LIGNE_MAX) {
+                        Traces.tracer(Traces.Evenement.LIGNE_TROP_LONGUE, handler.getPseudo());
+                        handler.disconnect();
+                        return;
+                    }
+                    ligne = Arrays.copyOf(ligne, ligne.length * 2);
+                }
+                ligne[longueur++] = b;
+            }
+        }
+    }
+
+    /**
+     * Prévient la boucle que la file de sortie du client contient des messages.
+     * Ne bloque jamais : l'écriture réelle est faite par la boucle.
+     */
+    public void signaler() {
+        if (fermee) {
+            return;
+        }
+        if (ecritureProgrammee.compareAndSet(false, true)) {
+            boucle.programmerEcriture(this);
+        }
+    }
+
+    /**
+     * Écrit autant de messages en attente que le canal en accepte. Les messages
+     * prêts sont regroupés, jusqu'à {@value #MAX_GROUPE}, en une seule écriture
+     * (gather) : une commande qui produit plusieurs lignes ne coûte qu'un appel
+     * système. S'il reste des octets, on demande à être prévenu quand le canal
+     * sera de nouveau inscriptible ; en attendant, les messages s'accumulent
+     * dans la file de sortie, qui applique ses politiques de client lent.
+     * Appelée uniquement depuis la boucle.
+     */
+    public void vider() throws IOException {
+        ecritureProgrammee.set(false);
+        if (fermee || cle == null) {
+            return;
+        }
+        FileSortie sortie = handler.getFileSortie();
+        while (true) {
+            if (premier == nbGroupe) { // Groupe précédent entièrement écrit : on regroupe les messages prêts
+                if (groupe == null) {
+                    groupe = new ByteBuffer[MAX_GROUPE];
+                }
+                premier = 0;
+                nbGroupe = 0;
+                Object message;
+                while (nbGroupe < MAX_GROUPE && (message = sortie.prendre()) != null) {
+                    groupe[nbGroupe++] = ByteBuffer.wrap(handler.encoder(message));
+                }
+                if (nbGroupe == 0) {
+                    break;
+                }
+            }
+            ClientHandler.compterEcriture((int) canal.write(groupe, premier, nbGroupe - premier));
+            while (premier < nbGroupe && !groupe[premier].hasRemaining()) {
+                groupe[premier++] = null; // Le message peut être libéré
+            }
+            if (premier < nbGroupe) {
+                cle.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        cle.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Ferme la connexion. Sans effet si elle est déjà fermée.
+     */
+    public void fermer() {
+        if (fermee) {
+            return;
+        }
+        fermee = true;
+        if (cle != null) {
+            cle.cancel();
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            Traces.tracer(Traces.Evenement.ERREUR_FERMETURE_CANAL, e);
+        }
+    }
+}
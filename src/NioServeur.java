@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Serveur en mode NIO : au lieu d'un thread bloqué sur readLine() par client,
+ * un petit nombre de boucles d'événements (une par {@link BoucleNio}) se
+ * partagent toutes les connexions non bloquantes.
+ * Les commandes restent traitées par {@link ClientHandler}, appelé depuis la boucle.
+ */
+public class NioServeur {
+    private Serveur server; // Serveur qui porte l'état du jeu (clients, invitations, parties)
+    private BoucleNio[] boucles; // Boucles d'événements
+    private int prochaineBoucle = 0; // Répartition des connexions en tourniquet
+
+    /**
+     * Constructeur du serveur NIO.
+     *
+     * @param server     le serveur de jeu auquel les commandes sont transmises
+     * @param nbBoucles  le nombre de boucles d'événements (threads) à lancer
+     */
+    public NioServeur(Serveur server, int nbBoucles) {
+        this.server = server;
+        this.boucles = new BoucleNio[Math.max(1, nbBoucles)];
+    }
+
+    /**
+     * Démarre les boucles d'événements puis accepte les connexions entrantes.
+     * Chaque nouvelle connexion est confiée à une boucle, à tour de rôle.
+     *
+     * @param port le port sur lequel le serveur écoute les connexions.
+     */
+    public void demarrer(int port) throws IOException {
+        for (int i = 0; i < boucles.length; i++) {
+            boucles[i] = new BoucleNio(i);
+            Thread thread = new Thread(boucles[i], "boucle-nio-" + i);
+            thread.start();
+        }
+
+        try (ServerSocketChannel canalServeur = ServerSocketChannel.open()) {
+            canalServeur.bind(new InetSocketAddress(port), 1024);
+            System.out.println("Serveur NIO lancé sur le port " + port + " (" + boucles.length + " boucles)");
+
+            while (true) {
+                SocketChannel canal = canalServeur.accept();
+                canal.configureBlocking(false);
+                canal.socket().setTcpNoDelay(true);
+
+                BoucleNio boucle = boucles[prochaineBoucle];
+                prochaineBoucle = (prochaineBoucle + 1) % boucles.length;
+
+                NioConnexion connexion = new NioConnexion(canal, boucle);
+                connexion.setHandler(new ClientHandler(connexion, server));
+                boucle.enregistrer(connexion);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Index des joueurs disponibles (connectés et hors partie), tenu à jour à
+ * chaque connexion, déconnexion, début et fin de partie : la liste des joueurs
+ * libres ne demande jamais de parcourir tous les clients.
+ *
+ * Les pseudos sont rangés dans l'ordre dans un ensemble concurrent trié (skip
+ * list) : une page de la commande {@code who} part du premier pseudo du
+ * préfixe demandé et s'arrête à la fin de la page, pour un coût proportionnel
+ * au rang de la page et non au nombre de joueurs.
+ */
+public class Presence {
+    private final ConcurrentSkipListSet<String> disponibles = new ConcurrentSkipListSet<>();
+    private final AtomicInteger nombre = new AtomicInteger(); // La taille d'une skip list se compte en la parcourant
+
+    /**
+     * Marque un joueur disponible.
+     *
+     * @param pseudo le pseudo du joueur
+     */
+    public void ajouter(String pseudo) {
+        if (disponibles.add(pseudo)) {
+            nombre.incrementAndGet();
+        }
+    }
+
+    /**
+     * Marque un joueur indisponible (en partie ou déconnecté).
+     *
+     * @param pseudo le pseudo du joueur
+     */
+    public void retirer(String pseudo) {
+        if (disponibles.remove(pseudo)) {
+            nombre.decrementAndGet();
+        }
+    }
+
+    /**
+     * Renvoie le nombre de joueurs disponibles.
+     *
+     * @return le nombre de joueurs disponibles
+     */
+    public int getNombre() {
+        return nombre.get();
+    }
+
+    /**
+     * Renvoie une page des joueurs disponibles dont le pseudo commence par un
+     * préfixe, dans l'ordre alphabétique. Un élément de plus que la taille de la
+     * page est renvoyé s'il existe une page suivante.
+     *
+     * @param prefixe le préfixe ("" pour tous les joueurs)
+     * @param page    le numéro de la page, à partir de 0
+     * @param taille  le nombre de pseudos par page
+     * @param valide  vérifie chaque pseudo candidat (un joueur peut changer d'état entre deux mises à jour de l'index)
+     * @return au plus taille + 1 pseudos
+     */
+    public List<String> page(String prefixe, int page, int taille, Predicate<String> valide) {
+        List<String> resultat = new ArrayList<>(taille + 1);
+        long aSauter = (long) page * taille;
+        for (String pseudo : disponibles.tailSet(prefixe)) {
+            if (!pseudo.startsWith(prefixe)) {
+                break; // Fin du préfixe : les pseudos suivants sont plus loin dans l'ordre
+            }
+            if (!valide.test(pseudo)) {
+                continue;
+            }
+            if (aSauter > 0) {
+                aSauter--;
+                continue;
+            }
+            resultat.add(pseudo);
+            if (resultat.size() > taille) {
+                break;
+            }
+        }
+        return resultat;
+    }
+}
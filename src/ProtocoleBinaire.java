@@ -0,0 +1,109 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protocole binaire (version {@value #VERSION}) entre le serveur et le client.
+ *
+ * Le client le demande en envoyant la ligne {@value #DEMANDE} avant son pseudo ;
+ * le serveur répond par une trame {@link #OP_VERSION}. Les commandes du client
+ * restent des lignes de texte ; seul le sens serveur vers client devient binaire.
+ *
+ * Chaque trame est précédée de sa longueur :
+ * <pre>
+ * [longueur : 2 octets, gros-boutiste][code : 1 octet][données : longueur - 1 octets]
+ * </pre>
+ * Au lieu de renvoyer toute la grille après chaque coup, le serveur n'envoie que
+ * le pion joué et le changement de tour ; le client tient sa propre grille.
+ * Un spectateur reçoit de même une trame {@link #OP_SUIVI} avec l'état de la
+ * grille, puis un {@link #OP_PION} par coup.
+ */
+public final class ProtocoleBinaire {
+    public static final int VERSION = 2;
+    public static final String DEMANDE = "PROTO " + VERSION;
+
+    public static final byte OP_VERSION = 0; // [version]
+    public static final byte OP_TEXTE = 1; // [texte UTF-8]
+    public static final byte OP_DEBUT = 2; // [votre couleur : 0 = X, 1 = O][pseudo de l'adversaire en UTF-8]
+    public static final byte OP_PION = 3; // [colonne][ligne, 0 = bas][couleur]
+    public static final byte OP_TOUR = 4; // [1 si c'est à vous de jouer, 0 sinon]
+    public static final byte OP_FIN = 5; // [0 = défaite, 1 = nul, 2 = victoire]
+    public static final byte OP_SUIVI = 6; // [42 cases, ligne 0 d'abord : 0 = X, 1 = O, 2 = vide][pseudo de X]['\n'][pseudo de O]
+
+    private static final int DONNEES_MAX = 0xFFFF - 1; // Longueur maximale des données d'une trame
+    private static final int CARACTERES_PAR_TRAME = DONNEES_MAX / 4; // Un caractère fait au plus 4 octets en UTF-8
+
+    private ProtocoleBinaire() {
+    }
+
+    public static byte[] version() {
+        return trame(OP_VERSION, new byte[]{VERSION});
+    }
+
+    public static byte[] debut(int couleur, String adversaire) {
+        byte[] pseudo = adversaire.getBytes(StandardCharsets.UTF_8);
+        byte[] donnees = new byte[1 + Math.min(pseudo.length, DONNEES_MAX - 1)];
+        donnees[0] = (byte) couleur;
+        System.arraycopy(pseudo, 0, donnees, 1, donnees.length - 1);
+        return trame(OP_DEBUT, donnees);
+    }
+
+    public static byte[] pion(int colonne, int ligne, int couleur) {
+        return trame(OP_PION, new byte[]{(byte) colonne, (byte) ligne, (byte) couleur});
+    }
+
+    public static byte[] tour(boolean aVous) {
+        return trame(OP_TOUR, new byte[]{(byte) (aVous ? 1 : 0)});
+    }
+
+    public static byte[] fin(int resultat) {
+        return trame(OP_FIN, new byte[]{(byte) resultat});
+    }
+
+    public static byte[] suivi(MoteurPuissance4 position, String joueurX, String joueurO) {
+        int cases = MoteurPuissance4.LIGNES * MoteurPuissance4.COLONNES;
+        byte[] pseudos = (joueurX + "\n" + joueurO).getBytes(StandardCharsets.UTF_8);
+        byte[] donnees = new byte[cases + Math.min(pseudos.length, DONNEES_MAX - cases)];
+        for (int ligne = 0; ligne < MoteurPuissance4.LIGNES; ligne++) {
+            for (int colonne = 0; colonne < MoteurPuissance4.COLONNES; colonne++) {
+                int couleur = position.getCase(ligne, colonne);
+                donnees[ligne * MoteurPuissance4.COLONNES + colonne] = (byte) (couleur < 0 ? 2 : couleur);
+            }
+        }
+        System.arraycopy(pseudos, 0, donnees, cases, donnees.length - cases);
+        return trame(OP_SUIVI, donnees);
+    }
+
+    /**
+     * Encode un message texte. Un texte trop long pour une trame est découpé
+     * en plusieurs trames consécutives.
+     *
+     * @param texte le message
+     * @return la ou les trames encodées
+     */
+    public static byte[] texte(String texte) {
+        if (texte.length() <= CARACTERES_PAR_TRAME) {
+            return trame(OP_TEXTE, texte.getBytes(StandardCharsets.UTF_8));
+        }
+        ByteArrayOutputStream trames = new ByteArrayOutputStream(texte.length() + 64);
+        int debut = 0;
+        while (debut < texte.length()) {
+            int fin = Math.min(debut + CARACTERES_PAR_TRAME, texte.length());
+            if (fin < texte.length() && Character.isHighSurrogate(texte.charAt(fin - 1))) {
+                fin--; // Ne pas couper une paire de substitution
+            }
+            trames.writeBytes(trame(OP_TEXTE, texte.substring(debut, fin).getBytes(StandardCharsets.UTF_8)));
+            debut = fin;
+        }
+        return trames.toByteArray();
+    }
+
+    private static byte[] trame(byte code, byte[] donnees) {
+        int longueur = donnees.length + 1;
+        byte[] trame = new byte[2 + longueur];
+        trame[0] = (byte) (longueur >>> 8);
+        trame[1] = (byte) longueur;
+        trame[2] = code;
+        System.arraycopy(donnees, 0, trame, 3, donnees.length);
+        return trame;
+    }
+}
@@ -1,39 +1,49 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Classe représentant une partie de Puissance 4 entre deux joueurs.
  * Gère l'état de la grille, les mouvements des joueurs, et les conditions de victoire.
  */
 public class Puissance4 {
-    private int[][] grille; // Grille de jeu
-    private static final int ROWS = 6;  // Nombre de lignes de la grille
-    private static final int COLS = 7;  // Nombre de colonnes de la grille
-    private String[][] board;  // Grille de jeu
-    private ClientHandler player1;  // Joueur 1
-    private ClientHandler player2;  // Joueur 2
+    private static final int ROWS = MoteurPuissance4.LIGNES;  // Nombre de lignes de la grille
+    private static final int COLS = MoteurPuissance4.COLONNES;  // Nombre de colonnes de la grille
+    private final MoteurPuissance4 moteur = new MoteurPuissance4();  // Grille de jeu (bitboards)
+    private final byte[] coups = new byte[ROWS * COLS];  // Colonnes jouées, dans l'ordre (journal des parties)
+    private final long debut = System.currentTimeMillis();
+    private ClientHandler player1;  // Joueur 1 (joueur 0 du moteur, "X")
+    private ClientHandler player2;  // Joueur 2 (joueur 1 du moteur, "O")
     private Serveur server;  // Serveur auquel la partie est liée
-    private boolean player1Turn;  // Indique si c'est le tour du joueur 1
+    private final ReentrantLock verrou = new ReentrantLock();  // Sérialise les coups de cette partie
+    private volatile boolean regardee = false;  // Au moins un spectateur s'y est intéressé : les coups sont retransmis
+    private boolean terminee = false;  // Protégé par le verrou de la partie
+    private String salon;  // Salon de discussion des deux joueurs
+    // Pendule, protégée par le verrou de la partie : délai par coup et temps total de chaque joueur (0 = sans limite)
+    private long cadenceCoupMs = 0;
+    private final long[] resteMs = new long[2];
+    private RoueTemporelle.Minuteur pendule;  // Minuteur du joueur au trait, null si aucun
+    private int joueurPendule;
+    private long debutTour;
 
     /**
      * Constructeur de la classe Puissance4 qui initialise la partie avec les deux joueurs et le serveur.
-     * Initialise également la grille de jeu avec des cases vides.
      * 
      * @param player1 Le premier joueur
      * @param player2 Le second joueur
      * @param server Le serveur qui gère la partie
      */
     public Puissance4(ClientHandler player1, ClientHandler player2, Serveur server) {
-        this.grille = new int[6][7]; // 6 lignes x 7 colonnes
         this.player1 = player1;
         this.player2 = player2;
         this.server = server;
-        this.board = new String[ROWS][COLS];
-        this.player1Turn = true;
+    }
 
-        // Initialisation du tableau de jeu avec des cases vides
-        for (int i = 0; i < ROWS; i++) {
-            for (int j = 0; j < COLS; j++) {
-                board[i][j] = ".";
-            }
-        }
+    public String getSalon() {
+        return salon;
+    }
+
+    public void setSalon(String salon) {
+        this.salon = salon;
     }
 
     /**
@@ -41,53 +51,98 @@ public class Puissance4 {
      * Vérifie si le joueur joue à son tour, si la colonne est valide, et si elle n'est pas pleine.
      * 
      * @param player Le joueur qui effectue le mouvement
-     * @param column La colonne dans laquelle le joueur veut jouer
+     * @param num_colonne La colonne dans laquelle le joueur veut jouer
      * @return true si le mouvement est valide, false sinon
      */
-    public boolean makeMove(ClientHandler player, String column) {
+    public boolean makeMove(ClientHandler player, int num_colonne) {
         // Vérifier si c'est le tour du joueur
+        boolean player1Turn = moteur.getJoueurCourant() == 0;
         if ((player == player1 && !player1Turn) || (player == player2 && player1Turn)) {
             player.send("Ce n'est pas votre tour !");
             return false;
         }
 
-        Integer num_colonne;
-        try {
-            num_colonne = Integer.valueOf(column);  // Convertir la colonne en entier
-        } catch (Exception e) {
-            player.send("Ce n'est pas un numéro");
-            return false;
-        }
-
         // Vérifier si la colonne est valide
         if (num_colonne < 0 || num_colonne >= COLS) {
             player.send("Colonne invalide.");
             return false;
         }
 
-        // Chercher la première ligne vide de la colonne
-        for (int row = ROWS - 1; row >= 0; row--) {
-            if (board[row][num_colonne].equals(".")) {
-                board[row][num_colonne] = player == player1 ? "X" : "O";  // "X" pour player1, "O" pour player2
-                player1Turn = !player1Turn;  // Changer de tour
+        if (!moteur.peutJouer(num_colonne)) {
+            player.send("Cette colonne est pleine, choisissez une autre colonne.");
+            return false;
+        }
 
-                displayBoard();  // Afficher la grille après chaque mouvement
+        int couleur = moteur.getJoueurCourant();
+        int ligne = moteur.jouer(num_colonne);  // Le pion tombe et le tour change
+        coups[moteur.getCoups() - 1] = (byte) num_colonne;
+        if (regardee) {
+            server.getRetransmission().coup(this, num_colonne, ligne, couleur, player.getPseudo());
+        }
 
-                // Indiquer à chaque joueur qui doit jouer
-                if (player1Turn) {
-                    player1.send("C'est à vous de jouer.");
-                    player2.send("C'est à " + player1.getPseudo() + " de jouer.");
-                } else {
-                    player2.send("C'est à vous de jouer.");
-                    player1.send("C'est à " + player2.getPseudo() + " de jouer.");
-                }
+        // Clients binaires : seulement le pion joué et le changement de tour, déposés ensemble
+        if (player1.isBinaire()) {
+            envoyerPion(player1, num_colonne, ligne, couleur);
+        }
+        if (player2.isBinaire()) {
+            envoyerPion(player2, num_colonne, ligne, couleur);
+        }
 
-                return true;
-            }
+        displayBoard();  // Afficher la grille après chaque mouvement (clients texte)
+
+        // Indiquer à chaque joueur texte qui doit jouer
+        ClientHandler suivant = getCurrentPlayer();
+        ClientHandler autre = getOpponent(suivant);
+        if (!suivant.isBinaire()) {
+            suivant.send("C'est à vous de jouer.");
+        }
+        if (!autre.isBinaire()) {
+            autre.send("C'est à " + suivant.getPseudo() + " de jouer.");
+        }
+
+        return true;
+    }
+
+    /**
+     * Envoie l'état initial de la partie : la grille vide aux clients texte,
+     * le début de partie et le tour aux clients binaires.
+     */
+    public void demarrer() {
+        if (player1.isBinaire()) {
+            player1.envoyerTrame(ProtocoleBinaire.debut(0, player2.getPseudo()));
+            player1.envoyerTrame(ProtocoleBinaire.tour(true));
         }
+        if (player2.isBinaire()) {
+            player2.envoyerTrame(ProtocoleBinaire.debut(1, player1.getPseudo()));
+            player2.envoyerTrame(ProtocoleBinaire.tour(false));
+        }
+        displayBoard();
+    }
 
-        player.send("Cette colonne est pleine, choisissez une autre colonne.");
-        return false;
+    // Pion joué et changement de tour, en un seul dépôt pour un client binaire
+    private void envoyerPion(ClientHandler joueur, int colonne, int ligne, int couleur) {
+        byte[] pion = ProtocoleBinaire.pion(colonne, ligne, couleur);
+        byte[] tour = ProtocoleBinaire.tour(joueur == getCurrentPlayer());
+        byte[] trames = Arrays.copyOf(pion, pion.length + tour.length);
+        System.arraycopy(tour, 0, trames, pion.length, tour.length);
+        joueur.envoyerTrame(trames);
+    }
+
+    /**
+     * Annonce la fin de partie aux clients binaires, qui peuvent oublier leur grille.
+     * Les clients texte reçoivent les messages de fin habituels.
+     * 
+     * @param player    Un des joueurs
+     * @param statJoueur Le résultat de ce joueur (0 défaite, 1 nul, 2 victoire)
+     */
+    public void annoncerFin(ClientHandler player, int statJoueur) {
+        if (player.isBinaire()) {
+            player.envoyerTrame(ProtocoleBinaire.fin(statJoueur));
+        }
+        ClientHandler opponent = getOpponent(player);
+        if (opponent.isBinaire()) {
+            opponent.envoyerTrame(ProtocoleBinaire.fin(2 - statJoueur));
+        }
     }
 
     /**
@@ -95,31 +150,48 @@ public class Puissance4 {
      * @return boolean true si full et false sinon
      */
     public boolean isGridFull() {
-        for (int col = 0; col < grille[0].length; col++) {
-            if (grille[0][col] == 0) { // Si la première ligne de la colonne est vide
-                return false;
-            }
-        }
-        return true;
+        return moteur.estPleine();
     }
 
     /**
-     * Affiche la grille de jeu actuelle aux deux joueurs.
-     * La grille est envoyée sous forme de texte.
+     * Affiche la grille de jeu actuelle aux joueurs en mode texte.
+     * La grille est envoyée sous forme de texte ; les clients binaires tiennent
+     * leur propre grille et n'en ont pas besoin.
      */
     public void displayBoard() {
+        if (!veutGrille(player1) && !veutGrille(player2)) {
+            return;
+        }
+        // Envoie la grille aux deux joueurs
+        String grille = rendreGrille(moteur);
+        if (veutGrille(player1)) {
+            player1.send(grille, FileSortie.Type.GRILLE);
+        }
+        if (veutGrille(player2)) {
+            player2.send(grille, FileSortie.Type.GRILLE);
+        }
+    }
+
+    /**
+     * Met une grille sous forme de texte, telle que l'affichent les clients texte.
+     * 
+     * @param moteur La grille
+     * @return Le texte de la grille, terminé par une fin de ligne
+     */
+    public static String rendreGrille(MoteurPuissance4 moteur) {
         StringBuilder boardString = new StringBuilder();
     
         // Affichage des indices de colonnes
         boardString.append("   1   2   3   4   5   6   7\n");
     
-        // Affichage de la grille ligne par ligne
-        for (int i = 0; i < ROWS; i++) {
+        // Affichage de la grille ligne par ligne, en partant du haut
+        for (int i = ROWS - 1; i >= 0; i--) {
             boardString.append("  +---+---+---+---+---+---+---+\n");
             for (int j = 0; j < COLS; j++) {
-                // Si la case est vide, afficher un espace, sinon afficher X ou O
-                String cell = (board[i][j] == null) ? " " : board[i][j];
-                boardString.append("  " + cell + " ");
+                // Si la case est vide, afficher un point, sinon afficher X ou O
+                int contenu = moteur.getCase(i, j);
+                char cell = contenu == 0 ? 'X' : contenu == 1 ? 'O' : '.';
+                boardString.append("  ").append(cell).append(' ');
                 if (j < COLS - 1) {
                     boardString.append("|");  // Séparateur entre les cases
                 }
@@ -129,57 +201,23 @@ public class Puissance4 {
     
         // Affichage de la bordure inférieure
         boardString.append("  +---+---+---+---+---+---+---+\n");
-    
-        // Envoie la grille aux deux joueurs
-        player1.send(boardString.toString());
-        player2.send(boardString.toString());
+        return boardString.toString();
+    }
+
+    // Seuls les clients texte reçoivent la grille : les clients binaires ont la leur, le bot n'affiche rien
+    private static boolean veutGrille(ClientHandler joueur) {
+        return !joueur.isBinaire() && !joueur.isBot();
     }
     
     /**
      * Vérifie si un joueur a gagné en vérifiant les alignements horizontaux, verticaux et diagonaux.
+     * Le test se fait directement sur le bitboard du joueur.
      * 
      * @param player Le joueur à vérifier
      * @return true si le joueur a gagné, false sinon
      */
     public boolean checkWin(ClientHandler player) {
-        String token = player == player1 ? "X" : "O";  // Choisir le symbole du joueur (X ou O)
-        
-        // Vérification horizontale, verticale et diagonale
-        for (int row = 0; row < ROWS; row++) {
-            for (int col = 0; col < COLS; col++) {
-                if (board[row][col].equals(token)) {
-                    // Horizontal
-                    if (col + 3 < COLS &&
-                        board[row][col + 1].equals(token) &&
-                        board[row][col + 2].equals(token) &&
-                        board[row][col + 3].equals(token)) {
-                        return true;
-                    }
-                    // Vertical
-                    if (row + 3 < ROWS &&
-                        board[row + 1][col].equals(token) &&
-                        board[row + 2][col].equals(token) &&
-                        board[row + 3][col].equals(token)) {
-                        return true;
-                    }
-                    // Diagonale
-                    if (row + 3 < ROWS && col + 3 < COLS &&
-                        board[row + 1][col + 1].equals(token) &&
-                        board[row + 2][col + 2].equals(token) &&
-                        board[row + 3][col + 3].equals(token)) {
-                        return true;
-                    }
-                    // Diagonale inverse
-                    if (row - 3 >= 0 && col + 3 < COLS &&
-                        board[row - 1][col + 1].equals(token) &&
-                        board[row - 2][col + 2].equals(token) &&
-                        board[row - 3][col + 3].equals(token)) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return moteur.aGagne(player == player1 ? 0 : 1);
     }
 
     /**
@@ -198,9 +236,136 @@ public class Puissance4 {
      * @return Le joueur dont c'est le tour
      */
     public ClientHandler getCurrentPlayer() {
-        return player1Turn ? player1 : player2;
+        return moteur.getJoueurCourant() == 0 ? player1 : player2;
     }
     
+    /**
+     * Renvoie une copie de la grille, par exemple pour la recherche du bot.
+     * À appeler avec le verrou de la partie.
+     * 
+     * @return La copie de la position
+     */
+    public MoteurPuissance4 getPosition() {
+        return moteur.copie();
+    }
+
+    /**
+     * Récupère le verrou qui sérialise les coups de cette partie.
+     * 
+     * @return Le verrou de la partie
+     */
+    public ReentrantLock getVerrou() {
+        return verrou;
+    }
+
+    /**
+     * Renvoie les colonnes jouées depuis le début de la partie.
+     * Appelée avec le verrou de la partie.
+     * 
+     * @return Les colonnes, dans l'ordre des coups
+     */
+    public byte[] getCoupsJoues() {
+        return Arrays.copyOf(coups, moteur.getCoups());
+    }
+
+    public long getDebut() {
+        return debut;
+    }
+
+    /**
+     * Renvoie le nombre de coups joués.
+     * Appelée avec le verrou de la partie.
+     * 
+     * @return Le nombre de coups
+     */
+    public int getNbCoups() {
+        return moteur.getCoups();
+    }
+
+    /**
+     * Fixe la cadence de la partie, avant son début.
+     * 
+     * @param coupMs   Le délai pour jouer chaque coup, en millisecondes (0 = sans limite)
+     * @param partieMs Le temps total de chaque joueur, en millisecondes (0 = sans limite)
+     */
+    public void setCadence(long coupMs, long partieMs) {
+        cadenceCoupMs = coupMs;
+        resteMs[0] = partieMs > 0 ? partieMs : Long.MAX_VALUE;
+        resteMs[1] = resteMs[0];
+    }
+
+    /**
+     * Arme la pendule du joueur au trait : le plus court du délai par coup et
+     * de son temps restant. Le bot n'a pas de pendule.
+     * Appelée avec le verrou de la partie.
+     * 
+     * @param roue        La roue temporelle du serveur
+     * @param tempsEcoule L'action à exécuter si le joueur n'a pas joué à temps
+     */
+    public void armerPendule(RoueTemporelle roue, Runnable tempsEcoule) {
+        arreterPendule();
+        int joueur = moteur.getJoueurCourant();
+        long delai = Math.min(cadenceCoupMs > 0 ? cadenceCoupMs : Long.MAX_VALUE, resteMs[joueur]);
+        if (delai == Long.MAX_VALUE || getCurrentPlayer().isBot()) {
+            return;
+        }
+        joueurPendule = joueur;
+        debutTour = System.nanoTime();
+        pendule = roue.armer(delai, tempsEcoule);
+    }
+
+    /**
+     * Arrête la pendule en cours, après un coup ou à la fin de la partie, et
+     * décompte le temps pris du temps restant du joueur.
+     * Appelée avec le verrou de la partie.
+     */
+    public void arreterPendule() {
+        if (pendule == null) {
+            return;
+        }
+        pendule.annuler();
+        pendule = null;
+        if (resteMs[joueurPendule] != Long.MAX_VALUE) {
+            resteMs[joueurPendule] = Math.max(0, resteMs[joueurPendule] - (System.nanoTime() - debutTour) / 1_000_000);
+        }
+    }
+
+    public ClientHandler getPlayer1() {
+        return player1;
+    }
+
+    public ClientHandler getPlayer2() {
+        return player2;
+    }
+
+    /**
+     * Indique si des spectateurs ont suivi la partie : ses coups et sa fin sont
+     * alors retransmis. Appelée avec le verrou de la partie.
+     */
+    public void setRegardee() {
+        regardee = true;
+    }
+
+    public boolean isRegardee() {
+        return regardee;
+    }
+
+    /**
+     * Indique si la partie est terminée (victoire, nul ou abandon).
+     * 
+     * @return true si la partie est terminée
+     */
+    public boolean isTerminee() {
+        return terminee;
+    }
+
+    /**
+     * Marque la partie comme terminée.
+     */
+    public void terminer() {
+        terminee = true;
+    }
+
     public void endGame(ClientHandler winner) {
         if (winner == player1) {
             player1.incrementVictoire();
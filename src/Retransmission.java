@@ -0,0 +1,189 @@
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Retransmission des parties aux spectateurs (commande {@code watch}).
+ *
+ * Chaque événement d'une partie regardée (coup, fin) est encodé une seule fois
+ * par protocole, en un tableau d'octets immuable que toutes les files de
+ * sortie des spectateurs partagent : la grille est rendue une fois par coup,
+ * quel que soit le nombre de spectateurs. Un spectateur qui arrive en cours de
+ * partie reçoit d'abord l'état de la grille, puis les coups suivants.
+ *
+ * Tout le travail est fait par un thread dédié, propriétaire de l'état des
+ * retransmissions : le coup d'un joueur ne fait que déposer l'événement dans sa
+ * file, et seulement si la partie a déjà eu un spectateur.
+ */
+public class Retransmission {
+    private static final String PREFIXE = "[Spectateur] ";
+
+    private final ExecutorService fil = Executors.newSingleThreadExecutor(tache -> {
+        Thread thread = new Thread(tache, "retransmission");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // État du thread de retransmission, qui est seul à y toucher
+    private final Map<Puissance4, Suivi> suivis = new HashMap<>();
+    private final Map<ClientHandler, Suivi> regardees = new HashMap<>();
+    private volatile int nbSpectateurs = 0;
+
+    /**
+     * Ajoute un spectateur à une partie ; il quitte celle qu'il regardait
+     * peut-être déjà. Appelée avec le verrou de la partie, pour que l'état
+     * transmis précède tous les coups suivants.
+     *
+     * @param spectateur le spectateur
+     * @param partie     la partie
+     * @param position   une copie de la grille au moment de l'appel
+     */
+    public void regarder(ClientHandler spectateur, Puissance4 partie, MoteurPuissance4 position) {
+        String joueurX = partie.getPlayer1().getPseudo();
+        String joueurO = partie.getPlayer2().getPseudo();
+        fil.execute(() -> {
+            retirer(spectateur);
+            // Si la partie est déjà suivie, sa grille est à jour : les coups passent tous par ce thread
+            Suivi suivi = suivis.computeIfAbsent(partie, cle -> new Suivi(position, joueurX, joueurO));
+            if (spectateur.isBinaire()) {
+                suivi.binaires.add(spectateur);
+                spectateur.envoyerTrame(ProtocoleBinaire.suivi(suivi.position, suivi.joueurX, suivi.joueurO));
+            } else {
+                suivi.textes.add(spectateur);
+                spectateur.envoyerPartage(suivi.etatTexte(), FileSortie.Type.GRILLE_SPECTATEUR);
+            }
+            regardees.put(spectateur, suivi);
+            nbSpectateurs = regardees.size();
+        });
+    }
+
+    /**
+     * Retire un spectateur de la partie qu'il regarde (commande {@code unwatch}
+     * ou déconnexion). Sans effet s'il ne regarde rien.
+     *
+     * @param spectateur le spectateur
+     */
+    public void quitter(ClientHandler spectateur) {
+        quitter(spectateur, null);
+    }
+
+    /**
+     * Retire un spectateur de la partie qu'il regarde et, s'il en regardait
+     * une, le prévient.
+     *
+     * @param spectateur le spectateur
+     * @param avis       le message envoyé s'il regardait une partie, ou null
+     */
+    public void quitter(ClientHandler spectateur, String avis) {
+        fil.execute(() -> {
+            if (retirer(spectateur) && avis != null) {
+                spectateur.send(avis);
+            }
+            nbSpectateurs = regardees.size();
+        });
+    }
+
+    /**
+     * Retransmet un coup. Appelée avec le verrou de la partie.
+     *
+     * @param partie  la partie
+     * @param colonne la colonne jouée
+     * @param ligne   la ligne où le pion est tombé
+     * @param couleur la couleur du pion (0 = X, 1 = O)
+     * @param joueur  le pseudo du joueur
+     */
+    public void coup(Puissance4 partie, int colonne, int ligne, int couleur, String joueur) {
+        fil.execute(() -> {
+            Suivi suivi = suivis.get(partie);
+            if (suivi == null) {
+                return;
+            }
+            suivi.position.jouer(colonne);
+            if (!suivi.textes.isEmpty()) {
+                byte[] texte = (PREFIXE + joueur + " (" + (couleur == 0 ? 'X' : 'O') + ") joue en colonne " + colonne
+                        + ".\n" + Puissance4.rendreGrille(suivi.position)).getBytes(StandardCharsets.UTF_8);
+                for (ClientHandler spectateur : suivi.textes) {
+                    spectateur.envoyerPartage(texte, FileSortie.Type.GRILLE_SPECTATEUR);
+                }
+            }
+            if (!suivi.binaires.isEmpty()) {
+                byte[] trame = ProtocoleBinaire.pion(colonne, ligne, couleur);
+                for (ClientHandler spectateur : suivi.binaires) {
+                    spectateur.envoyerTrame(trame);
+                }
+            }
+        });
+    }
+
+    /**
+     * Annonce la fin d'une partie à ses spectateurs, qui sont alors libérés.
+     *
+     * @param partie  la partie
+     * @param message le message de fin
+     */
+    public void fin(Puissance4 partie, String message) {
+        fil.execute(() -> {
+            Suivi suivi = suivis.remove(partie);
+            if (suivi == null) {
+                return;
+            }
+            byte[] texte = (PREFIXE + message + "\n").getBytes(StandardCharsets.UTF_8);
+            for (ClientHandler spectateur : suivi.textes) {
+                spectateur.envoyerPartage(texte, FileSortie.Type.NORMAL);
+                regardees.remove(spectateur);
+            }
+            byte[] trame = ProtocoleBinaire.texte(PREFIXE + message);
+            for (ClientHandler spectateur : suivi.binaires) {
+                spectateur.envoyerTrame(trame);
+                regardees.remove(spectateur);
+            }
+            nbSpectateurs = regardees.size();
+        });
+    }
+
+    /**
+     * Renvoie le nombre de spectateurs, toutes parties confondues.
+     *
+     * @return le nombre de spectateurs
+     */
+    public int getNbSpectateurs() {
+        return nbSpectateurs;
+    }
+
+    private boolean retirer(ClientHandler spectateur) {
+        Suivi suivi = regardees.remove(spectateur);
+        if (suivi == null) {
+            return false;
+        }
+        suivi.textes.remove(spectateur);
+        suivi.binaires.remove(spectateur);
+        return true;
+    }
+
+    /**
+     * Partie regardée : sa grille, tenue à jour par les coups retransmis, et ses spectateurs.
+     */
+    private static final class Suivi {
+        final MoteurPuissance4 position;
+        final String joueurX;
+        final String joueurO;
+        final Set<ClientHandler> textes = new LinkedHashSet<>();
+        final Set<ClientHandler> binaires = new LinkedHashSet<>();
+
+        Suivi(MoteurPuissance4 position, String joueurX, String joueurO) {
+            this.position = position;
+            this.joueurX = joueurX;
+            this.joueurO = joueurO;
+        }
+
+        byte[] etatTexte() {
+            return (PREFIXE + "Vous regardez " + joueurX + " (X) contre " + joueurO + " (O), "
+                    + position.getCoups() + " coups joués.\n" + Puissance4.rendreGrille(position))
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
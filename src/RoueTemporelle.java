@@ -0,0 +1,215 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Roue temporelle hachée : un seul thread pour tous les délais du serveur
+ * (expiration des invitations, pendules des parties), au lieu d'un thread ou
+ * d'une tâche planifiée par partie.
+ *
+ * La roue a {@code p4.roue.cases} cases (puissance de 2) et avance d'une case
+ * tous les {@code p4.roue.tickMs} millisecondes. Un minuteur est rangé dans la
+ * case de son échéance, avec le nombre de tours de roue restant avant elle ;
+ * chaque case est une liste doublement chaînée. Armer ou annuler coûte O(1)
+ * quel que soit le nombre de minuteurs armés : l'appelant ne fait que déposer
+ * le minuteur dans une file sans verrou, et le thread de la roue, seul
+ * propriétaire des cases, le range au tic suivant. Une échéance est donc tenue
+ * à un tic près, ce qui suffit pour des délais de plusieurs secondes.
+ *
+ * Les actions s'exécutent sur le thread de la roue : elles doivent être
+ * brèves (prendre un verrou de partie, déposer des messages).
+ */
+public class RoueTemporelle {
+    private static final int MAX_TRANSFERTS_PAR_TIC = 100_000; // Borne le travail d'un tic sous une rafale
+
+    private static final int ARME = 0;
+    private static final int ANNULE = 1;
+    private static final int ECHU = 2;
+
+    private final long tickNanos;
+    private final Minuteur[] cases; // Têtes des listes, propres au thread de la roue
+    private final int masque;
+    private final long origine = System.nanoTime();
+    private long tic = 0; // Propre au thread de la roue
+
+    private final ConcurrentLinkedQueue<Minuteur> aArmer = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Minuteur> aRetirer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nbArmes = new AtomicInteger();
+
+    /**
+     * Crée la roue avec les réglages {@code p4.roue.tickMs} (100 par défaut) et
+     * {@code p4.roue.cases} (512), puis démarre son thread (démon).
+     */
+    public RoueTemporelle() {
+        this(Long.getLong("p4.roue.tickMs", 100), Integer.getInteger("p4.roue.cases", 512));
+    }
+
+    /**
+     * Crée la roue et démarre son thread (démon).
+     *
+     * @param tickMs la durée d'une case, en millisecondes
+     * @param nbCases le nombre de cases, arrondi à la puissance de 2 supérieure
+     */
+    public RoueTemporelle(long tickMs, int nbCases) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        int taille = Integer.highestOneBit(Math.max(2, nbCases - 1)) << 1;
+        this.cases = new Minuteur[taille];
+        this.masque = taille - 1;
+        Thread thread = new Thread(this::tourner, "roue-temporelle");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Arme un minuteur.
+     *
+     * @param delaiMs le délai avant l'action, en millisecondes
+     * @param action  l'action, exécutée sur le thread de la roue sauf annulation avant l'échéance
+     * @return le minuteur, qui permet de l'annuler
+     */
+    public Minuteur armer(long delaiMs, Runnable action) {
+        Minuteur minuteur = new Minuteur(System.nanoTime() - origine + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delaiMs)), action);
+        nbArmes.incrementAndGet();
+        aArmer.add(minuteur);
+        return minuteur;
+    }
+
+    /**
+     * Renvoie le nombre de minuteurs armés, ni échus ni annulés.
+     *
+     * @return le nombre de minuteurs en attente
+     */
+    public int getNbArmes() {
+        return nbArmes.get();
+    }
+
+    // Boucle du thread de la roue : un tic par case, calé sur l'horloge et non sur la durée des tics
+    private void tourner() {
+        while (true) {
+            try {
+                long attente = (tic + 1) * tickNanos - (System.nanoTime() - origine);
+                if (attente > 0) {
+                    TimeUnit.NANOSECONDS.sleep(attente);
+                }
+                retirerAnnules();
+                ranger();
+                expirer(cases[(int) (tic & masque)]);
+                tic++;
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                Traces.tracer(Traces.Evenement.ERREUR_ROUE, e);
+                tic++;
+            }
+        }
+    }
+
+    // Range les minuteurs déposés depuis le dernier tic ; un délai déjà dépassé échoit à ce tic
+    private void ranger() {
+        Minuteur minuteur;
+        for (int i = 0; i < MAX_TRANSFERTS_PAR_TIC && (minuteur = aArmer.poll()) != null; i++) {
+            if (minuteur.etat != ARME) {
+                continue; // Annulé avant d'être rangé
+            }
+            long echeance = Math.max(tic, minuteur.echeance / tickNanos);
+            minuteur.tours = (echeance - tic) / cases.length;
+            int indice = (int) (echeance & masque);
+            minuteur.suivant = cases[indice];
+            if (minuteur.suivant != null) {
+                minuteur.suivant.precedent = minuteur;
+            }
+            cases[indice] = minuteur;
+            minuteur.indice = indice;
+        }
+    }
+
+    // Décroche les minuteurs annulés : la mémoire est rendue sans attendre leur échéance
+    private void retirerAnnules() {
+        Minuteur minuteur;
+        while ((minuteur = aRetirer.poll()) != null) {
+            if (minuteur.indice >= 0) {
+                decrocher(minuteur);
+            }
+        }
+    }
+
+    // Parcourt une case : les minuteurs du tour courant échoient, les autres attendent un tour de plus
+    private void expirer(Minuteur tete) {
+        Minuteur minuteur = tete;
+        while (minuteur != null) {
+            Minuteur suivant = minuteur.suivant;
+            if (minuteur.tours > 0) {
+                minuteur.tours--;
+            } else {
+                decrocher(minuteur);
+                if (ETAT.compareAndSet(minuteur, ARME, ECHU)) {
+                    nbArmes.decrementAndGet();
+                    try {
+                        minuteur.action.run();
+                    } catch (RuntimeException e) {
+                        Traces.tracer(Traces.Evenement.ERREUR_MINUTEUR, e);
+                    }
+                }
+            }
+            minuteur = suivant;
+        }
+    }
+
+    private void decrocher(Minuteur minuteur) {
+        if (minuteur.precedent != null) {
+            minuteur.precedent.suivant = minuteur.suivant;
+        } else {
+            cases[minuteur.indice] = minuteur.suivant;
+        }
+        if (minuteur.suivant != null) {
+            minuteur.suivant.precedent = minuteur.precedent;
+        }
+        minuteur.precedent = null;
+        minuteur.suivant = null;
+        minuteur.indice = -1;
+    }
+
+    private static final VarHandle ETAT;
+    static {
+        try {
+            ETAT = MethodHandles.lookup().findVarHandle(Minuteur.class, "etat", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Minuteur armé dans la roue. Les champs de chaînage ne sont touchés que par
+     * le thread de la roue ; l'état seul est partagé.
+     */
+    public final class Minuteur {
+        private final long echeance; // En nanosecondes depuis l'origine de la roue
+        private final Runnable action;
+        private volatile int etat = ARME;
+        private long tours;
+        private int indice = -1; // Case où il est rangé, -1 s'il n'y est pas
+        private Minuteur precedent;
+        private Minuteur suivant;
+
+        private Minuteur(long echeance, Runnable action) {
+            this.echeance = echeance;
+            this.action = action;
+        }
+
+        /**
+         * Annule le minuteur : son action ne sera pas exécutée.
+         *
+         * @return false s'il était déjà échu ou annulé
+         */
+        public boolean annuler() {
+            if (!ETAT.compareAndSet(this, ARME, ANNULE)) {
+                return false;
+            }
+            nbArmes.decrementAndGet();
+            aRetirer.add(this);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stockage des scores des joueurs : compteurs [defaites, nul, victoires] par pseudo.
+ * Deux implémentations existent, choisies au démarrage par {@code -Dp4.scores} :
+ * <ul>
+ *   <li>{@code journal} (par défaut) : table en mémoire + {@link JournalScores} ;</li>
+ *   <li>{@code mappe} : enregistrements de taille fixe dans un fichier projeté
+ *       en mémoire, voir {@link ScoreStoreMappe}.</li>
+ * </ul>
+ * Chaque joueur a un identifiant entier dense (0, 1, 2...), attribué à sa
+ * création et stable pour la durée du stockage : une session le demande une
+ * fois à la connexion, puis les fins de partie et les consultations de ses
+ * scores ne manipulent plus que cet entier, sans hacher le pseudo.
+ *
+ * Les implémentations sont sûres entre threads.
+ */
+public interface ScoreStore {
+
+    /**
+     * Longueur maximale d'un pseudo, en octets UTF-8 : la place d'un pseudo
+     * dans un enregistrement de {@link ScoreStoreMappe}. La règle vaut pour
+     * tous les stockages ; un pseudo plus long est refusé à la connexion.
+     */
+    int PSEUDO_MAX = 114;
+
+    /**
+     * Indique si un pseudo peut être stocké.
+     *
+     * @param pseudo le pseudo
+     * @return true s'il tient en {@link #PSEUDO_MAX} octets UTF-8
+     */
+    static boolean pseudoValide(String pseudo) {
+        return pseudo.getBytes(StandardCharsets.UTF_8).length <= PSEUDO_MAX;
+    }
+
+    /**
+     * Renvoie l'identifiant d'un joueur, en le créant avec des scores à zéro
+     * s'il n'existe pas encore.
+     *
+     * @param pseudo le pseudo du joueur
+     * @return son identifiant, de 0 à {@link #getNbJoueurs()} - 1
+     * @throws IllegalArgumentException si le pseudo n'est pas valide ({@link #pseudoValide})
+     */
+    int interner(String pseudo);
+
+    /**
+     * Renvoie l'identifiant d'un joueur existant.
+     *
+     * @param pseudo le pseudo du joueur
+     * @return son identifiant, ou -1 si le joueur est inconnu (ou le pseudo invalide)
+     */
+    int getId(String pseudo);
+
+    /**
+     * Renvoie le pseudo d'un joueur.
+     *
+     * @param id l'identifiant du joueur
+     * @return son pseudo
+     */
+    String getPseudo(int id);
+
+    /**
+     * Renvoie le nombre de joueurs connus.
+     *
+     * @return le nombre d'identifiants attribués
+     */
+    int getNbJoueurs();
+
+    /**
+     * Renvoie une copie des scores d'un joueur.
+     *
+     * @param id l'identifiant du joueur
+     * @return [defaites, nul, victoires]
+     */
+    int[] getStats(int id);
+
+    /**
+     * Renvoie une copie des scores d'un joueur désigné par son pseudo.
+     *
+     * @param pseudo le pseudo du joueur
+     * @return [defaites, nul, victoires], à zéro si le joueur est inconnu
+     */
+    default int[] getStats(String pseudo) {
+        int id = getId(pseudo);
+        return id < 0 ? new int[]{0, 0, 0} : getStats(id);
+    }
+
+    /**
+     * Enregistre le résultat d'une partie.
+     *
+     * @param joueur     l'identifiant du joueur
+     * @param adversaire l'identifiant de l'adversaire
+     * @param statJoueur l'indice [defaites, nul, victoires] à incrémenter pour le
+     *                   joueur ; celui de l'adversaire est {@code 2 - statJoueur}
+     */
+    void enregistrerResultat(int joueur, int adversaire, int statJoueur);
+
+    /**
+     * Écrit les dernières modifications sur disque et libère les ressources.
+     */
+    void fermer();
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Scores tenus en mémoire et persistés par un {@link JournalScores}
+ * (instantané scores.json + journal des résultats).
+ *
+ * Les pseudos sont internés en identifiants denses par une table {@link Joueurs} ;
+ * les compteurs sont rangés par blocs de {@value #JOUEURS_PAR_BLOC} joueurs dans
+ * des {@link AtomicIntegerArray} (3 entiers par joueur) : 12 octets par joueur
+ * au lieu d'un tableau et d'une entrée de table chacun. Une fin de partie
+ * n'est que deux incrémentations atomiques, sans verrou.
+ */
+public class ScoreStoreJournal implements ScoreStore {
+    private static final int DECALAGE = 10;
+    private static final int JOUEURS_PAR_BLOC = 1 << DECALAGE;
+    private static final int MASQUE = JOUEURS_PAR_BLOC - 1;
+
+    private final Joueurs joueurs = new Joueurs();
+    private volatile AtomicIntegerArray[] blocs = new AtomicIntegerArray[0]; // Agrandi sous le moniteur
+    private final JournalScores journal; // null : scores non persistés
+
+    /**
+     * Constructeur du stockage.
+     *
+     * @param scores  les scores chargés au démarrage
+     * @param journal le journal où sont ajoutés les résultats, ou null
+     */
+    public ScoreStoreJournal(Map<String, int[]> scores, JournalScores journal) {
+        for (Map.Entry<String, int[]> entree : scores.entrySet()) {
+            int id = joueurs.interner(entree.getKey()); // Scores déjà enregistrés : repris tels quels
+            compteurs(id);
+            for (int i = 0; i < 3; i++) {
+                compteurs(id).set(3 * (id & MASQUE) + i, entree.getValue()[i]);
+            }
+        }
+        this.journal = journal;
+    }
+
+    @Override
+    public int interner(String pseudo) {
+        if (!ScoreStore.pseudoValide(pseudo)) {
+            throw new IllegalArgumentException("Pseudo trop long : " + ScoreStore.PSEUDO_MAX + " octets au plus.");
+        }
+        int id = joueurs.interner(pseudo);
+        compteurs(id); // Crée son bloc au besoin
+        return id;
+    }
+
+    @Override
+    public int getId(String pseudo) {
+        return joueurs.getId(pseudo);
+    }
+
+    @Override
+    public String getPseudo(int id) {
+        return joueurs.getPseudo(id);
+    }
+
+    @Override
+    public int getNbJoueurs() {
+        return joueurs.getNombre();
+    }
+
+    @Override
+    public int[] getStats(int id) {
+        AtomicIntegerArray bloc = compteurs(id);
+        int base = 3 * (id & MASQUE);
+        return new int[]{bloc.get(base), bloc.get(base + 1), bloc.get(base + 2)};
+    }
+
+    @Override
+    public void enregistrerResultat(int joueur, int adversaire, int statJoueur) {
+        // Des parties différentes peuvent finir en même temps : incréments atomiques
+        compteurs(joueur).incrementAndGet(3 * (joueur & MASQUE) + statJoueur);
+        compteurs(adversaire).incrementAndGet(3 * (adversaire & MASQUE) + 2 - statJoueur);
+        if (journal != null) {
+            // Écrit en arrière-plan, par lots ; le journal reste en pseudos
+            journal.ajouter(joueurs.getPseudo(joueur), joueurs.getPseudo(adversaire), statJoueur);
+        }
+    }
+
+    @Override
+    public void fermer() {
+        if (journal != null) {
+            journal.fermer();
+        }
+    }
+
+    // Bloc des compteurs d'un joueur ; un identifiant tout juste attribué peut précéder son bloc
+    private AtomicIntegerArray compteurs(int id) {
+        AtomicIntegerArray[] actuels = blocs;
+        int indice = id >>> DECALAGE;
+        return indice < actuels.length ? actuels[indice] : agrandir(indice);
+    }
+
+    // Ajoute des blocs jusqu'à l'indice donné ; les blocs existants sont gardés tels quels
+    private synchronized AtomicIntegerArray agrandir(int indice) {
+        AtomicIntegerArray[] actuels = blocs;
+        if (indice < actuels.length) {
+            return actuels[indice];
+        }
+        AtomicIntegerArray[] nouveaux = Arrays.copyOf(actuels, Math.max(indice + 1, actuels.length * 2));
+        for (int i = actuels.length; i < nouveaux.length; i++) {
+            nouveaux[i] = new AtomicIntegerArray(3 * JOUEURS_PAR_BLOC);
+        }
+        blocs = nouveaux;
+        return nouveaux[indice];
+    }
+}
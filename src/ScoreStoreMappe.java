@@ -0,0 +1,344 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Scores stockés dans un fichier projeté en mémoire ({@link FileChannel#map}).
+ *
+ * Organisation du fichier :
+ * <pre>
+ * [en-tête, 64 octets]   magie, version, capacité de l'index, nombre de joueurs
+ * [index, capacité x 8]  adressage ouvert (sondage linéaire) : hachage du pseudo + numéro d'enregistrement + 1
+ * [enregistrements]      capacité / 2 enregistrements de 128 octets :
+ *                        defaites, nul, victoires (int), longueur du pseudo (short), pseudo en UTF-8
+ * </pre>
+ *
+ * Une fin de partie n'est qu'une incrémentation atomique de deux compteurs en
+ * place, sans sérialisation. Le démarrage se limite à projeter le fichier, quel
+ * que soit le nombre de joueurs. Quand l'index est à moitié plein, le fichier est
+ * reconstruit avec une capacité double, jusqu'à {@value #CAPACITE_MAX} cases
+ * (le fichier doit tenir dans un seul tampon projeté, moins de 2 Go). Un pseudo
+ * tient en {@link ScoreStore#PSEUDO_MAX} octets, jamais tronqué : deux pseudos
+ * distincts ont toujours deux enregistrements distincts.
+ */
+public class ScoreStoreMappe implements ScoreStore {
+    private static final int MAGIE = 0x50345343; // "P4SC"
+    private static final int VERSION = 1;
+    private static final int TAILLE_ENTETE = 64;
+    private static final int TAILLE_CASE = 8;
+    private static final int TAILLE_ENREGISTREMENT = 128; // 14 octets de compteurs et de longueur, puis PSEUDO_MAX octets de pseudo
+    private static final int CAPACITE_INITIALE = 1 << 16;
+    private static final int CAPACITE_MAX = 1 << 24; // tailleFichier(2^25) dépasse Integer.MAX_VALUE
+
+    // Accès atomiques aux compteurs du fichier projeté (tampon direct, adresses alignées sur 4)
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final Path fichier;
+    // Lecture : consultations et incréments. Écriture : ajout d'un joueur et agrandissement.
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private FileChannel canal;
+    private MappedByteBuffer carte;
+    private int capacite; // Nombre de cases de l'index (puissance de 2)
+    private volatile int nbJoueurs;
+
+    /**
+     * Ouvre (ou crée) le fichier de scores projeté.
+     * À la création, les scores d'un éventuel scores.json sont importés.
+     *
+     * @param chemin     le chemin du fichier projeté
+     * @param importJson les scores à importer si le fichier n'existe pas encore
+     */
+    public ScoreStoreMappe(String chemin, Map<String, int[]> importJson) throws IOException {
+        this.fichier = Paths.get(chemin);
+        if (Files.exists(fichier)) {
+            ouvrir(fichier);
+            if (carte.getInt(0) != MAGIE || carte.getInt(4) != VERSION) {
+                throw new IOException("Fichier de scores invalide : " + chemin);
+            }
+            capacite = carte.getInt(8);
+            nbJoueurs = carte.getInt(12);
+        } else {
+            int cap = CAPACITE_INITIALE;
+            while (importJson != null && importJson.size() >= cap / 2) {
+                cap *= 2;
+            }
+            Path temporaire = Paths.get(chemin + ".tmp");
+            Files.deleteIfExists(temporaire);
+            creer(temporaire, cap);
+            if (importJson != null) {
+                int ignores = 0;
+                for (Map.Entry<String, int[]> entree : importJson.entrySet()) {
+                    byte[] cle = cle(entree.getKey());
+                    if (cle == null) {
+                        ignores++;
+                        continue;
+                    }
+                    int numero = inserer(cle);
+                    int base = adresseEnregistrement(numero);
+                    for (int i = 0; i < 3; i++) {
+                        carte.putInt(base + 4 * i, entree.getValue()[i]);
+                    }
+                }
+                System.out.println((importJson.size() - ignores) + " joueurs importés dans " + chemin);
+                if (ignores > 0) {
+                    System.out.println(ignores + " joueurs non importés : pseudo de plus de " + PSEUDO_MAX + " octets.");
+                }
+            }
+            carte.force();
+            canal.close();
+            Files.move(temporaire, fichier, StandardCopyOption.ATOMIC_MOVE);
+            ouvrir(fichier);
+        }
+    }
+
+    // L'identifiant d'un joueur est le numéro de son enregistrement, gardé quand le fichier est agrandi
+    @Override
+    public int interner(String pseudo) {
+        byte[] cle = cle(pseudo);
+        if (cle == null) {
+            throw new IllegalArgumentException("Pseudo trop long : " + PSEUDO_MAX + " octets au plus.");
+        }
+        int hachage = hacher(cle);
+        verrou.readLock().lock();
+        try {
+            int numero = chercher(cle, hachage);
+            if (numero >= 0) {
+                return numero;
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+        verrou.writeLock().lock();
+        try {
+            int numero = chercher(cle, hachage); // Ajouté entre-temps par un autre thread ?
+            return numero >= 0 ? numero : inserer(cle);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int getId(String pseudo) {
+        byte[] cle = cle(pseudo);
+        if (cle == null) {
+            return -1; // Ne peut pas avoir été enregistré
+        }
+        verrou.readLock().lock();
+        try {
+            return chercher(cle, hacher(cle));
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getPseudo(int id) {
+        verrou.readLock().lock();
+        try {
+            int base = adresseEnregistrement(id);
+            byte[] cle = new byte[carte.getShort(base + 12)];
+            carte.get(base + 14, cle);
+            return new String(cle, StandardCharsets.UTF_8);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getStats(int id) {
+        verrou.readLock().lock();
+        try {
+            int base = adresseEnregistrement(id);
+            return new int[]{
+                (int) INT.getVolatile(carte, base),
+                (int) INT.getVolatile(carte, base + 4),
+                (int) INT.getVolatile(carte, base + 8)
+            };
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void enregistrerResultat(int joueur, int adversaire, int statJoueur) {
+        verrou.readLock().lock(); // Le fichier ne peut pas être agrandi pendant les incréments
+        try {
+            INT.getAndAdd(carte, adresseEnregistrement(joueur) + 4 * statJoueur, 1); // Écriture en place
+            INT.getAndAdd(carte, adresseEnregistrement(adversaire) + 4 * (2 - statJoueur), 1);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Force l'écriture des pages modifiées sur disque.
+     */
+    public void synchroniser() {
+        verrou.readLock().lock();
+        try {
+            long debut = System.nanoTime();
+            carte.force();
+            Metriques.SCORES_SYNCHRO.enregistrer(System.nanoTime() - debut);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void fermer() {
+        verrou.writeLock().lock();
+        try {
+            carte.force();
+            canal.close();
+        } catch (IOException e) {
+            System.out.println("Erreur lors de la fermeture des scores : " + e.getMessage());
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int getNbJoueurs() {
+        return nbJoueurs;
+    }
+
+    // Renvoie le numéro d'enregistrement du pseudo, ou -1. Appelée avec un verrou.
+    private int chercher(byte[] cle, int hachage) {
+        int masque = capacite - 1;
+        for (int i = hachage & masque; ; i = (i + 1) & masque) {
+            int adresse = TAILLE_ENTETE + i * TAILLE_CASE;
+            int numeroPlusUn = carte.getInt(adresse + 4);
+            if (numeroPlusUn == 0) {
+                return -1;
+            }
+            if (carte.getInt(adresse) == hachage && memePseudo(numeroPlusUn - 1, cle)) {
+                return numeroPlusUn - 1;
+            }
+        }
+    }
+
+    private boolean memePseudo(int numero, byte[] cle) {
+        int base = adresseEnregistrement(numero);
+        if (carte.getShort(base + 12) != cle.length) {
+            return false;
+        }
+        for (int i = 0; i < cle.length; i++) {
+            if (carte.get(base + 14 + i) != cle[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Ajoute un joueur absent ; renvoie son numéro. Appelée avec le verrou d'écriture
+    // (ou pendant la construction).
+    private int inserer(byte[] cle) {
+        if (nbJoueurs >= capacite / 2) {
+            agrandir();
+        }
+        int hachage = hacher(cle);
+        int numero = nbJoueurs;
+        int base = adresseEnregistrement(numero);
+        carte.putShort(base + 12, (short) cle.length);
+        carte.put(base + 14, cle);
+        int masque = capacite - 1;
+        int i = hachage & masque;
+        while (carte.getInt(TAILLE_ENTETE + i * TAILLE_CASE + 4) != 0) {
+            i = (i + 1) & masque;
+        }
+        carte.putInt(TAILLE_ENTETE + i * TAILLE_CASE, hachage);
+        carte.putInt(TAILLE_ENTETE + i * TAILLE_CASE + 4, numero + 1);
+        nbJoueurs++;
+        carte.putInt(12, nbJoueurs);
+        return numero;
+    }
+
+    // Reconstruit le fichier avec une capacité double
+    private void agrandir() {
+        try {
+            MappedByteBuffer ancienne = carte;
+            FileChannel ancienCanal = canal;
+            int ancienNb = nbJoueurs;
+            int ancienneCapacite = capacite;
+            Path temporaire = Paths.get(fichier + ".tmp");
+            Files.deleteIfExists(temporaire);
+            creer(temporaire, capacite * 2);
+            for (int numero = 0; numero < ancienNb; numero++) {
+                int source = (int) (TAILLE_ENTETE + (long) ancienneCapacite * TAILLE_CASE + (long) numero * TAILLE_ENREGISTREMENT);
+                int longueur = ancienne.getShort(source + 12);
+                byte[] cle = new byte[longueur];
+                ancienne.get(source + 14, cle);
+                int copie = inserer(cle);
+                int base = adresseEnregistrement(copie);
+                for (int i = 0; i < 3; i++) {
+                    carte.putInt(base + 4 * i, ancienne.getInt(source + 4 * i));
+                }
+            }
+            carte.force();
+            ancienCanal.close();
+            Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Traces.tracer(Traces.Evenement.SCORES_AGRANDIS, null, capacite);
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossible d'agrandir le fichier de scores", e);
+        }
+    }
+
+    private void creer(Path chemin, int cap) throws IOException {
+        if (cap > CAPACITE_MAX) {
+            throw new IOException("Fichier de scores plein : " + CAPACITE_MAX / 2 + " joueurs au plus (projection limitée à 2 Go)");
+        }
+        canal = FileChannel.open(chemin, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        carte = canal.map(FileChannel.MapMode.READ_WRITE, 0, tailleFichier(cap));
+        carte.order(ByteOrder.nativeOrder());
+        carte.putInt(0, MAGIE);
+        carte.putInt(4, VERSION);
+        carte.putInt(8, cap);
+        carte.putInt(12, 0);
+        capacite = cap;
+        nbJoueurs = 0;
+    }
+
+    private void ouvrir(Path chemin) throws IOException {
+        canal = FileChannel.open(chemin, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        carte = canal.map(FileChannel.MapMode.READ_WRITE, 0, canal.size());
+        carte.order(ByteOrder.nativeOrder());
+    }
+
+    private static long tailleFichier(int cap) {
+        return TAILLE_ENTETE + (long) cap * TAILLE_CASE + (long) (cap / 2) * TAILLE_ENREGISTREMENT;
+    }
+
+    // Calculée en long : hors du fichier (capacité au-delà de CAPACITE_MAX), l'adresse lève une exception au lieu de reboucler
+    private int adresseEnregistrement(int numero) {
+        return Math.toIntExact(TAILLE_ENTETE + (long) capacite * TAILLE_CASE + (long) numero * TAILLE_ENREGISTREMENT);
+    }
+
+    // Octets du pseudo, ou null s'il est trop long pour un enregistrement
+    private static byte[] cle(String pseudo) {
+        byte[] octets = pseudo.getBytes(StandardCharsets.UTF_8);
+        return octets.length > PSEUDO_MAX ? null : octets;
+    }
+
+    // Hachage FNV-1a des octets du pseudo, puis mélange des bits
+    private static int hacher(byte[] cle) {
+        int h = 0x811C9DC5;
+        for (byte b : cle) {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
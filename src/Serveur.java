@@ -1,24 +1,62 @@
-    import java.io.BufferedReader;
-    import java.io.BufferedWriter;
-    import java.io.File;
-    import java.io.FileNotFoundException;
-    import java.io.FileReader;
-    import java.io.FileWriter;
     import java.io.IOException;
+    import java.nio.file.Files;
+    import java.nio.file.Paths;
     import java.net.ServerSocket;
     import java.net.Socket;
-    import java.util.ArrayList;
     import java.util.HashMap;
     import java.util.List;
     import java.util.Map;
+    import java.util.concurrent.ConcurrentHashMap;
+    import java.util.concurrent.Executor;
+    import java.util.concurrent.ArrayBlockingQueue;
+    import java.util.concurrent.ExecutorService;
+    import java.util.concurrent.Executors;
+    import java.util.concurrent.RejectedExecutionException;
+    import java.util.concurrent.ThreadPoolExecutor;
+    import java.util.concurrent.TimeUnit;
+    import java.util.concurrent.atomic.AtomicInteger;
+    import java.util.concurrent.atomic.AtomicLong;
+    import java.util.concurrent.locks.ReentrantLock;
 
     public class Serveur {
         private ServerSocket serverSocket;
-        private Map<String, ClientHandler> clients = new HashMap<>();
-        private Map<ClientHandler, ClientHandler> invitations = new HashMap<>();
-        private Map<ClientHandler, Puissance4> games = new HashMap<>();
-        private static Map<String, int[]> scores = new HashMap<>();
+        // Pas de verrou global : les tables partagées sont concurrentes, et les coups
+        // d'une partie sont sérialisés par le verrou propre à cette partie.
+        private Map<String, ClientHandler> clients = new ConcurrentHashMap<>();
+        private Map<ClientHandler, Invitation> invitations = new ConcurrentHashMap<>(); // Par joueur invité
+        private Map<ClientHandler, Puissance4> games = new ConcurrentHashMap<>();
+        // Joueurs connectés hors partie, triés par pseudo (commande who)
+        private final Presence presence = new Presence();
+        private static final int TAILLE_PAGE_WHO = Integer.getInteger("p4.who.taille", 20);
+        // Chat par salons : lobby, un salon par partie, salons créés par les joueurs
+        private final Diffuseur salons = new Diffuseur();
+        private final AtomicLong compteurParties = new AtomicLong();
+        // Appariement automatique (commande queue), par paliers de cote
+        private final FileAttente fileAttente = new FileAttente(this::demarrerDepuisFile);
+        // Spectateurs (commande watch) : chaque coup est encodé une fois pour tous
+        private final Retransmission retransmission = new Retransmission();
+        // Délais (invitations, pendules des parties) : une seule roue temporelle pour tout le serveur
+        private final RoueTemporelle roue = new RoueTemporelle();
+        // Colonne réservée de handleMove : le joueur abandonne la partie (commande ff)
+        public static final int ABANDON = -1;
+        private static final String AVIS_FIN_SPECTATEUR = "Vous ne regardez plus la partie : la vôtre commence.";
+        private static final long DELAI_INVITATION_MS = Long.getLong("p4.invitation.delaiMs", 60_000);
+        private static final long CADENCE_COUP_MS = Long.getLong("p4.cadence.coupMs", 120_000);
+        private static final long CADENCE_PARTIE_MS = Long.getLong("p4.cadence.partieMs", 0);
+        // Recherches des bots : pool borné, séparé des threads des sessions
+        private static final int BOT_NIVEAU_DEFAUT = 3;
+        private static final long BOT_BUDGET_MS = Long.getLong("p4.bot.budgetMs", 500);
+        private final ThreadPoolExecutor poolBots = creerPoolBots();
         private static final String FILE_NAME = "scores.json";
+        private static final String FICHIER_MAPPE = "scores.p4s";
+        // Scores des joueurs ; par défaut en mémoire seulement (bancs de mesure, sessions locales)
+        private static volatile ScoreStore scores = new ScoreStoreJournal(new HashMap<>(), null);
+        private static volatile Classement classement = new Classement(id -> scores.getPseudo(id));
+        // Journal des parties terminées (replay, history) ; aucun par défaut
+        private static final String DOSSIER_PARTIES = "parties";
+        private static volatile JournalParties journalParties = null;
+        // Lance les tâches des sessions (lecture et écriture) du mode classique ou virtuel
+        private Executor executeurSessions = tache -> new Thread(tache).start();
 
         /**
          * Démarre le serveur sur un port spécifié.
@@ -27,18 +65,79 @@
          * @param port le port sur lequel le serveur écoute les connexions.
          */
         public void demarrer(int port) {
+            demarrer(port, session -> new Thread(session).start());
+        }
+
+        /**
+         * Démarre le serveur sur un port spécifié, chaque session client étant
+         * exécutée par l'exécuteur donné.
+         * 
+         * @param port le port sur lequel le serveur écoute les connexions.
+         * @param executeur l'exécuteur qui lance les sessions des clients.
+         */
+        public void demarrer(int port, Executor executeur) {
+            executeurSessions = executeur;
             try {
-                serverSocket = new ServerSocket(port);
+                serverSocket = new ServerSocket(port, 1024);
                 System.out.println("Serveur lancé sur le port " + port);
 
                 while (true) {
                     Socket clientSocket = serverSocket.accept();
-                    System.out.println("Nouveau client connecté.");
+                    Traces.tracer(Traces.Evenement.CONNEXION);
                     ClientHandler clientHandler = new ClientHandler(clientSocket, this);
-                    clientHandler.start();
+                    executeur.execute(clientHandler);
                 }
             } catch (IOException e) {
-                System.out.println("Erreur : " + e.getMessage());
+                Traces.tracer(Traces.Evenement.ERREUR_ACCEPTATION, e);
+            }
+        }
+
+        /**
+         * Lance une tâche de session (par exemple l'écrivain d'un client) avec le
+         * même exécuteur que les sessions.
+         * 
+         * @param tache la tâche à lancer.
+         */
+        public void executer(Runnable tache) {
+            executeurSessions.execute(tache);
+        }
+
+        /**
+         * Démarre le serveur en lançant chaque session sur un thread virtuel.
+         * Les threads virtuels n'existent qu'à partir de Java 21 : on les crée par
+         * réflexion pour que le projet compile toujours en Java 17, et on revient
+         * au thread classique par client si la JVM ne les propose pas.
+         * 
+         * @param port le port sur lequel le serveur écoute les connexions.
+         */
+        public void demarrerVirtuel(int port) {
+            ExecutorService executeur;
+            try {
+                executeur = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Threads virtuels indisponibles (Java 21 requis), mode classique utilisé.");
+                demarrer(port);
+                return;
+            }
+            System.out.println("Sessions exécutées sur des threads virtuels.");
+            demarrer(port, executeur);
+        }
+
+        /**
+         * Démarre le serveur en mode NIO sur un port spécifié.
+         * Les connexions sont réparties sur quelques boucles d'événements au lieu
+         * d'avoir un thread par client.
+         * 
+         * @param port le port sur lequel le serveur écoute les connexions.
+         * @param nbBoucles le nombre de boucles d'événements.
+         */
+        public void demarrerNio(int port, int nbBoucles) {
+            try {
+                new NioServeur(this, nbBoucles).demarrer(port);
+            } catch (IOException e) {
+                Traces.tracer(Traces.Evenement.ERREUR_ACCEPTATION, e);
             }
         }
 
@@ -48,10 +147,12 @@
          * @param clientHandler le handler du client à enregistrer.
          * @param pseudo le pseudo du client.
          */
-        public synchronized void registerClient(ClientHandler clientHandler, String pseudo) {
+        public void registerClient(ClientHandler clientHandler, String pseudo) {
             clients.put(pseudo, clientHandler);
+            presence.ajouter(pseudo);
             sendAvailablePlayers(clientHandler);
-            broadcast("[" + pseudo + "] a rejoint le serveur.");
+            salons.abonner(clientHandler, Diffuseur.LOBBY);
+            salons.annoncerArrivee(pseudo); // Regroupée avec les autres arrivées du moment
         }
 
         /**
@@ -59,22 +160,59 @@
          * 
          * @param clientHandler le handler du client à désenregistrer.
          */
-        public synchronized void unregisterClient(ClientHandler clientHandler) {
-            clients.remove(clientHandler.getPseudo());
-            games.remove(clientHandler); // Supprimer le jeu si le client se déconnecte
-            broadcast("[" + clientHandler.getPseudo() + "] a quitté le serveur.");
+        public void unregisterClient(ClientHandler clientHandler) {
+            if (clientHandler.getPseudo() != null && clients.remove(clientHandler.getPseudo(), clientHandler)) {
+                presence.retirer(clientHandler.getPseudo());
+            }
+            Puissance4 partie = games.get(clientHandler);
+            if (partie != null) {
+                quitterPartie(partie, clientHandler);
+            }
+            Invitation invitation = invitations.remove(clientHandler);
+            if (invitation != null) {
+                invitation.expiration.annuler();
+            }
+            retransmission.quitter(clientHandler);
+            salons.desabonnerTout(clientHandler);
+            salons.annoncerDepart(clientHandler.getPseudo());
+            fileAttente.retirer(clientHandler);
+        }
+
+        // Joueur déconnecté en cours de partie : il perd par abandon, comme avec ff, et son adversaire est libéré aussitôt
+        private void quitterPartie(Puissance4 partie, ClientHandler joueur) {
+            ReentrantLock verrouPartie = partie.getVerrou();
+            FileSortie.ouvrirCycle();
+            Metriques.verrouiller(verrouPartie, Metriques.ATTENTE_VERROU_PARTIE);
+            try {
+                if (!partie.isTerminee()) {
+                    ClientHandler adversaire = partie.getOpponent(joueur);
+                    abandonner(partie, joueur, adversaire, "Vous avez quitté la partie.",
+                            "L'adversaire " + joueur.getPseudo() + " s'est déconnecté. Vous avez gagné !");
+                }
+            } finally {
+                verrouPartie.unlock();
+                FileSortie.fermerCycle();
+            }
+            games.remove(joueur, partie);
         }
 
         /**
-         * Envoie une invitation de jeu à un autre joueur.
+         * Envoie une invitation de jeu à un autre joueur. Elle expire au bout
+         * de p4.invitation.delaiMs millisecondes ; une nouvelle invitation au
+         * même joueur remplace la précédente.
          * 
          * @param sender le joueur qui envoie l'invitation.
          * @param targetPlayer le pseudo du joueur cible pour l'invitation.
          */
-        public synchronized void sendInvitation(ClientHandler sender, String targetPlayer) {
+        public void sendInvitation(ClientHandler sender, String targetPlayer) {
             ClientHandler target = clients.get(targetPlayer);
             if (target != null) {
-                invitations.put(target, sender);
+                Invitation invitation = new Invitation(sender);
+                invitation.expiration = roue.armer(DELAI_INVITATION_MS, () -> expirerInvitation(target, invitation));
+                Invitation precedente = invitations.put(target, invitation);
+                if (precedente != null) {
+                    precedente.expiration.annuler();
+                }
                 target.send(sender.getPseudo() + " vous invite à jouer (yes pour accepter - no pour refuser)");
                 sender.send("Invitation envoyée à " + targetPlayer);
             } else {
@@ -82,12 +220,38 @@
             }
         }
 
-        public static synchronized  Map<String, int[]> getScores() {
+        public static ScoreStore getScores() {
             return scores;
         }
-        public static synchronized void setScores(Map<String, int[]> newScores) {
+        public static void setScores(ScoreStore newScores) {
             scores = newScores;
         }
+        public static Classement getClassement() {
+            return classement;
+        }
+        public static void setClassement(Classement nouveauClassement) {
+            classement = nouveauClassement;
+        }
+        public static JournalParties getJournalParties() {
+            return journalParties;
+        }
+        public static void setJournalParties(JournalParties journal) {
+            journalParties = journal;
+        }
+        public Diffuseur getDiffuseur() {
+            return salons;
+        }
+        public Retransmission getRetransmission() {
+            return retransmission;
+        }
+
+        // Invitation restée sans réponse : retirée si elle est toujours en attente
+        private void expirerInvitation(ClientHandler target, Invitation invitation) {
+            if (invitations.remove(target, invitation)) {
+                invitation.invitant.send("Votre invitation à " + target.getPseudo() + " a expiré.");
+                target.send("L'invitation de " + invitation.invitant.getPseudo() + " a expiré.");
+            }
+        }
 
 
         /**
@@ -96,18 +260,22 @@
          * @param responder le joueur qui répond à l'invitation.
          * @param response la réponse du joueur ("yes" ou "no").
          */
-        public synchronized void handleResponse(ClientHandler responder, String response) {
-            ClientHandler inviter = invitations.get(responder);
-            if (inviter != null) {
+        public void handleResponse(ClientHandler responder, String response) {
+            Invitation invitation = invitations.remove(responder); // Une seule réponse possible par invitation
+            if (invitation != null) {
+                invitation.expiration.annuler();
+                ClientHandler inviter = invitation.invitant;
                 if (response.equalsIgnoreCase("yes")) {
                     inviter.send("Le joueur " + responder.getPseudo() + " a accepté votre invitation.");
                     responder.send("Vous avez accepté l'invitation de " + inviter.getPseudo() + ".");
-                    startGame(inviter, responder);
+                    if (!startGame(inviter, responder)) {
+                        inviter.send("La partie ne peut pas commencer : " + responder.getPseudo() + " ou vous êtes déjà en partie.");
+                        responder.send("La partie ne peut pas commencer : " + inviter.getPseudo() + " ou vous êtes déjà en partie.");
+                    }
                 } else if (response.equalsIgnoreCase("no")) {
                     inviter.send("Le joueur " + responder.getPseudo() + " a refusé votre invitation.");
                     responder.send("Vous avez refusé l'invitation de " + inviter.getPseudo() + ".");
                 }
-                invitations.remove(responder);
             } else {
                 responder.send("Aucune invitation en attente.");
             }
@@ -115,297 +283,754 @@
 
         /**
          * Démarre une nouvelle partie de Puissance 4 entre deux joueurs.
+         * Les deux joueurs sont d'abord réservés pour la partie : si l'un d'eux
+         * est déjà en partie (ou vient d'en commencer une par ailleurs), ou s'est
+         * déconnecté, rien n'est fait.
          * 
          * @param player1 le premier joueur.
          * @param player2 le deuxième joueur.
+         * @return false si la partie n'a pas pu commencer.
          */
-        private void startGame(ClientHandler player1, ClientHandler player2) {
-            player1.send("La partie commence contre " + player2.getPseudo());
-            player2.send("La partie commence contre " + player1.getPseudo());
-            player1.send("C'est a vous de jouer !");
-            player2.send("C'est à " + player1.getPseudo() + " de jouer !");
-
+        private boolean startGame(ClientHandler player1, ClientHandler player2) {
             Puissance4 game = new Puissance4(player1, player2, this);
-            games.put(player1, game);
-            games.put(player2, game);
+            ReentrantLock verrouPartie = game.getVerrou();
+            verrouPartie.lock(); // Publiée dès la réservation : coups et minuteurs attendent la fin de la mise en place
+            try {
+                if (!reserver(player1, player2, game)) {
+                    return false;
+                }
+                fileAttente.retirer(player1); // Partie commencée par une invitation : plus besoin d'adversaire
+                fileAttente.retirer(player2);
+                retransmission.quitter(player1, AVIS_FIN_SPECTATEUR); // Les grilles de la partie regardée ne suivent pas le joueur
+                retransmission.quitter(player2, AVIS_FIN_SPECTATEUR);
+                player1.send("La partie commence contre " + player2.getPseudo());
+                player2.send("La partie commence contre " + player1.getPseudo());
+                player1.send("C'est a vous de jouer !");
+                player2.send("C'est à " + player1.getPseudo() + " de jouer !");
+
+                game.setSalon("partie-" + compteurParties.incrementAndGet());
+                game.setCadence(CADENCE_COUP_MS, CADENCE_PARTIE_MS);
+                String cadence = decrireCadence();
+                if (cadence != null) {
+                    player1.send(cadence);
+                    player2.send(cadence);
+                }
+                armerPendule(game);
+                salons.abonner(player1, game.getSalon());
+                salons.abonner(player2, game.getSalon());
+                presence.retirer(player1.getPseudo());
+                if (!player2.isBot()) { // Un joueur peut s'appeler comme un bot
+                    presence.retirer(player2.getPseudo());
+                }
+
+                game.demarrer();
+                return true;
+            } finally {
+                verrouPartie.unlock();
+            }
+        }
+
+        // Réserve les deux joueurs pour une partie : l'entrée de chacun dans games n'est posée que s'il n'en a pas.
+        // Un démarrage concurrent (yes et file d'attente au même moment) ne peut donc pas écraser une partie.
+        private boolean reserver(ClientHandler player1, ClientHandler player2, Puissance4 game) {
+            if (games.putIfAbsent(player1, game) != null) {
+                return false;
+            }
+            if (games.putIfAbsent(player2, game) != null) {
+                games.remove(player1, game);
+                return false;
+            }
+            // Déconnecté avant la réservation : unregisterClient n'a pas pu retirer son entrée, on l'annule ici
+            if (!estConnecte(player1) || !estConnecte(player2)) {
+                games.remove(player1, game);
+                games.remove(player2, game);
+                return false;
+            }
+            return true;
+        }
 
-            game.displayBoard();
+        private boolean estConnecte(ClientHandler joueur) {
+            return joueur.isBot() || clients.get(joueur.getPseudo()) == joueur;
+        }
+
+        /**
+         * Inscrit un joueur dans la file d'attente : une partie commencera dès
+         * qu'un adversaire de cote proche sera disponible.
+         * 
+         * @param client le joueur.
+         */
+        public void rejoindreFile(ClientHandler client) {
+            if (games.containsKey(client)) {
+                client.send("Vous êtes déjà en partie.");
+                return;
+            }
+            int cote = FileAttente.cote(scores.getStats(client.getIdJoueur()));
+            if (fileAttente.inscrire(client, cote)) {
+                client.send("Vous êtes dans la file d'attente (cote " + cote + ", " + fileAttente.getTaille()
+                        + " joueurs en attente). queue leave pour en sortir.");
+            } else {
+                client.send("Vous êtes déjà dans la file d'attente.");
+            }
+        }
+
+        /**
+         * Retire un joueur de la file d'attente.
+         * 
+         * @param client le joueur.
+         */
+        public void quitterFile(ClientHandler client) {
+            if (fileAttente.retirer(client)) {
+                client.send("Vous avez quitté la file d'attente.");
+            } else {
+                client.send("Vous n'êtes pas dans la file d'attente.");
+            }
+        }
+
+        /**
+         * Fait d'un client le spectateur de la partie d'un joueur : il reçoit
+         * l'état de la grille, puis chaque coup, jusqu'à la fin de la partie.
+         * 
+         * @param spectateur le client qui regarde.
+         * @param pseudo le pseudo d'un des joueurs de la partie.
+         */
+        public void regarder(ClientHandler spectateur, String pseudo) {
+            if (games.containsKey(spectateur)) {
+                spectateur.send("Vous êtes en partie.");
+                return;
+            }
+            ClientHandler joueur = clients.get(pseudo);
+            Puissance4 game = joueur == null ? null : games.get(joueur);
+            if (game == null) {
+                spectateur.send(pseudo + " n'est pas en partie.");
+                return;
+            }
+            ReentrantLock verrouPartie = game.getVerrou();
+            Metriques.verrouiller(verrouPartie, Metriques.ATTENTE_VERROU_PARTIE);
+            try {
+                if (game.isTerminee()) {
+                    spectateur.send("La partie de " + pseudo + " est terminée.");
+                    return;
+                }
+                // Sous le verrou : l'état envoyé au spectateur précède tous les coups suivants
+                game.setRegardee();
+                retransmission.regarder(spectateur, game, game.getPosition());
+            } finally {
+                verrouPartie.unlock();
+            }
+        }
+
+        /**
+         * Arrête de regarder une partie.
+         * 
+         * @param spectateur le client qui regardait.
+         */
+        public void arreterRegarder(ClientHandler spectateur) {
+            retransmission.quitter(spectateur);
+            spectateur.send("Vous ne regardez plus de partie.");
+        }
+
+        // Paire formée par la file d'attente : la partie commence si les deux joueurs sont toujours libres
+        private void demarrerDepuisFile(ClientHandler player1, ClientHandler player2) {
+            for (ClientHandler joueur : new ClientHandler[]{player1, player2}) {
+                if (clients.get(joueur.getPseudo()) != joueur || games.containsKey(joueur)) {
+                    ClientHandler autre = joueur == player1 ? player2 : player1;
+                    if (clients.get(autre.getPseudo()) == autre && !games.containsKey(autre)) {
+                        rejoindreFile(autre); // L'adversaire est parti : on cherche à nouveau
+                    }
+                    return;
+                }
+            }
+            FileSortie.ouvrirCycle(); // Les messages de début de partie partent en un envoi par joueur
+            try {
+                if (!startGame(player1, player2)) { // Un des joueurs a commencé une partie entre-temps
+                    for (ClientHandler joueur : new ClientHandler[]{player1, player2}) {
+                        if (estConnecte(joueur) && !games.containsKey(joueur)) {
+                            rejoindreFile(joueur);
+                        }
+                    }
+                }
+            } finally {
+                FileSortie.fermerCycle();
+            }
         }
 
         /**
          * Gère un mouvement effectué par un joueur pendant une partie.
          * Si le joueur choisit de quitter, l'adversaire est déclaré gagnant.
+         * Les coups d'une même partie sont sérialisés par le verrou de la partie :
+         * les parties indépendantes avancent en parallèle.
          * 
          * @param player le joueur effectuant le mouvement.
-         * @param column la colonne où le joueur veut jouer.
+         * @param column la colonne où le joueur veut jouer, ou {@link #ABANDON}.
          */
-        public synchronized void handleMove(ClientHandler player, String column) {
+        public void handleMove(ClientHandler player, int column) {
             Puissance4 game = this.games.get(player);
-            ClientHandler opponent = game.getOpponent(player);
-            if (column.equalsIgnoreCase("ff")) {
-                if (game != null) {
-                    if (opponent != null) {
-                        player.send("Vous avez abandonné la partie. " + opponent.getPseudo() + " gagne !");
-                        opponent.send("L'adversaire " + player.getPseudo() + " a abandonné. Vous avez gagné !");
-                        this.updateScores(player.getPseudo(), opponent.getPseudo(), "defeat");
-                        this.games.remove(player);
-                        this.games.remove(opponent);
-                        player.afficherMenu();
-                        opponent.afficherMenu();
-                    }
-                }
+            if (game == null) {
+                player.send("Vous n'êtes pas en partie.");
                 return;
             }
-        
-            if (game != null) {
+            ClientHandler botSuivant = null;
+            ReentrantLock verrouPartie = game.getVerrou();
+            Metriques.verrouiller(verrouPartie, Metriques.ATTENTE_VERROU_PARTIE);
+            try {
+                if (game.isTerminee()) { // Partie terminée par l'adversaire entre-temps
+                    player.send("Vous n'êtes pas en partie.");
+                    return;
+                }
+                ClientHandler opponent = game.getOpponent(player);
+                if (column == ABANDON) {
+                    abandonner(game, player, opponent, "Vous avez abandonné la partie. " + opponent.getPseudo() + " gagne !",
+                            "L'adversaire " + player.getPseudo() + " a abandonné. Vous avez gagné !");
+                    return;
+                }
+
                 boolean isValidMove = game.makeMove(player, column);
                 if (isValidMove) {
+                    game.arreterPendule();
                     // Vérifie si le joueur a gagné
                     if (game.checkWin(player)) {
                         player.send("Vous avez gagné la partie!");
                         opponent.send("Le joueur " + player.getPseudo() + " a gagné.");
-                        this.updateScores(player.getPseudo(), game.getOpponent(player).getPseudo(), "victory");
-                        this.games.remove(player);
-                        this.games.remove(opponent);
+                        this.updateScores(player, opponent, "victory");
+                        this.terminerPartie(game, player, opponent, 2);
                         player.afficherMenu();
                         opponent.afficherMenu();
                     }
                     // Vérifie si la grille est pleine
                     else if (game.isGridFull()) {
                         player.send("La grille est pleine ! Match nul.");
-                        game.getOpponent(player).send("La grille est pleine ! Match nul.");
-                        this.updateScores(player.getPseudo(), game.getOpponent(player).getPseudo(), "draw");
-                        this.games.remove(player);
-                        this.games.remove(opponent);
+                        opponent.send("La grille est pleine ! Match nul.");
+                        this.updateScores(player, opponent, "draw");
+                        this.terminerPartie(game, player, opponent, 1);
                         player.afficherMenu();
                         opponent.afficherMenu();
                     }
+                    // La partie continue : c'est au bot de jouer, ou la pendule de l'adversaire démarre
+                    else if (opponent.isBot()) {
+                        botSuivant = opponent;
+                    } else {
+                        armerPendule(game);
+                    }
                 } else {
                     player.send("Mouvement invalide, réessayez.");
                 }
+            } finally {
+                verrouPartie.unlock();
+            }
+            if (botSuivant != null) {
+                programmerCoupBot(game, botSuivant); // Hors du verrou : la recherche se fait sur une copie
             }
         }
-        
-
 
         /**
-         * Envoie un message à tous les clients connectés.
+         * Termine une partie par la défaite d'un joueur qui n'a pas gagné sur la
+         * grille : abandon (ff) ou temps écoulé. Appelée avec le verrou de la partie.
          * 
-         * @param message le message à diffuser.
+         * @param game la partie.
+         * @param player le joueur qui perd.
+         * @param opponent son adversaire, qui gagne.
+         * @param messageJoueur le message pour le perdant.
+         * @param messageAdversaire le message pour le gagnant.
          */
-        public synchronized void broadcast(String message) {
-            for (ClientHandler client : clients.values()) {
-                client.send(message);
+        private void abandonner(Puissance4 game, ClientHandler player, ClientHandler opponent, String messageJoueur, String messageAdversaire) {
+            player.send(messageJoueur);
+            opponent.send(messageAdversaire);
+            this.updateScores(player, opponent, "defeat");
+            this.terminerPartie(game, player, opponent, 0);
+            player.afficherMenu();
+            opponent.afficherMenu();
+        }
+
+        // Arme la pendule du joueur au trait ; à l'échéance, il perd comme s'il avait abandonné. Appelée avec le verrou de la partie
+        private void armerPendule(Puissance4 game) {
+            int coups = game.getNbCoups();
+            game.armerPendule(roue, () -> tempsEcoule(game, coups));
+        }
+
+        // Action de la pendule, sur le thread de la roue : sans effet si le joueur a joué entre-temps
+        private void tempsEcoule(Puissance4 game, int coups) {
+            ReentrantLock verrouPartie = game.getVerrou();
+            FileSortie.ouvrirCycle();
+            Metriques.verrouiller(verrouPartie, Metriques.ATTENTE_VERROU_PARTIE);
+            try {
+                if (game.isTerminee() || game.getNbCoups() != coups) {
+                    return;
+                }
+                ClientHandler player = game.getCurrentPlayer();
+                ClientHandler opponent = game.getOpponent(player);
+                abandonner(game, player, opponent, "Temps écoulé : vous avez perdu la partie. " + opponent.getPseudo() + " gagne !",
+                        "L'adversaire " + player.getPseudo() + " n'a pas joué à temps. Vous avez gagné !");
+            } finally {
+                verrouPartie.unlock();
+                FileSortie.fermerCycle();
+            }
+        }
+
+        // Annonce de la cadence en début de partie, null s'il n'y a pas de limite
+        private static String decrireCadence() {
+            if (CADENCE_COUP_MS <= 0 && CADENCE_PARTIE_MS <= 0) {
+                return null;
             }
+            String coup = CADENCE_COUP_MS > 0 ? CADENCE_COUP_MS / 1000 + " s par coup" : null;
+            String partie = CADENCE_PARTIE_MS > 0 ? CADENCE_PARTIE_MS / 1000 + " s au total par joueur" : null;
+            return "Cadence : " + (coup == null ? partie : partie == null ? coup : coup + ", " + partie) + ".";
         }
 
         /**
-         * Envoie un message de chat à tous les clients connectés.
+         * Démarre une partie contre le bot.
          * 
-         * @param sender le nom du joueur qui envoie le message.
-         * @param message le message de chat à diffuser.
+         * @param client le joueur humain, qui joue en premier.
+         * @param argument le niveau demandé, de 1 à 5 (vide pour le niveau par défaut).
          */
-        public synchronized void broadcastMessage(String sender, String message) {
-            for (ClientHandler client : clients.values()) {
-                client.send("[Chat] " + sender + ": " + message);
+        public void jouerContreBot(ClientHandler client, String argument) {
+            int niveau = BOT_NIVEAU_DEFAUT;
+            if (!argument.isEmpty()) {
+                try {
+                    niveau = Integer.parseInt(argument);
+                } catch (NumberFormatException e) {
+                    client.send("Usage : play bot [niveau de 1 à 5]");
+                    return;
+                }
+            }
+            niveau = Math.max(1, Math.min(niveau, 5));
+            if (games.containsKey(client)) {
+                client.send("Vous êtes déjà en partie.");
+                return;
+            }
+            client.send("Partie contre le bot de niveau " + niveau + " (non comptée dans les scores).");
+            if (!startGame(client, ClientHandler.bot(this, niveau))) {
+                client.send("Vous êtes déjà en partie.");
             }
         }
-        
-        // Nouvelle méthode pour envoyer la liste des joueurs connectés mais pas encore en jeu
-    private void sendAvailablePlayers(ClientHandler clientHandler) {
-        StringBuilder playerList = new StringBuilder("Joueurs connectés : ");
 
-        // On filtre les joueurs : ceux qui sont dans clients mais pas dans games
-        List<String> availablePlayers = new ArrayList<>();
-        for (Map.Entry<String, ClientHandler> entry : clients.entrySet()) {
-            ClientHandler client = entry.getValue();
-            if (!games.containsKey(client)) { // Si le client n'est pas dans un jeu
-                availablePlayers.add(entry.getKey());
+        /**
+         * Confie le coup du bot au pool des bots. Si le pool est saturé, le bot
+         * joue aussitôt un coup peu réfléchi plutôt que de bloquer l'appelant.
+         * 
+         * @param game la partie.
+         * @param bot le bot qui doit jouer.
+         */
+        private void programmerCoupBot(Puissance4 game, ClientHandler bot) {
+            try {
+                poolBots.execute(() -> jouerCoupBot(game, bot, Solveur.profondeurDuNiveau(bot.getNiveauBot()), BOT_BUDGET_MS));
+            } catch (RejectedExecutionException e) {
+                jouerCoupBot(game, bot, 1, 0);
             }
         }
 
-        // Ajouter les joueurs disponibles à la liste
-        for (String player : availablePlayers) {
-            playerList.append(player).append(" ");
+        // Cherche le coup du bot sur une copie de la grille, puis le joue comme un joueur
+        private void jouerCoupBot(Puissance4 game, ClientHandler bot, int profondeur, long budgetMs) {
+            MoteurPuissance4 position;
+            ReentrantLock verrouPartie = game.getVerrou();
+            Metriques.verrouiller(verrouPartie, Metriques.ATTENTE_VERROU_PARTIE);
+            try {
+                if (game.isTerminee()) {
+                    return;
+                }
+                position = game.getPosition();
+            } finally {
+                verrouPartie.unlock();
+            }
+            Solveur.Resultat resultat = Solveur.chercher(position, profondeur, budgetMs);
+            Traces.tracer(Traces.Evenement.COUP_BOT, bot.getPseudo(), null, resultat.getColonne(), resultat.getProfondeur(),
+                    resultat.getNoeuds(), resultat.getNanos());
+            FileSortie.ouvrirCycle(); // Grille et tour partent ensemble, comme pour le coup d'un joueur
+            try {
+                handleMove(bot, resultat.getColonne());
+            } finally {
+                FileSortie.fermerCycle();
+            }
         }
 
-        clientHandler.send(playerList.toString()); // Envoi au client
-    }
-        private static void saveScores() {
-        StringBuilder fileContent = new StringBuilder();
+        // Pool des bots : p4.bot.threads threads (la moitié des cœurs par défaut), file de p4.bot.file coups
+        private static ThreadPoolExecutor creerPoolBots() {
+            int threads = Integer.getInteger("p4.bot.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+            AtomicInteger numero = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Integer.getInteger("p4.bot.file", 1024)), tache -> {
+                        Thread thread = new Thread(tache, "bot-" + numero.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true); // Aucun thread quand personne ne joue contre un bot
+            return pool;
+        }
 
-        // Lire le fichier existant
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_NAME))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                fileContent.append(line);
+        /**
+         * Marque une partie comme terminée et la retire des parties en cours.
+         * Les entrées ne sont retirées que si elles désignent encore cette partie.
+         * Appelée avec le verrou de la partie.
+         * 
+         * @param game la partie terminée.
+         * @param player un des joueurs.
+         * @param opponent l'autre joueur.
+         * @param statJoueur le résultat de player (0 défaite, 1 nul, 2 victoire).
+         */
+        private void terminerPartie(Puissance4 game, ClientHandler player, ClientHandler opponent, int statJoueur) {
+            game.terminer();
+            game.arreterPendule();
+            game.annoncerFin(player, statJoueur);
+            if (game.isRegardee()) {
+                retransmission.fin(game, statJoueur == 1 ? "Match nul entre " + player.getPseudo() + " et " + opponent.getPseudo() + "."
+                        : (statJoueur == 2 ? player : opponent).getPseudo() + " gagne contre "
+                        + (statJoueur == 2 ? opponent : player).getPseudo() + ".");
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("Fichier non trouvé, un nouveau sera créé.");
-        } catch (IOException e) {
-            System.out.println("Erreur lors de la lecture du fichier JSON.");
+            journaliser(game, player, opponent, statJoueur);
+            this.games.remove(player, game);
+            this.games.remove(opponent, game);
+            rendreDisponible(player);
+            rendreDisponible(opponent);
+            salons.desabonner(player, game.getSalon());
+            salons.desabonner(opponent, game.getSalon());
         }
 
-        // Charger les données existantes (si disponibles)
-        Map<String, int[]> existingScores = new HashMap<>();
-        if (fileContent.length() > 0) {
-            existingScores = parseJson(fileContent.toString());
+        // Dépose la partie dans le journal des parties (écrit en arrière-plan) et donne son numéro aux joueurs
+        private void journaliser(Puissance4 game, ClientHandler player, ClientHandler opponent, int statJoueur) {
+            JournalParties journal = journalParties;
+            if (journal == null) {
+                return;
+            }
+            ClientHandler gagnant = statJoueur == 2 ? player : opponent;
+            int resultat = statJoueur == 1 ? JournalParties.NUL
+                    : gagnant == game.getPlayer1() ? JournalParties.VICTOIRE_X : JournalParties.VICTOIRE_O;
+            if (statJoueur != 1 && !game.checkWin(gagnant)) {
+                resultat |= JournalParties.ABANDON;
+            }
+            long numero = journal.ajouter(game.getPlayer1().getPseudo(), game.getPlayer2().getPseudo(), game.getDebut(),
+                    System.currentTimeMillis(), resultat, game.getCoupsJoues());
+            player.send("Partie n°" + numero + " enregistrée (replay " + numero + " pour la revoir).");
+            opponent.send("Partie n°" + numero + " enregistrée (replay " + numero + " pour la revoir).");
         }
 
-        // Mettre à jour les scores existants
-        for (Map.Entry<String, int[]> entry : scores.entrySet()) {
-            existingScores.put(entry.getKey(), entry.getValue());
+
+        /**
+         * Envoie un message à tous les clients connectés (abonnés au lobby).
+         * La distribution est faite en arrière-plan par le diffuseur.
+         * 
+         * @param message le message à diffuser.
+         */
+        public void broadcast(String message) {
+            salons.publier(Diffuseur.LOBBY, message);
         }
 
-        // Générer le JSON final
-        String updatedJson = generateJson(existingScores);
+        /**
+         * Envoie un message de chat à tous les clients connectés.
+         * 
+         * @param sender le nom du joueur qui envoie le message.
+         * @param message le message de chat à diffuser.
+         */
+        public void broadcastMessage(String sender, String message) {
+            salons.publier(Diffuseur.LOBBY, "[Chat] " + sender + ": " + message);
+        }
 
-        // Écrire le contenu mis à jour dans le fichier
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME))) {
-            writer.write(updatedJson);
-        } catch (IOException e) {
-            System.out.println("Erreur lors de la sauvegarde des scores.");
+        /**
+         * Abonne un joueur à un salon de discussion, créé s'il n'existe pas.
+         * 
+         * @param client le joueur.
+         * @param salon le nom du salon.
+         */
+        public void rejoindreSalon(ClientHandler client, String salon) {
+            if (!nomSalonValide(salon) || salon.startsWith("partie")) {
+                client.send("Nom de salon invalide (lettres, chiffres, _ et -, 32 caractères au plus).");
+                return;
+            }
+            salons.abonner(client, salon);
+            client.send("Vous avez rejoint le salon " + salon + ".");
         }
-    }
 
-    private static Map<String, int[]> parseJson(String json) {
-        Map<String, int[]> parsedScores = new HashMap<>();
-        json = json.trim();
-        if (json.startsWith("{") && json.endsWith("}")) {
-            json = json.substring(1, json.length() - 1).trim(); // Supprimer les accolades
-
-            String[] entries = json.split("},");
-            for (String entry : entries) {
-                entry = entry.trim();
-                if (!entry.endsWith("}")) {
-                    entry += "}";
+        // Lettres et chiffres ASCII, _ et -, de 1 à 32 caractères (sans expression régulière)
+        private static boolean nomSalonValide(String salon) {
+            int longueur = salon.length();
+            if (longueur == 0 || longueur > 32) {
+                return false;
+            }
+            for (int i = 0; i < longueur; i++) {
+                char c = salon.charAt(i);
+                if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '-')) {
+                    return false;
                 }
+            }
+            return true;
+        }
 
-                String[] keyValue = entry.split(":", 2);
-                if (keyValue.length == 2) {
-                    String key = keyValue[0].trim().replace("\"", "");
-                    String value = keyValue[1].trim();
-
-                    // Extraire les valeurs du tableau [defaites, nul, victoires]
-                    value = value.replace("{", "").replace("}", "").trim();
-                    String[] stats = value.split(",");
-                    int[] intStats = new int[3];
-                    for (int i = 0; i < stats.length; i++) {
-                        String[] statPair = stats[i].split(":");
-                        if (statPair.length == 2) {
-                            intStats[i] = Integer.parseInt(statPair[1].trim());
-                        }
-                    }
+        /**
+         * Désabonne un joueur d'un salon de discussion.
+         * 
+         * @param client le joueur.
+         * @param salon le nom du salon.
+         */
+        public void quitterSalon(ClientHandler client, String salon) {
+            if (salons.desabonner(client, salon)) {
+                client.send("Vous avez quitté le salon " + salon + ".");
+            } else {
+                client.send("Vous n'êtes pas dans le salon " + salon + ".");
+            }
+        }
 
-                    parsedScores.put(key, intStats);
+        /**
+         * Publie un message dans un salon dont le joueur est membre.
+         * Le salon "partie" désigne celui de la partie en cours du joueur.
+         * 
+         * @param client le joueur qui parle.
+         * @param salon le nom du salon.
+         * @param message le message.
+         */
+        public void parlerSalon(ClientHandler client, String salon, String message) {
+            if (salon.equals("partie")) {
+                Puissance4 game = games.get(client);
+                if (game == null) {
+                    client.send("Vous n'êtes pas en partie.");
+                    return;
                 }
+                salon = game.getSalon();
+            }
+            if (!salons.estAbonne(client, salon)) {
+                client.send("Vous n'êtes pas dans le salon " + salon + ".");
+                return;
             }
+            salons.publier(salon, "[" + salon + "] " + client.getPseudo() + ": " + message);
         }
-        return parsedScores;
-    }
 
-    private static String generateJson(Map<String, int[]> scores) {
-        StringBuilder jsonBuilder = new StringBuilder("{\n");
-        for (Map.Entry<String, int[]> entry : scores.entrySet()) {
-            String pseudo = entry.getKey();
-            int[] stats = entry.getValue();
+        /**
+         * Envoie au joueur la liste de ses salons.
+         * 
+         * @param client le joueur.
+         */
+        public void listerSalons(ClientHandler client) {
+            client.send("Vos salons : " + String.join(" ", salons.getSalons(client)));
+        }
+        
+        /**
+         * Envoie au joueur une page des joueurs disponibles (commande who),
+         * éventuellement limitée aux pseudos qui commencent par un préfixe.
+         * 
+         * @param client le joueur.
+         * @param argument "[préfixe] [page]" : un dernier mot fait de chiffres est le numéro de page (1 par défaut).
+         */
+        public void listerDisponibles(ClientHandler client, String argument) {
+            String prefixe = argument;
+            int page = 1;
+            int espace = argument.lastIndexOf(' ');
+            String dernier = argument.substring(espace + 1);
+            int numero = Commandes.colonne(dernier); // Un nombre, ou -1
+            if (numero >= 0) {
+                page = Math.max(1, numero);
+                prefixe = espace < 0 ? "" : argument.substring(0, espace).trim();
+            }
+            List<String> pseudos = presence.page(prefixe, page - 1, TAILLE_PAGE_WHO, this::estDisponible);
+            boolean suite = pseudos.size() > TAILLE_PAGE_WHO;
+            StringBuilder ligne = new StringBuilder(prefixe.isEmpty()
+                    ? "Joueurs disponibles (" + presence.getNombre() + "), page " + page + " : "
+                    : "Joueurs disponibles commençant par " + prefixe + ", page " + page + " : ");
+            for (int i = 0; i < pseudos.size() && i < TAILLE_PAGE_WHO; i++) {
+                ligne.append(pseudos.get(i)).append(' ');
+            }
+            if (pseudos.isEmpty()) {
+                ligne.append("aucun.");
+            } else if (suite) {
+                ligne.append("(suite : who ").append(prefixe.isEmpty() ? "" : prefixe + " ").append(page + 1).append(')');
+            }
+            client.send(ligne.toString().stripTrailing());
+        }
 
-            jsonBuilder.append("  \"").append(pseudo).append("\": {");
-            jsonBuilder.append("\"defaites\": ").append(stats[0]).append(", ");
-            jsonBuilder.append("\"nul\": ").append(stats[1]).append(", ");
-            jsonBuilder.append("\"victoires\": ").append(stats[2]).append("},\n");
+        // Joueur connecté et hors partie ; l'index peut avoir un temps de retard sur les tables
+        private boolean estDisponible(String pseudo) {
+            ClientHandler client = clients.get(pseudo);
+            return client != null && !games.containsKey(client);
         }
 
-        // Supprimer la dernière virgule et ajouter une accolade fermante
-        if (jsonBuilder.length() > 2) {
-            jsonBuilder.setLength(jsonBuilder.length() - 2); // Supprimer la dernière virgule
+        // Fin de partie : le joueur redevient disponible s'il est toujours connecté
+        private void rendreDisponible(ClientHandler joueur) {
+            if (!joueur.isBot() && clients.get(joueur.getPseudo()) == joueur) {
+                presence.ajouter(joueur.getPseudo());
+            }
         }
-        jsonBuilder.append("\n}");
 
-        return jsonBuilder.toString();
+        // Envoie au nouveau venu la première page des joueurs disponibles, et leur nombre
+    private void sendAvailablePlayers(ClientHandler clientHandler) {
+        StringBuilder playerList = new StringBuilder("Joueurs connectés : ");
+        List<String> availablePlayers = presence.page("", 0, TAILLE_PAGE_WHO, this::estDisponible);
+        for (int i = 0; i < availablePlayers.size() && i < TAILLE_PAGE_WHO; i++) {
+            playerList.append(availablePlayers.get(i)).append(" ");
+        }
+        if (availablePlayers.size() > TAILLE_PAGE_WHO) {
+            playerList.append("... (").append(presence.getNombre()).append(" disponibles : who [préfixe] [page] pour la suite)");
+        }
+
+        clientHandler.send(playerList.toString()); // Envoi au client
     }
+
+        // Jauges des métriques, lues à chaque export
+        private void declarerJauges() {
+            Metriques.jauge("p4_clients_connectes", clients::size);
+            Metriques.jauge("p4_parties_en_cours", () -> games.size() / 2); // Deux entrées par partie
+            Metriques.jauge("p4_invitations_en_attente", invitations::size);
+            Metriques.jauge("p4_minuteurs_armes", roue::getNbArmes);
+            Metriques.jauge("p4_file_attente", fileAttente::getTaille);
+            Metriques.jauge("p4_joueurs_disponibles", presence::getNombre);
+            Metriques.jauge("p4_spectateurs", retransmission::getNbSpectateurs);
+            Metriques.jauge("p4_parties_enregistrees", () -> journalParties == null ? 0 : journalParties.getNbParties());
+            Metriques.jauge("p4_chat_en_attente", salons::getEnAttente);
+            Metriques.jauge("p4_bots_en_attente", () -> poolBots.getQueue().size());
+            Metriques.jauge("p4_bot_noeuds_total", Solveur::getNoeuds);
+            Metriques.jauge("p4_bot_nanos_total", Solveur::getNanos);
+            Metriques.jauge("p4_bot_recherches_total", Solveur::getRecherches);
+            Metriques.jauge("p4_ecritures_total", ClientHandler::getEcritures);
+            Metriques.jauge("p4_octets_ecrits_total", ClientHandler::getOctetsEcrits);
+            Metriques.jauge("p4_sortie_profondeur", FileSortie::getProfondeurTotale);
+            Metriques.jauge("p4_sortie_chats_jetes_total", FileSortie::getChatsJetes);
+            Metriques.jauge("p4_sortie_grilles_fusionnees_total", FileSortie::getGrillesFusionnees);
+            Metriques.jauge("p4_sortie_messages_jetes_total", FileSortie::getMessagesJetes);
+            Metriques.jauge("p4_traces_jetees_total", Traces::getJetes);
+        }
+
     public static void main(String[] args) {
         Serveur serveur = new Serveur();
 
-        // Vérifier si le fichier de scores existe, sinon le créer
-        File scoreFile = new File(FILE_NAME);
-        if (!scoreFile.exists()) {
-            try {
-                if (scoreFile.createNewFile()) {
-                    System.out.println("Fichier de scores créé : " + FILE_NAME);
-                    try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME))) {
-                        writer.write("{}"); // Contenu JSON vide
-                    }
-                }
-            } catch (IOException e) {
-                System.out.println("Erreur lors de la création du fichier de scores : " + e.getMessage());
+        // Charger les scores, selon le stockage choisi (-Dp4.scores=journal|mappe)
+        try {
+            setScores(ouvrirScores(System.getProperty("p4.scores", "journal")));
+            ScoreStore chargees = getScores();
+            Classement charge = new Classement(chargees::getPseudo);
+            for (int id = 0; id < chargees.getNbJoueurs(); id++) {
+                charge.ajouter(id, chargees.getStats(id));
             }
+            setClassement(charge);
+            System.out.println("Scores chargés avec succès.");
+        } catch (IOException e) {
+            System.out.println("Erreur lors de la lecture des scores : " + e.getMessage());
+            return;
         }
 
-        // Charger les scores à partir du fichier
-        StringBuilder fileContent = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_NAME))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                fileContent.append(line);
-            }
+        // Journal des parties : index reconstruits à partir des segments
+        try {
+            JournalParties journal = new JournalParties(DOSSIER_PARTIES);
+            journal.charger();
+            journal.demarrer();
+            setJournalParties(journal);
+            System.out.println(journal.getNbParties() + " parties enregistrées.");
+        } catch (IOException e) {
+            System.out.println("Journal des parties indisponible : " + e.getMessage());
+        }
 
-            // Charger les scores depuis le JSON
-            if (fileContent.length() > 0) {
-                Map<String, int[]> loadedScores = parseJson(fileContent.toString());
-                setScores(loadedScores); // Mettre à jour les scores en mémoire
-                System.out.println("Scores chargés avec succès.");
-            } else {
-                System.out.println("Aucun score existant à charger.");
+        // Métriques : jauges du serveur, et point d'accès HTTP local si -Dp4.metrics.port est donné
+        serveur.declarerJauges();
+        int portMetriques = Integer.getInteger("p4.metrics.port", 0);
+        if (portMetriques > 0) {
+            try {
+                Metriques.demarrerHttp(portMetriques);
+            } catch (IOException e) {
+                System.out.println("Point d'accès des métriques indisponible : " + e.getMessage());
             }
-        } catch (IOException e) {
-            System.out.println("Erreur lors de la lecture du fichier de scores : " + e.getMessage());
         }
 
-        // Ajouter un hook de fermeture pour sauvegarder les scores avant la sortie
+        // Ajouter un hook de fermeture pour écrire les derniers résultats sur disque avant la sortie
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 System.out.println("Exécution du hook de fermeture...");
-                Serveur.saveScores();  // Sauvegarde avant la fermeture
+                getScores().fermer();
+                if (getJournalParties() != null) {
+                    getJournalParties().fermer();
+                }
+                Traces.fermer(); // Écrire les dernières traces
             }
         });
 
-        
-        // Lancer le serveur
-        serveur.demarrer(12345);
+        // Lancer le serveur : java Serveur [port] [classique|nio|virtuel]
+        int port = 12345;
+        String mode = "classique";
+        if (args.length >= 1) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Port invalide. Utilisation du port par défaut : " + port);
+            }
+        }
+        if (args.length >= 2) {
+            mode = args[1];
+        }
+
+        if (mode.equalsIgnoreCase("nio")) {
+            int nbBoucles = Integer.getInteger("p4.nio.boucles", Runtime.getRuntime().availableProcessors());
+            serveur.demarrerNio(port, nbBoucles);
+        } else if (mode.equalsIgnoreCase("virtuel")) {
+            serveur.demarrerVirtuel(port);
+        } else {
+            serveur.demarrer(port);
+        }
     }
 
-            // Mettre à jour les scores
-            private void updateScores(String player, String opponent, String result) {
-                // Récupérer ou initialiser les scores
-                int[] playerScores = scores.getOrDefault(player, new int[]{0, 0, 0});
-                int[] opponentScores = scores.getOrDefault(opponent, new int[]{0, 0, 0});
-            
-                // Mettre à jour les scores selon le résultat
+            /**
+             * Ouvre le stockage des scores.
+             * 
+             * @param type "journal" (scores.json + journal) ou "mappe" (fichier projeté scores.p4s).
+             * @return le stockage ouvert.
+             */
+            private static ScoreStore ouvrirScores(String type) throws IOException {
+                JournalScores journal = new JournalScores(FILE_NAME);
+                if (type.equalsIgnoreCase("mappe")) {
+                    // À la création de scores.p4s, les scores existants sont importés
+                    Map<String, int[]> existants = Files.exists(Paths.get(FICHIER_MAPPE)) ? null : journal.charger();
+                    ScoreStoreMappe mappe = new ScoreStoreMappe(FICHIER_MAPPE, existants);
+                    long intervalle = Long.getLong("p4.mappe.synchroMs", 1000);
+                    Thread synchro = new Thread(() -> {
+                        try {
+                            while (true) {
+                                Thread.sleep(intervalle);
+                                mappe.synchroniser();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, "synchro-scores");
+                    synchro.setDaemon(true);
+                    synchro.start();
+                    return mappe;
+                }
+                Map<String, int[]> charges = journal.charger(); // Dernier instantané puis journal des résultats
+                journal.demarrer();
+                return new ScoreStoreJournal(charges, journal);
+            }
+
+            // Mettre à jour les scores ; les parties contre un bot ne comptent pas
+            private void updateScores(ClientHandler playerHandler, ClientHandler opponentHandler, String result) {
+                if (playerHandler.isBot() || opponentHandler.isBot()) {
+                    return;
+                }
+                // Indice [defaites, nul, victoires] à incrémenter pour le joueur ;
+                // l'adversaire reçoit l'indice opposé (2 - playerStat)
+                int playerStat;
                 switch (result) {
                     case "victory":
-                        playerScores[2]++; // Victoires pour le joueur
-                        opponentScores[0]++; // Défaites pour l'adversaire
+                        playerStat = 2; // Victoire pour le joueur, défaite pour l'adversaire
                         break;
                     case "defeat":
-                        playerScores[0]++; // Défaites pour le joueur
-                        opponentScores[2]++; // Victoires pour l'adversaire
+                        playerStat = 0; // Défaite pour le joueur, victoire pour l'adversaire
                         break;
-                    case "draw":
-                        playerScores[1]++; // Matchs nuls pour le joueur
-                        opponentScores[1]++; // Matchs nuls pour l'adversaire
+                    default:
+                        playerStat = 1; // Match nul pour les deux
                         break;
                 }
             
-                // Mettre à jour les scores dans la mémoire
-                scores.put(player, playerScores);
-                scores.put(opponent, opponentScores);
-            
-                // Sauvegarder les scores dans le fichier JSON
-                saveScores();
+                // Mettre à jour les scores (en mémoire et sur disque, selon le stockage)
+                long debut = System.nanoTime();
+                scores.enregistrerResultat(playerHandler.getIdJoueur(), opponentHandler.getIdJoueur(), playerStat);
+                Metriques.SCORES_ENREGISTREMENT.enregistrer(System.nanoTime() - debut);
+                classement.enregistrerResultat(playerHandler.getIdJoueur(), opponentHandler.getIdJoueur(), playerStat); // O(log n), sans relire les scores
+                Traces.tracer(Traces.Evenement.RESULTAT, playerHandler.getPseudo(), opponentHandler.getPseudo(), playerStat, 0, 0, 0);
             }
             
 
-        }
+            /**
+             * Invitation en attente de réponse, avec le minuteur de son expiration.
+             */
+            private static final class Invitation {
+                final ClientHandler invitant;
+                RoueTemporelle.Minuteur expiration; // Armé avant la publication de l'invitation
 
+                Invitation(ClientHandler invitant) {
+                    this.invitant = invitant;
+                }
+            }
+        }
@@ -0,0 +1,279 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recherche du meilleur coup pour le bot : negamax avec élagage alpha-bêta,
+ * approfondissement itératif borné par un budget de temps, colonnes du centre
+ * explorées en premier et table de transposition partagée.
+ *
+ * Un score positif est favorable au joueur qui doit jouer. Une victoire vaut
+ * {@value #VICTOIRE} plus le nombre de cases encore libres (gagner vite vaut
+ * mieux) ; aux feuilles, la position est estimée par la différence entre les
+ * cases gagnantes de chaque joueur.
+ *
+ * Une instance sert à une seule recherche ; la table est commune à toutes.
+ */
+public class Solveur {
+    public static final int VICTOIRE = 1000;
+    private static final int INFINI = 10000;
+    private static final int CASES = MoteurPuissance4.LIGNES * MoteurPuissance4.COLONNES;
+    private static final int[] ORDRE = {3, 2, 4, 1, 5, 0, 6}; // Le centre d'abord
+    private static final int[][] ORDRES = ordres(); // ORDRES[c] : c d'abord, puis ORDRE ; ORDRES[7] = ORDRE
+    private static final int[] PROFONDEURS = {1, 3, 6, 10, CASES}; // Par niveau, de 1 à 5
+
+    private static final TableTransposition TABLE = new TableTransposition(Integer.getInteger("p4.bot.tableBits", 20));
+    private static final Interruption INTERRUPTION = new Interruption();
+
+    // Compteurs de tous les bots, exportés en métriques pour dimensionner le pool (nœuds/s = noeuds / nanos)
+    private static final LongAdder NOEUDS = new LongAdder();
+    private static final LongAdder NANOS = new LongAdder();
+    private static final LongAdder RECHERCHES = new LongAdder();
+
+    private final MoteurPuissance4 moteur;
+    private final long echeance;
+    private long noeuds = 0;
+
+    private Solveur(MoteurPuissance4 moteur, long budgetMs) {
+        this.moteur = moteur;
+        this.echeance = budgetMs > 0 ? System.nanoTime() + budgetMs * 1_000_000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * Renvoie la profondeur maximale de recherche d'un niveau de bot.
+     *
+     * @param niveau le niveau, de 1 à 5
+     * @return la profondeur en demi-coups
+     */
+    public static int profondeurDuNiveau(int niveau) {
+        return PROFONDEURS[Math.max(1, Math.min(niveau, PROFONDEURS.length)) - 1];
+    }
+
+    /**
+     * Cherche le meilleur coup par approfondissement itératif : on cherche à
+     * profondeur 1, 2, 3... jusqu'à la profondeur maximale, un résultat forcé ou
+     * l'épuisement du budget. Le coup de la dernière profondeur terminée est retenu.
+     *
+     * @param position      la position (non modifiée)
+     * @param profondeurMax la profondeur maximale, en demi-coups
+     * @param budgetMs      le temps alloué, en millisecondes (0 : sans limite)
+     * @return le résultat de la recherche
+     */
+    public static Resultat chercher(MoteurPuissance4 position, int profondeurMax, long budgetMs) {
+        long debut = System.nanoTime();
+        Solveur solveur = new Solveur(position.copie(), budgetMs);
+        Resultat resultat = new Resultat();
+        for (int colonne : ORDRE) { // À défaut de mieux, premier coup jouable en partant du centre
+            if (position.peutJouer(colonne)) {
+                resultat.colonne = colonne;
+                break;
+            }
+        }
+        int restantes = CASES - position.getCoups();
+        try {
+            for (int profondeur = 1; profondeur <= Math.min(profondeurMax, restantes); profondeur++) {
+                long meilleur = solveur.racine(profondeur);
+                resultat.colonne = (int) meilleur;
+                resultat.score = (int) (meilleur >> 32);
+                resultat.profondeur = profondeur;
+                if (Math.abs(resultat.score) >= VICTOIRE) {
+                    break; // Issue forcée : inutile de chercher plus loin
+                }
+            }
+        } catch (Interruption e) {
+            // Budget épuisé : on garde le résultat de la dernière profondeur terminée
+        }
+        resultat.noeuds = solveur.noeuds;
+        resultat.nanos = System.nanoTime() - debut;
+        NOEUDS.add(resultat.noeuds);
+        NANOS.add(resultat.nanos);
+        RECHERCHES.increment();
+        return resultat;
+    }
+
+    // Renvoie score << 32 | colonne
+    private long racine(int profondeur) {
+        int alpha = -INFINI;
+        int beta = INFINI;
+        int meilleurCoup = -1;
+        long entree = TABLE.lire(moteur.getCle());
+        for (int colonne : ORDRES[entree != 0 ? TableTransposition.coup(entree) : ORDRE.length]) {
+            if (!moteur.peutJouer(colonne)) {
+                continue;
+            }
+            if (moteur.gagneEnJouant(colonne)) {
+                return (long) victoire() << 32 | colonne;
+            }
+            moteur.jouer(colonne);
+            int score = -negamax(profondeur - 1, -beta, -alpha);
+            moteur.annuler(colonne);
+            if (score > alpha || meilleurCoup < 0) {
+                alpha = score;
+                meilleurCoup = colonne;
+            }
+        }
+        TABLE.ecrire(moteur.getCle(), alpha, TableTransposition.EXACTE, profondeur, meilleurCoup);
+        return (long) alpha << 32 | meilleurCoup;
+    }
+
+    private int negamax(int profondeur, int alpha, int beta) {
+        if ((++noeuds & 4095) == 0 && System.nanoTime() > echeance) {
+            throw INTERRUPTION;
+        }
+        if (moteur.estPleine()) {
+            return 0;
+        }
+        for (int colonne = 0; colonne < MoteurPuissance4.COLONNES; colonne++) {
+            if (moteur.peutJouer(colonne) && moteur.gagneEnJouant(colonne)) {
+                return victoire();
+            }
+        }
+        if (profondeur == 0) {
+            return evaluer();
+        }
+
+        long cle = moteur.getCle();
+        long entree = TABLE.lire(cle);
+        int coupConnu = ORDRE.length;
+        if (entree != 0) {
+            coupConnu = TableTransposition.coup(entree);
+            if (TableTransposition.profondeur(entree) >= profondeur) {
+                int score = TableTransposition.score(entree);
+                int borne = TableTransposition.borne(entree);
+                if (borne == TableTransposition.EXACTE
+                        || (borne == TableTransposition.MINORANT && score >= beta)
+                        || (borne == TableTransposition.MAJORANT && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int alphaInitial = alpha;
+        int meilleur = -INFINI;
+        int meilleurCoup = 0;
+        for (int colonne : ORDRES[coupConnu]) {
+            if (!moteur.peutJouer(colonne)) {
+                continue;
+            }
+            moteur.jouer(colonne);
+            int score = -negamax(profondeur - 1, -beta, -alpha);
+            moteur.annuler(colonne);
+            if (score > meilleur) {
+                meilleur = score;
+                meilleurCoup = colonne;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break; // Coupure bêta
+                    }
+                }
+            }
+        }
+        int borne = meilleur <= alphaInitial ? TableTransposition.MAJORANT
+                : meilleur >= beta ? TableTransposition.MINORANT : TableTransposition.EXACTE;
+        TABLE.ecrire(cle, meilleur, borne, profondeur, meilleurCoup);
+        return meilleur;
+    }
+
+    // Victoire du joueur courant au prochain coup
+    private int victoire() {
+        return VICTOIRE + CASES - moteur.getCoups();
+    }
+
+    // Différence entre les cases gagnantes du joueur courant et celles de l'adversaire
+    private int evaluer() {
+        int joueur = moteur.getJoueurCourant();
+        return Long.bitCount(moteur.getMenaces(joueur)) - Long.bitCount(moteur.getMenaces(1 - joueur));
+    }
+
+    // Ordres des coups : le coup connu par la table d'abord, puis du centre vers les bords
+    private static int[][] ordres() {
+        int[][] ordres = new int[ORDRE.length + 1][];
+        for (int coupConnu = 0; coupConnu < ORDRE.length; coupConnu++) {
+            ordres[coupConnu] = new int[ORDRE.length];
+            ordres[coupConnu][0] = coupConnu;
+            int i = 1;
+            for (int colonne : ORDRE) {
+                if (colonne != coupConnu) {
+                    ordres[coupConnu][i++] = colonne;
+                }
+            }
+        }
+        ordres[ORDRE.length] = ORDRE;
+        return ordres;
+    }
+
+    /**
+     * Renvoie le nombre de nœuds visités par tous les bots depuis le démarrage.
+     *
+     * @return le nombre de nœuds
+     */
+    public static long getNoeuds() {
+        return NOEUDS.sum();
+    }
+
+    /**
+     * Renvoie le temps de recherche cumulé de tous les bots, en nanosecondes.
+     *
+     * @return la durée cumulée des recherches
+     */
+    public static long getNanos() {
+        return NANOS.sum();
+    }
+
+    /**
+     * Renvoie le nombre de coups cherchés par les bots depuis le démarrage.
+     *
+     * @return le nombre de recherches
+     */
+    public static long getRecherches() {
+        return RECHERCHES.sum();
+    }
+
+    /**
+     * Résultat d'une recherche.
+     */
+    public static final class Resultat {
+        private int colonne;
+        private int score;
+        private int profondeur;
+        private long noeuds;
+        private long nanos;
+
+        public int getColonne() {
+            return colonne;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getProfondeur() {
+            return profondeur;
+        }
+
+        public long getNoeuds() {
+            return noeuds;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Nombre de nœuds visités par seconde pendant cette recherche.
+         *
+         * @return le débit de la recherche
+         */
+        public long getNoeudsParSeconde() {
+            return nanos == 0 ? 0 : noeuds * 1_000_000_000L / nanos;
+        }
+    }
+
+    // Levée quand le budget de temps est épuisé ; sans pile d'appels, donc peu coûteuse
+    private static final class Interruption extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Interruption() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Table de transposition de taille fixe, partagée sans verrou entre les threads
+ * des bots.
+ *
+ * Chaque case tient deux mots : les données, et la clé combinée aux données par
+ * un OU exclusif. Une lecture n'est acceptée que si {@code cle ^ donnees}
+ * redonne la clé cherchée : une case écrasée ou à moitié écrite par un autre
+ * thread est simplement vue comme absente. Une case est remplacée à chaque
+ * écriture, sans autre politique.
+ *
+ * Données d'une entrée :
+ * <pre>
+ * bits 0-15   score + 32768
+ * bits 16-17  borne : {@link #EXACTE}, {@link #MINORANT} ou {@link #MAJORANT} (jamais 0)
+ * bits 18-23  profondeur de la recherche
+ * bits 24-26  meilleur coup
+ * </pre>
+ */
+public class TableTransposition {
+    public static final int EXACTE = 1;
+    public static final int MINORANT = 2; // Score réel >= score stocké
+    public static final int MAJORANT = 3; // Score réel <= score stocké
+
+    private final long[] cles;
+    private final long[] donnees;
+    private final int decalage;
+
+    /**
+     * Crée une table de 2^bits cases (16 octets par case).
+     *
+     * @param bits le logarithme en base 2 du nombre de cases
+     */
+    public TableTransposition(int bits) {
+        cles = new long[1 << bits];
+        donnees = new long[1 << bits];
+        decalage = 64 - bits;
+    }
+
+    /**
+     * Cherche une position.
+     *
+     * @param cle la clé de la position ({@link MoteurPuissance4#getCle()})
+     * @return les données de l'entrée, ou 0 si la position est absente
+     */
+    public long lire(long cle) {
+        int i = indice(cle);
+        long d = donnees[i];
+        return (cles[i] ^ d) == cle ? d : 0;
+    }
+
+    /**
+     * Enregistre le résultat de la recherche d'une position.
+     *
+     * @param cle        la clé de la position
+     * @param score      le score trouvé
+     * @param borne      la nature du score (exact, minorant ou majorant)
+     * @param profondeur la profondeur de la recherche
+     * @param coup       le meilleur coup trouvé
+     */
+    public void ecrire(long cle, int score, int borne, int profondeur, int coup) {
+        long d = (score + 32768) | (long) borne << 16 | (long) profondeur << 18 | (long) coup << 24;
+        int i = indice(cle);
+        donnees[i] = d;
+        cles[i] = cle ^ d;
+    }
+
+    public static int score(long donnees) {
+        return (int) (donnees & 0xFFFF) - 32768;
+    }
+
+    public static int borne(long donnees) {
+        return (int) (donnees >>> 16) & 3;
+    }
+
+    public static int profondeur(long donnees) {
+        return (int) (donnees >>> 18) & 63;
+    }
+
+    public static int coup(long donnees) {
+        return (int) (donnees >>> 24) & 7;
+    }
+
+    private int indice(long cle) {
+        return (int) ((cle * 0x9E3779B97F4A7C15L) >>> decalage);
+    }
+}
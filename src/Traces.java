@@ -0,0 +1,360 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Traces du serveur (connexions, joueurs, erreurs...), écrites en arrière-plan.
+ *
+ * Un événement a une forme fixe : son type ({@link Evenement}), jusqu'à deux
+ * références (pseudo, exception...) et quatre entiers. Les sessions le
+ * déposent dans un anneau de cases préallouées, sans verrou ni allocation :
+ * une case est réservée par un compare-and-set sur le compteur d'écriture,
+ * remplie, puis publiée par son numéro de séquence. Un seul thread lit
+ * l'anneau dans l'ordre, met les événements en forme et les écrit par lots
+ * dans un fichier tournant et, au besoin, sur la console. Aucune session
+ * n'attend donc la console ou le disque.
+ *
+ * Réglages (propriétés système) :
+ * <ul>
+ *   <li>{@code p4.log.niveau} ({@code info}) : {@code debug}, {@code info}, {@code avert} ou {@code erreur} ;</li>
+ *   <li>{@code p4.log.capacite} (8192) : cases de l'anneau, arrondi à une puissance de 2 ;</li>
+ *   <li>{@code p4.log.debordement} ({@code jeter}) : anneau plein, l'événement est jeté
+ *       et compté, ou le producteur attend ({@code attendre}) ;</li>
+ *   <li>{@code p4.log.fichier} ({@code serveur.log}) : fichier des traces, vide pour n'en écrire aucun ;</li>
+ *   <li>{@code p4.log.tailleMax} (10485760) et {@code p4.log.fichiers} (5) : au-delà de
+ *       cette taille, le fichier devient {@code .1}, et ainsi de suite ;</li>
+ *   <li>{@code p4.log.console} ({@code true}) : les traces sont aussi écrites sur la console ;</li>
+ *   <li>{@code p4.log.intervalleMs} (50) : attente du thread d'écriture quand l'anneau est vide.</li>
+ * </ul>
+ */
+public final class Traces {
+
+    /**
+     * Niveau d'un événement.
+     */
+    public enum Niveau {
+        DEBUG, INFO, AVERT, ERREUR
+    }
+
+    /**
+     * Mise en forme d'un événement, faite par le thread d'écriture.
+     */
+    @FunctionalInterface
+    private interface Forme {
+        void ecrire(StringBuilder ligne, Object texte, Object texte2, long a, long b, long c, long d);
+    }
+
+    /**
+     * Types d'événements, chacun avec son niveau et sa mise en forme.
+     */
+    public enum Evenement {
+        CONNEXION(Niveau.INFO, (l, t, t2, a, b, c, d) -> l.append("Nouveau client connecté.")),
+        NOUVEAU_JOUEUR(Niveau.INFO, (l, t, t2, a, b, c, d) -> l.append("Nouveau joueur ajouté avec des scores par défaut : ").append(t).append('.')),
+        RESULTAT(Niveau.DEBUG, (l, t, t2, a, b, c, d) -> l.append("Résultat enregistré : ").append(t).append(' ')
+                .append(a == 2 ? "bat" : a == 1 ? "fait match nul avec" : "perd contre").append(' ').append(t2).append('.')),
+        COUP_BOT(Niveau.INFO, (l, t, t2, a, b, c, d) -> l.append(t).append(" joue ").append(a).append(" (profondeur ").append(b)
+                .append(", ").append(c).append(" nœuds en ").append(d / 1_000_000).append(" ms, ")
+                .append(d > 0 ? c * 1_000_000_000L / d : 0).append(" nœuds/s)")),
+        ERREUR_CLIENT(Niveau.AVERT, (l, t, t2, a, b, c, d) -> l.append("Erreur avec le client ").append(t)),
+        ERREUR_DECONNEXION(Niveau.AVERT, (l, t, t2, a, b, c, d) -> l.append("Erreur lors de la déconnexion de ").append(t)),
+        CLIENT_LENT(Niveau.AVERT, (l, t, t2, a, b, c, d) -> l.append("Client ").append(t)
+                .append(" trop lent (file de sortie saturée), déconnexion.")),
+        LIGNE_TROP_LONGUE(Niveau.AVERT, (l, t, t2, a, b, c, d) -> l.append("Ligne trop longue, déconnexion du client ").append(t)),
+        ERREUR_ACCEPTATION(Niveau.ERREUR, (l, t, t2, a, b, c, d) -> l.append("Erreur : ").append(message(t))),
+        ERREUR_BOUCLE_NIO(Niveau.ERREUR, (l, t, t2, a, b, c, d) -> l.append("Erreur dans la boucle NIO ").append(a).append(" : ")
+                .append(message(t))),
+        ERREUR_FERMETURE_CANAL(Niveau.AVERT, (l, t, t2, a, b, c, d) -> l.append("Erreur lors de la fermeture du canal : ").append(message(t))),
+        ERREUR_APPARIEMENT(Niveau.ERREUR, (l, t, t2, a, b, c, d) -> l.append("Erreur d'appariement : ").append(t)),
+        ERREUR_ROUE(Niveau.ERREUR, (l, t, t2, a, b, c, d) -> l.append("Erreur de la roue temporelle : ").append(t)),
+        ERREUR_MINUTEUR(Niveau.ERREUR, (l, t, t2, a, b, c, d) -> l.append("Erreur d'un minuteur : ").append(t)),
+        ERREUR_JOURNAL_SCORES(Niveau.ERREUR, (l, t, t2, a, b, c, d) -> l.append(t).append(" : ").append(message(t2))),
+        PSEUDO_TROP_LONG(Niveau.AVERT, (l, t, t2, a, b, c, d) -> l.append("Pseudo trop long, résultat non journalisé.")),
+        ERREUR_JOURNAL_PARTIES(Niveau.ERREUR, (l, t, t2, a, b, c, d) -> l.append(t).append(" : ").append(message(t2))),
+        PARTIE_TROP_LONGUE(Niveau.AVERT, (l, t, t2, a, b, c, d) -> l.append("Partie ").append(a).append(" trop longue, non journalisée.")),
+        SCORES_AGRANDIS(Niveau.INFO, (l, t, t2, a, b, c, d) -> l.append("Fichier de scores agrandi à ").append(a).append(" cases."));
+
+        private final Niveau niveau;
+        private final Forme forme;
+
+        Evenement(Niveau niveau, Forme forme) {
+            this.niveau = niveau;
+            this.forme = forme;
+        }
+    }
+
+    private static final Niveau SEUIL = Niveau.valueOf(System.getProperty("p4.log.niveau", "info").toUpperCase());
+    private static final boolean ATTENDRE = System.getProperty("p4.log.debordement", "jeter").equalsIgnoreCase("attendre");
+    private static final int CAPACITE = Integer.highestOneBit(Math.max(2, Integer.getInteger("p4.log.capacite", 8192) - 1)) << 1;
+    private static final int MASQUE = CAPACITE - 1;
+    private static final String FICHIER = System.getProperty("p4.log.fichier", "serveur.log");
+    private static final long TAILLE_MAX = Long.getLong("p4.log.tailleMax", 10L * 1024 * 1024);
+    private static final int NB_FICHIERS = Integer.getInteger("p4.log.fichiers", 5);
+    private static final boolean CONSOLE = Boolean.parseBoolean(System.getProperty("p4.log.console", "true"));
+    private static final long INTERVALLE_NS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("p4.log.intervalleMs", 50));
+    private static final DateTimeFormatter HORODATAGE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Anneau : une case par indice dans chacun des tableaux ; sequences[i] est le numéro de l'événement publié dans la case
+    private static final long[] sequences = new long[CAPACITE];
+    private static final long[] instants = new long[CAPACITE];
+    private static final Evenement[] evenements = new Evenement[CAPACITE];
+    private static final Object[] textes = new Object[CAPACITE];
+    private static final Object[] textes2 = new Object[CAPACITE];
+    private static final long[] nombres = new long[4 * CAPACITE];
+
+    private static final AtomicLong ecrits = new AtomicLong(); // Prochain numéro à réserver
+    private static volatile long lus = 0; // Événements mis en forme par le thread d'écriture
+    private static final LongAdder jetes = new LongAdder();
+    private static volatile boolean arret = false;
+    private static final Thread ecrivain;
+
+    static {
+        for (int i = 0; i < CAPACITE; i++) {
+            sequences[i] = -1;
+        }
+        ecrivain = new Thread(Traces::ecrireEnBoucle, "traces");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+    }
+
+    private Traces() {
+    }
+
+    /**
+     * Indique si les événements d'un niveau sont tracés, pour éviter de
+     * préparer les arguments d'un événement qui serait ignoré.
+     *
+     * @param niveau le niveau
+     * @return true si ce niveau est tracé
+     */
+    public static boolean actif(Niveau niveau) {
+        return niveau.compareTo(SEUIL) >= 0;
+    }
+
+    public static void tracer(Evenement evenement) {
+        tracer(evenement, null, null, 0, 0, 0, 0);
+    }
+
+    public static void tracer(Evenement evenement, Object texte) {
+        tracer(evenement, texte, null, 0, 0, 0, 0);
+    }
+
+    public static void tracer(Evenement evenement, Object texte, Object texte2) {
+        tracer(evenement, texte, texte2, 0, 0, 0, 0);
+    }
+
+    public static void tracer(Evenement evenement, Object texte, long a) {
+        tracer(evenement, texte, null, a, 0, 0, 0);
+    }
+
+    /**
+     * Dépose un événement dans l'anneau. Ne bloque pas (sauf débordement en
+     * mode {@code attendre}) et n'alloue rien : les références sont mises en
+     * forme plus tard, par le thread d'écriture ; elles ne doivent plus changer.
+     *
+     * @param evenement le type d'événement
+     * @param texte     première référence (pseudo, exception...), ou null
+     * @param texte2    seconde référence, ou null
+     * @param a         premier entier
+     * @param b         deuxième entier
+     * @param c         troisième entier
+     * @param d         quatrième entier
+     */
+    public static void tracer(Evenement evenement, Object texte, Object texte2, long a, long b, long c, long d) {
+        if (!actif(evenement.niveau)) {
+            return;
+        }
+        long numero;
+        while (true) {
+            numero = ecrits.get();
+            if (numero - lus >= CAPACITE) { // Anneau plein
+                if (!ATTENDRE || Thread.currentThread() == ecrivain) {
+                    jetes.increment();
+                    return;
+                }
+                LockSupport.parkNanos(10_000);
+                continue;
+            }
+            if (ecrits.compareAndSet(numero, numero + 1)) {
+                break;
+            }
+        }
+        int i = (int) (numero & MASQUE);
+        instants[i] = System.currentTimeMillis();
+        evenements[i] = evenement;
+        textes[i] = texte;
+        textes2[i] = texte2;
+        nombres[4 * i] = a;
+        nombres[4 * i + 1] = b;
+        nombres[4 * i + 2] = c;
+        nombres[4 * i + 3] = d;
+        SEQUENCE.setRelease(sequences, i, numero); // Publication : la case est remplie
+    }
+
+    /**
+     * Renvoie le nombre d'événements jetés parce que l'anneau était plein.
+     *
+     * @return le nombre d'événements jetés
+     */
+    public static long getJetes() {
+        return jetes.sum();
+    }
+
+    /**
+     * Écrit les événements en attente, puis arrête le thread d'écriture
+     * (fermeture du serveur). Attend au plus une seconde.
+     */
+    public static void fermer() {
+        arret = true;
+        LockSupport.unpark(ecrivain);
+        try {
+            ecrivain.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Boucle du thread d'écriture : met en forme tout ce qui est publié, l'écrit d'un coup, puis attend
+    private static void ecrireEnBoucle() {
+        Sortie sortie = new Sortie();
+        StringBuilder lot = new StringBuilder(16 * 1024);
+        long jetesSignales = 0;
+        while (true) {
+            boolean fin = arret; // Lu avant de vider l'anneau : rien de publié avant l'arrêt n'est perdu
+            long numero = lus;
+            int i = (int) (numero & MASQUE);
+            while ((long) SEQUENCE.getAcquire(sequences, i) == numero) {
+                mettreEnForme(lot, i);
+                textes[i] = null; // Les références ne sont pas retenues au-delà de l'écriture
+                textes2[i] = null;
+                lus = ++numero; // Libère la case pour les producteurs
+                i = (int) (numero & MASQUE);
+                if (lot.length() >= 64 * 1024) {
+                    sortie.ecrire(lot);
+                }
+            }
+            long jetesTotal = jetes.sum();
+            if (jetesTotal != jetesSignales) {
+                lot.append(HORODATAGE.format(Instant.now())).append(" AVERT  [TRACES] ").append(jetesTotal - jetesSignales)
+                        .append(" événements jetés (anneau des traces plein).\n");
+                jetesSignales = jetesTotal;
+            }
+            sortie.ecrire(lot);
+            if (fin) {
+                sortie.fermer();
+                return;
+            }
+            LockSupport.parkNanos(INTERVALLE_NS);
+        }
+    }
+
+    // Une ligne : horodatage, niveau, type d'événement, message
+    private static void mettreEnForme(StringBuilder lot, int i) {
+        Evenement evenement = evenements[i];
+        HORODATAGE.formatTo(Instant.ofEpochMilli(instants[i]), lot);
+        lot.append(' ').append(evenement.niveau);
+        for (int n = evenement.niveau.name().length(); n < 6; n++) {
+            lot.append(' ');
+        }
+        lot.append(" [").append(evenement).append("] ");
+        try {
+            evenement.forme.ecrire(lot, textes[i], textes2[i], nombres[4 * i], nombres[4 * i + 1], nombres[4 * i + 2], nombres[4 * i + 3]);
+        } catch (RuntimeException e) {
+            lot.append("(mise en forme impossible : ").append(e).append(')');
+        }
+        lot.append('\n');
+    }
+
+    private static String message(Object erreur) {
+        return erreur instanceof Throwable ? ((Throwable) erreur).getMessage() : String.valueOf(erreur);
+    }
+
+    /**
+     * Destinations des traces : la console et le fichier tournant.
+     */
+    private static final class Sortie {
+        private FileChannel canal;
+        private long taille;
+
+        Sortie() {
+            if (!FICHIER.isEmpty()) {
+                ouvrir();
+            }
+        }
+
+        void ecrire(StringBuilder lot) {
+            if (lot.length() == 0) {
+                return;
+            }
+            if (CONSOLE) {
+                System.out.print(lot);
+                System.out.flush();
+            }
+            if (canal != null) {
+                byte[] octets = lot.toString().getBytes(StandardCharsets.UTF_8);
+                try {
+                    if (taille > 0 && taille + octets.length > TAILLE_MAX) {
+                        tourner();
+                    }
+                    ByteBuffer tampon = ByteBuffer.wrap(octets);
+                    while (tampon.hasRemaining()) {
+                        canal.write(tampon);
+                    }
+                    taille += octets.length;
+                } catch (IOException e) {
+                    System.err.println("Erreur d'écriture des traces : " + e.getMessage());
+                }
+            }
+            lot.setLength(0);
+        }
+
+        private void ouvrir() {
+            try {
+                canal = FileChannel.open(Paths.get(FICHIER), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                taille = canal.size();
+            } catch (IOException e) {
+                System.err.println("Fichier des traces indisponible : " + e.getMessage());
+                canal = null;
+            }
+        }
+
+        // serveur.log devient serveur.log.1, l'ancien .1 devient .2... ; le plus ancien est supprimé
+        private void tourner() throws IOException {
+            canal.close();
+            for (int n = NB_FICHIERS - 1; n >= 1; n--) {
+                Path source = Paths.get(FICHIER + "." + n);
+                if (Files.exists(source)) {
+                    Files.move(source, Paths.get(FICHIER + "." + (n + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(Paths.get(FICHIER), Paths.get(FICHIER + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            ouvrir();
+        }
+
+        void fermer() {
+            if (canal != null) {
+                try {
+                    canal.close();
+                } catch (IOException e) {
+                    System.err.println("Erreur lors de la fermeture des traces : " + e.getMessage());
+                }
+            }
+        }
+    }
+}